@@ -18,27 +18,38 @@ package org.springframework.cloud.netflix.feign.ribbon;
 
 import feign.ribbon.LBClient;
 import feign.ribbon.LBClientFactory;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
 import org.springframework.util.ConcurrentReferenceHashMap;
 
 import java.util.Map;
 
 /**
- * LBClientFactory that caches entries created.
+ * LBClientFactory that caches entries created. If it has a {@link SpringClientFactory},
+ * an entry is only used while it has the current load balancer of its client (which
+ * changes if the client was closed because it was idle).
  * @author Spencer Gibb
  */
 public class CachingLBClientFactory implements LBClientFactory {
 
 	private volatile Map<String, LBClient> cache = new ConcurrentReferenceHashMap<>();
 	private final LBClientFactory delegate;
+	private final SpringClientFactory factory;
 
 	public CachingLBClientFactory(LBClientFactory delegate) {
+		this(delegate, null);
+	}
+
+	public CachingLBClientFactory(LBClientFactory delegate, SpringClientFactory factory) {
 		this.delegate = delegate;
+		this.factory = factory;
 	}
 
 	@Override
 	public LBClient create(String clientName) {
-		if (cache.containsKey(clientName)) {
-			return cache.get(clientName);
+		LBClient cached = cache.get(clientName);
+		if (cached != null && (factory == null
+				|| cached.getLoadBalancer() == factory.getLoadBalancer(clientName))) {
+			return cached;
 		}
 		LBClient client = delegate.create(clientName);
 		cache.put(clientName, client);
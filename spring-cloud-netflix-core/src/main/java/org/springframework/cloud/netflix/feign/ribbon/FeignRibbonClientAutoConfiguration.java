@@ -25,6 +25,8 @@ import org.springframework.cloud.netflix.feign.FeignAutoConfiguration;
 import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
 
 import com.netflix.loadbalancer.ILoadBalancer;
 
@@ -45,6 +47,9 @@ public class FeignRibbonClientAutoConfiguration {
 	@Autowired
 	private SpringClientFactory factory;
 
+	@Autowired
+	private Environment environment;
+
 	@Bean
 	public SpringLBClientFactory springLBClientFactory() {
 		return new SpringLBClientFactory(factory);
@@ -52,12 +57,18 @@ public class FeignRibbonClientAutoConfiguration {
 
 	@Bean
 	public CachingLBClientFactory cachingLBClientFactory() {
-		return new CachingLBClientFactory(springLBClientFactory());
+		return new CachingLBClientFactory(springLBClientFactory(), factory);
 	}
 
 	@Bean
 	@ConditionalOnMissingBean
 	public Client feignRibbonClient() {
-		return RibbonClient.builder().lbClientFactory(cachingLBClientFactory()).build();
+		Client client = RibbonClient.builder()
+				.lbClientFactory(cachingLBClientFactory()).build();
+		String header = this.environment.getProperty("feign.ribbon.affinity-header");
+		if (StringUtils.hasText(header)) {
+			client = new LoadBalancerKeyClient(client, header);
+		}
+		return client;
 	}
 }
\ No newline at end of file
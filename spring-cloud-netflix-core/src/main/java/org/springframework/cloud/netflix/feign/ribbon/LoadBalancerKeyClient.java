@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.feign.ribbon;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.springframework.cloud.netflix.ribbon.LoadBalancerKeyHolder;
+import org.springframework.util.StringUtils;
+
+import feign.Client;
+import feign.Request;
+import feign.Request.Options;
+import feign.Response;
+
+/**
+ * Feign {@link Client} that uses the value of a request header (e.g. one from the
+ * request template of the method) as the load balancer key of the request, so that a
+ * key-aware Ribbon rule can send the requests with the same key to the same server.
+ *
+ * @author Dave Syer
+ */
+public class LoadBalancerKeyClient implements Client {
+
+	private final Client delegate;
+
+	private final String header;
+
+	public LoadBalancerKeyClient(Client delegate, String header) {
+		this.delegate = delegate;
+		this.header = header;
+	}
+
+	@Override
+	public Response execute(Request request, Options options) throws IOException {
+		Object key = getKey(request);
+		if (key == null) {
+			return this.delegate.execute(request, options);
+		}
+		LoadBalancerKeyHolder.setKey(key);
+		try {
+			return this.delegate.execute(request, options);
+		}
+		finally {
+			LoadBalancerKeyHolder.resetKey();
+		}
+	}
+
+	private Object getKey(Request request) {
+		for (String name : request.headers().keySet()) {
+			if (name.equalsIgnoreCase(this.header)) {
+				Collection<String> values = request.headers().get(name);
+				if (values != null && !values.isEmpty()) {
+					String value = values.iterator().next();
+					return StringUtils.hasText(value) ? value : null;
+				}
+			}
+		}
+		return null;
+	}
+
+}
@@ -21,6 +21,9 @@ import java.net.URI;
 import java.util.Collection;
 import java.util.Map;
 
+import org.springframework.cloud.netflix.ribbon.RetryBudget;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+
 import com.netflix.client.AbstractLoadBalancerAwareClient;
 import com.netflix.client.ClientException;
 import com.netflix.client.ClientRequest;
@@ -36,6 +39,11 @@ import feign.Request;
 import feign.RequestTemplate;
 import feign.Response;
 
+/**
+ * A Ribbon client that sends Feign requests to the servers of a load balancer. Its
+ * retries are limited by a {@link RetryBudget}, which should be the one shared by the
+ * other clients of the same service (see {@link SpringClientFactory#getRetryBudget(String)}).
+ */
 public class RibbonLoadBalancer
 		extends
 		AbstractLoadBalancerAwareClient<RibbonLoadBalancer.RibbonRequest, RibbonLoadBalancer.RibbonResponse> {
@@ -48,9 +56,22 @@ public class RibbonLoadBalancer
 
 	private final IClientConfig clientConfig;
 
+	private final RetryBudget retryBudget;
+
+	/**
+	 * @deprecated since the retries are not limited by the budget of the client, use
+	 * {@link #RibbonLoadBalancer(Client, ILoadBalancer, IClientConfig, RetryBudget)}
+	 */
+	@Deprecated
 	public RibbonLoadBalancer(Client delegate, ILoadBalancer lb,
 			IClientConfig clientConfig) {
+		this(delegate, lb, clientConfig, new RetryBudget(false, 0, 0));
+	}
+
+	public RibbonLoadBalancer(Client delegate, ILoadBalancer lb,
+			IClientConfig clientConfig, RetryBudget retryBudget) {
 		super(lb, clientConfig);
+		this.retryBudget = retryBudget;
 		this.setRetryHandler(RetryHandler.DEFAULT);
 		this.clientConfig = clientConfig;
 		this.delegate = delegate;
@@ -72,12 +93,21 @@ public class RibbonLoadBalancer
 			options = new Request.Options(this.connectTimeout, this.readTimeout);
 		}
 		Response response = this.delegate.execute(request.toRequest(), options);
+		if (response.status() < 500) {
+			// a server error should not make more room for retries
+			this.retryBudget.success();
+		}
 		return new RibbonResponse(request.getUri(), response);
 	}
 
 	@Override
 	public RequestSpecificRetryHandler getRequestSpecificRetryHandler(
 			RibbonRequest request, IClientConfig requestConfig) {
+		return this.retryBudget.wrap(createRetryHandler(request, requestConfig));
+	}
+
+	private RequestSpecificRetryHandler createRetryHandler(RibbonRequest request,
+			IClientConfig requestConfig) {
 		if (this.clientConfig.get(CommonClientConfigKey.OkToRetryOnAllOperations, false)) {
 			return new RequestSpecificRetryHandler(true, true, this.getRetryHandler(),
 					requestConfig);
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import com.netflix.client.config.IClientConfigKey;
+
+/**
+ * A Ribbon client property that is not one of the {@link
+ * com.netflix.client.config.CommonClientConfigKey common ones}.
+ *
+ * @author Dave Syer
+ */
+class ClientConfigKey<T> implements IClientConfigKey<T> {
+
+	private final String key;
+
+	private final Class<T> type;
+
+	ClientConfigKey(String key, Class<T> type) {
+		this.key = key;
+		this.type = type;
+	}
+
+	@Override
+	public String key() {
+		return this.key;
+	}
+
+	@Override
+	public Class<T> type() {
+		return this.type;
+	}
+
+	@Override
+	public String toString() {
+		return this.key;
+	}
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+
+/**
+ * A rule that sends the requests with the same load balancer key (e.g. a tenant or a
+ * user) to the same server, as long as it is available, so that the local caches of the
+ * servers get a better hit rate. The servers are placed on a hash ring with a number of
+ * virtual nodes each, and a key goes to the first server after its hash, so when a
+ * server comes or goes only its own keys move. The ring is replaced when the list of
+ * servers changes, re-using the virtual nodes of the servers that were already there.
+ * Without a key (from the request or the {@link LoadBalancerKeyHolder}) a server is
+ * picked at random. Select it with <code>{client}.ribbon.NFLoadBalancerRuleClassName</code>.
+ *
+ * @author Dave Syer
+ */
+public class ConsistentHashRule extends AbstractLoadBalancerRule {
+
+	private static final int DEFAULT_REPLICAS = 100;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ConcurrentMap<String, long[]> nodes = new ConcurrentHashMap<>();
+
+	private final int replicas;
+
+	private volatile Ring ring = new Ring(Collections.<Server> emptyList(),
+			new long[0], new Server[0]);
+
+	public ConsistentHashRule() {
+		this(DEFAULT_REPLICAS);
+	}
+
+	/**
+	 * @param replicas the number of virtual nodes of each server on the ring
+	 */
+	public ConsistentHashRule(int replicas) {
+		this.replicas = replicas;
+	}
+
+	@Override
+	public void initWithNiwsConfig(IClientConfig config) {
+	}
+
+	@Override
+	public Server choose(Object key) {
+		ILoadBalancer balancer = getLoadBalancer();
+		if (balancer == null) {
+			return null;
+		}
+		List<Server> servers = balancer.getServerList(true);
+		if (servers.isEmpty()) {
+			servers = balancer.getServerList(false);
+		}
+		if (servers.isEmpty()) {
+			return null;
+		}
+		if (key == null || "default".equals(key)) {
+			key = LoadBalancerKeyHolder.getKey();
+		}
+		if (key == null) {
+			return servers.get(ThreadLocalRandom.current().nextInt(servers.size()));
+		}
+		return getRing(servers).get(hash(key.toString()));
+	}
+
+	Ring getRing(List<Server> servers) {
+		Ring ring = this.ring;
+		if (!ring.servers.equals(servers)) {
+			ring = build(new ArrayList<>(servers));
+			this.ring = ring;
+		}
+		return ring;
+	}
+
+	private Ring build(List<Server> servers) {
+		Set<String> ids = new HashSet<>();
+		long[][] points = new long[servers.size()][];
+		for (int i = 0; i < servers.size(); i++) {
+			String id = servers.get(i).getId();
+			ids.add(id);
+			points[i] = this.nodes.get(id);
+			if (points[i] == null) {
+				points[i] = new long[this.replicas];
+				for (int j = 0; j < this.replicas; j++) {
+					points[i][j] = hash(id + "#" + j);
+				}
+				this.nodes.put(id, points[i]);
+			}
+		}
+		this.nodes.keySet().retainAll(ids);
+		long[][] entries = new long[servers.size() * this.replicas][];
+		int count = 0;
+		for (int i = 0; i < servers.size(); i++) {
+			for (long point : points[i]) {
+				entries[count++] = new long[] { point, i };
+			}
+		}
+		Arrays.sort(entries, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] one, long[] other) {
+				return Long.compare(one[0], other[0]);
+			}
+		});
+		long[] hashes = new long[count];
+		Server[] owners = new Server[count];
+		for (int i = 0; i < count; i++) {
+			hashes[i] = entries[i][0];
+			owners[i] = servers.get((int) entries[i][1]);
+		}
+		return new Ring(servers, hashes, owners);
+	}
+
+	static long hash(String value) {
+		// 64 bit FNV-1a, with the murmur3 finalizer to spread the bits
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : value.getBytes(UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * The virtual nodes of a list of servers, sorted by hash.
+	 */
+	static class Ring {
+
+		private final List<Server> servers;
+
+		private final long[] hashes;
+
+		private final Server[] owners;
+
+		Ring(List<Server> servers, long[] hashes, Server[] owners) {
+			this.servers = servers;
+			this.hashes = hashes;
+			this.owners = owners;
+		}
+
+		Server get(long hash) {
+			int index = Arrays.binarySearch(this.hashes, hash);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			return this.owners[index == this.owners.length ? 0 : index];
+		}
+
+	}
+
+}
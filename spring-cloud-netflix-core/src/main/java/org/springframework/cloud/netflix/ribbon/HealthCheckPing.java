@@ -0,0 +1,322 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.apachecommons.CommonsLog;
+
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.client.config.IClientConfigKey;
+import com.netflix.loadbalancer.IPing;
+import com.netflix.loadbalancer.Server;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.BasicTimer;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
+
+/**
+ * An {@link IPing} that probes a health endpoint of each server in the background
+ * (with a shared, non-blocking {@link HealthChecker}) and answers from the latest
+ * results, so that the ping of the load balancer never waits for a server. A server is
+ * marked down after a number of failed probes in a row, and up again after a number of
+ * successful ones, so that a single slow response does not take it out of rotation.
+ * The probes of each server are spread out with a random delay of up to 10% of the
+ * interval. The servers that the load balancer stops asking about are no longer probed.
+ * The checks are set with the <code>HealthCheck*</code> client properties (e.g.
+ * <code>users.ribbon.HealthCheckPath=/health</code>). The probes only speak plain HTTP,
+ * so the servers of a secure client (<code>IsSecure</code>) are only checked for
+ * accepting connections, unless the checks go to another port. The probes, failures
+ * and latency are registered with Servo as <code>HealthCheck_{client}</code>.
+ *
+ * @author Dave Syer
+ */
+@CommonsLog
+public class HealthCheckPing implements IPing {
+
+	public static final IClientConfigKey<Boolean> ENABLED = new ClientConfigKey<>(
+			"HealthCheckEnabled", Boolean.class);
+
+	public static final IClientConfigKey<String> PATH = new ClientConfigKey<>(
+			"HealthCheckPath", String.class);
+
+	public static final IClientConfigKey<Integer> PORT = new ClientConfigKey<>(
+			"HealthCheckPort", Integer.class);
+
+	public static final IClientConfigKey<Integer> INTERVAL = new ClientConfigKey<>(
+			"HealthCheckInterval", Integer.class);
+
+	public static final IClientConfigKey<Integer> TIMEOUT = new ClientConfigKey<>(
+			"HealthCheckTimeout", Integer.class);
+
+	public static final IClientConfigKey<Integer> UNHEALTHY_THRESHOLD = new ClientConfigKey<>(
+			"HealthCheckUnhealthyThreshold", Integer.class);
+
+	public static final IClientConfigKey<Integer> HEALTHY_THRESHOLD = new ClientConfigKey<>(
+			"HealthCheckHealthyThreshold", Integer.class);
+
+	private static final long MIN_EXPIRY = 60000;
+
+	private final ConcurrentMap<String, Target> targets = new ConcurrentHashMap<>();
+
+	private final HealthChecker checker;
+
+	private final IPing delegate;
+
+	private final String name;
+
+	private final String path;
+
+	private final int port;
+
+	private final boolean secure;
+
+	private final long interval;
+
+	private final long timeout;
+
+	private final int unhealthyThreshold;
+
+	private final int healthyThreshold;
+
+	private volatile boolean closed;
+
+	final BasicCounter probes = new BasicCounter(MonitorConfig.builder("probes")
+			.build());
+
+	final BasicCounter failures = new BasicCounter(MonitorConfig.builder("failures")
+			.build());
+
+	final BasicCounter markedDown = new BasicCounter(MonitorConfig.builder(
+			"markedDown").build());
+
+	final BasicCounter markedUp = new BasicCounter(MonitorConfig.builder("markedUp")
+			.build());
+
+	final BasicTimer latency = new BasicTimer(MonitorConfig.builder("latency").build(),
+			TimeUnit.MILLISECONDS);
+
+	final BasicGauge<Integer> down = new BasicGauge<>(MonitorConfig.builder("down")
+			.build(), new Callable<Integer>() {
+		@Override
+		public Integer call() {
+			int count = 0;
+			for (Target target : HealthCheckPing.this.targets.values()) {
+				if (!target.alive) {
+					count++;
+				}
+			}
+			return count;
+		}
+	});
+
+	public HealthCheckPing(IClientConfig config) {
+		this(config, null);
+	}
+
+	/**
+	 * @param config the client config with the settings of the checks
+	 * @param delegate a ping that has to pass as well (e.g. one that checks the status in
+	 * a registry), or null
+	 */
+	public HealthCheckPing(IClientConfig config, IPing delegate) {
+		this(HealthChecker.getInstance(), config, delegate);
+	}
+
+	HealthCheckPing(HealthChecker checker, IClientConfig config, IPing delegate) {
+		this.checker = checker;
+		this.delegate = delegate;
+		this.name = config.getClientName();
+		this.path = config.getPropertyAsString(PATH, "/health");
+		this.port = config.getPropertyAsInteger(PORT, 0);
+		this.secure = config.getPropertyAsBoolean(CommonClientConfigKey.IsSecure, false);
+		this.interval = Math.max(1, config.getPropertyAsInteger(INTERVAL, 10000));
+		this.timeout = config.getPropertyAsInteger(TIMEOUT, 2000);
+		this.unhealthyThreshold = config.getPropertyAsInteger(UNHEALTHY_THRESHOLD, 2);
+		this.healthyThreshold = config.getPropertyAsInteger(HEALTHY_THRESHOLD, 2);
+		Monitors.registerObject("HealthCheck_" + this.name, this);
+	}
+
+	@Override
+	public boolean isAlive(Server server) {
+		Target target = getTarget(server);
+		if (this.delegate != null && !this.delegate.isAlive(server)) {
+			return false;
+		}
+		return target.alive;
+	}
+
+	/**
+	 * Stop probing the servers.
+	 */
+	public void close() {
+		this.closed = true;
+		for (Target target : this.targets.values()) {
+			target.cancel();
+		}
+		this.targets.clear();
+		Monitors.unregisterObject("HealthCheck_" + this.name, this);
+	}
+
+	/**
+	 * @param server a server
+	 * @return true if the server only accepts TLS connections on its port
+	 */
+	protected boolean isSecure(Server server) {
+		return this.secure;
+	}
+
+	private Target getTarget(Server server) {
+		String key = server.getHostPort();
+		Target target = this.targets.get(key);
+		if (target == null) {
+			// no HTTP request to a TLS port (it would never get an HTTP status back)
+			String path = this.port <= 0 && isSecure(server) ? "" : this.path;
+			target = new Target(key, server.getHost(), this.port > 0 ? this.port
+					: server.getPort(), path);
+			target.resolve();
+			Target existing = this.targets.putIfAbsent(key, target);
+			if (existing != null) {
+				target = existing;
+			}
+			else if (!this.closed) {
+				// spread out the first probes of the servers over the interval
+				target.schedule(ThreadLocalRandom.current().nextLong(this.interval));
+			}
+		}
+		target.seen = System.currentTimeMillis();
+		// in case the name could not be resolved the last time
+		target.resolve();
+		return target;
+	}
+
+	/**
+	 * The state of one server, with at most one probe in flight.
+	 */
+	private class Target implements Runnable, HealthChecker.Callback {
+
+		private final String key;
+
+		private final String host;
+
+		private final int port;
+
+		private final String path;
+
+		private volatile InetSocketAddress address;
+
+		private volatile boolean alive = true;
+
+		private volatile long seen;
+
+		private volatile ScheduledFuture<?> future;
+
+		private int successesInARow;
+
+		private int failuresInARow;
+
+		Target(String key, String host, int port, String path) {
+			this.key = key;
+			this.host = host;
+			this.port = port;
+			this.path = path;
+			// before the first probe is scheduled, so it does not find it expired
+			this.seen = System.currentTimeMillis();
+		}
+
+		/**
+		 * Resolve the address of the server (once) on the thread of the caller, instead
+		 * of the thread of the checker that is shared by all the clients.
+		 */
+		void resolve() {
+			InetSocketAddress address = this.address;
+			if (address == null || address.isUnresolved()) {
+				this.address = new InetSocketAddress(this.host, this.port);
+			}
+		}
+
+		@Override
+		public void run() {
+			long expiry = Math.max(3 * HealthCheckPing.this.interval, MIN_EXPIRY);
+			if (System.currentTimeMillis() - this.seen > expiry) {
+				// not in the server list any more
+				HealthCheckPing.this.targets.remove(this.key, this);
+				return;
+			}
+			InetSocketAddress address = this.address;
+			if (address == null || address.isUnresolved()) {
+				done(false, 0);
+				return;
+			}
+			HealthCheckPing.this.checker.probe(address, this.path,
+					HealthCheckPing.this.timeout, this);
+		}
+
+		@Override
+		public void done(boolean healthy, long millis) {
+			HealthCheckPing.this.probes.increment();
+			HealthCheckPing.this.latency.record(millis, TimeUnit.MILLISECONDS);
+			if (healthy) {
+				this.failuresInARow = 0;
+				if (!this.alive
+						&& ++this.successesInARow >= HealthCheckPing.this.healthyThreshold) {
+					this.alive = true;
+					HealthCheckPing.this.markedUp.increment();
+					log.info("Marked " + this.host + ":" + this.port + " up for "
+							+ HealthCheckPing.this.name);
+				}
+			}
+			else {
+				HealthCheckPing.this.failures.increment();
+				this.successesInARow = 0;
+				if (this.alive
+						&& ++this.failuresInARow >= HealthCheckPing.this.unhealthyThreshold) {
+					this.alive = false;
+					HealthCheckPing.this.markedDown.increment();
+					log.warn("Marked " + this.host + ":" + this.port + " down for "
+							+ HealthCheckPing.this.name);
+				}
+			}
+			if (!HealthCheckPing.this.closed) {
+				long interval = HealthCheckPing.this.interval;
+				schedule(interval - interval / 10
+						+ ThreadLocalRandom.current().nextLong(interval / 5 + 1));
+			}
+		}
+
+		void schedule(long delay) {
+			this.future = HealthCheckPing.this.checker.schedule(this, delay);
+		}
+
+		void cancel() {
+			ScheduledFuture<?> future = this.future;
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+
+	}
+
+}
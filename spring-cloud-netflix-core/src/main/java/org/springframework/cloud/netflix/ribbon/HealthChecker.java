@@ -0,0 +1,324 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Probes the health endpoints of servers with plain HTTP over non-blocking sockets. One
+ * thread schedules the probes, and one selector thread runs all of them at the same
+ * time, so a slow or dead server does not hold up the others (or need a thread of its
+ * own). The addresses are resolved by the callers, so that a slow name lookup does not
+ * hold up the threads either. A single instance is shared by all the Ribbon clients.
+ *
+ * @author Dave Syer
+ */
+@CommonsLog
+class HealthChecker implements Runnable {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private static final long SELECT_MILLIS = 50;
+
+	private final Queue<Probe> queue = new ConcurrentLinkedQueue<>();
+
+	private final Set<Probe> active = new LinkedHashSet<>();
+
+	private final Selector selector;
+
+	private final ScheduledExecutorService scheduler;
+
+	private volatile boolean closed;
+
+	HealthChecker() {
+		try {
+			this.selector = Selector.open();
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Could not open selector", ex);
+		}
+		CustomizableThreadFactory threads = new CustomizableThreadFactory(
+				"ribbon-health-check-");
+		threads.setDaemon(true);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(threads);
+		threads.newThread(this).start();
+	}
+
+	/**
+	 * @return the instance shared by all the clients
+	 */
+	static HealthChecker getInstance() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Run a task (e.g. a probe) on the scheduler thread after a delay.
+	 * @param task the task
+	 * @param delay the delay in millis
+	 * @return the future of the task, to cancel it
+	 */
+	ScheduledFuture<?> schedule(Runnable task, long delay) {
+		return this.scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Start a probe. The callback is always called (once), on the selector thread.
+	 * @param address the (resolved) address of the server
+	 * @param path the path of the health endpoint, or empty to only check that the port
+	 * accepts connections
+	 * @param timeout the timeout of the whole probe in millis
+	 * @param callback the callback with the result
+	 */
+	void probe(InetSocketAddress address, String path, long timeout, Callback callback) {
+		long start = System.currentTimeMillis();
+		ByteBuffer request = null;
+		if (StringUtils.hasText(path)) {
+			request = ByteBuffer.wrap(("GET " + path + " HTTP/1.1\r\nHost: "
+					+ address.getHostString() + ":" + address.getPort()
+					+ "\r\nConnection: close\r\n\r\n").getBytes(ASCII));
+		}
+		this.queue.add(new Probe(address, request, start, start + timeout, callback));
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Stop the threads and fail the probes in flight (the shared instance is never
+	 * closed).
+	 */
+	void close() {
+		this.closed = true;
+		this.scheduler.shutdownNow();
+		this.selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (!this.closed) {
+			try {
+				this.selector.select(SELECT_MILLIS);
+				Probe probe = this.queue.poll();
+				while (probe != null) {
+					connect(probe);
+					probe = this.queue.poll();
+				}
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (key.isValid()) {
+						handle(key);
+					}
+				}
+				expire();
+			}
+			catch (Throwable ex) {
+				// this is the only selector thread, so it has to keep going
+				log.warn("Health check failed", ex);
+			}
+		}
+		Probe probe = this.queue.poll();
+		while (probe != null) {
+			this.active.add(probe);
+			probe = this.queue.poll();
+		}
+		for (Probe active : new ArrayList<>(this.active)) {
+			finish(active, false);
+		}
+		try {
+			this.selector.close();
+		}
+		catch (IOException ex) {
+			// ignore
+		}
+	}
+
+	private void connect(Probe probe) {
+		this.active.add(probe);
+		try {
+			probe.channel = SocketChannel.open();
+			probe.channel.configureBlocking(false);
+			boolean connected = probe.channel.connect(probe.address);
+			probe.channel.register(this.selector, SelectionKey.OP_CONNECT, probe);
+			if (connected) {
+				connected(probe);
+			}
+		}
+		catch (IOException ex) {
+			finish(probe, false);
+		}
+	}
+
+	private void handle(SelectionKey key) {
+		Probe probe = (Probe) key.attachment();
+		try {
+			if (key.isConnectable()) {
+				if (probe.channel.finishConnect()) {
+					connected(probe);
+				}
+			}
+			else if (key.isWritable()) {
+				probe.channel.write(probe.request);
+				if (!probe.request.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_READ);
+				}
+			}
+			else if (key.isReadable()) {
+				int count = probe.channel.read(probe.response);
+				int status = probe.getStatus();
+				if (status > 0) {
+					finish(probe, status >= 200 && status < 300);
+				}
+				else if (count < 0 || status < 0) {
+					finish(probe, false);
+				}
+			}
+		}
+		catch (IOException ex) {
+			finish(probe, false);
+		}
+	}
+
+	private void connected(Probe probe) {
+		if (probe.request == null) {
+			finish(probe, true);
+		}
+		else {
+			probe.channel.keyFor(this.selector).interestOps(SelectionKey.OP_WRITE);
+		}
+	}
+
+	private void expire() {
+		if (this.active.isEmpty()) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		for (Probe probe : new ArrayList<>(this.active)) {
+			if (now > probe.deadline) {
+				finish(probe, false);
+			}
+		}
+	}
+
+	private void finish(Probe probe, boolean healthy) {
+		if (!this.active.remove(probe)) {
+			return;
+		}
+		if (probe.channel != null) {
+			try {
+				probe.channel.close();
+			}
+			catch (IOException ex) {
+				// ignore
+			}
+		}
+		try {
+			probe.callback.done(healthy, System.currentTimeMillis() - probe.start);
+		}
+		catch (Exception ex) {
+			log.warn("Health check callback failed", ex);
+		}
+	}
+
+	/**
+	 * Called with the result of a probe.
+	 */
+	interface Callback {
+
+		/**
+		 * @param healthy true if the server responded with a 2xx status (or accepted the
+		 * connection, if there is no path) in time
+		 * @param millis the time it took
+		 */
+		void done(boolean healthy, long millis);
+
+	}
+
+	private static class Probe {
+
+		private final InetSocketAddress address;
+
+		private final ByteBuffer request;
+
+		private final ByteBuffer response = ByteBuffer.allocate(16);
+
+		private final long start;
+
+		private final long deadline;
+
+		private final Callback callback;
+
+		private SocketChannel channel;
+
+		Probe(InetSocketAddress address, ByteBuffer request, long start,
+				long deadline, Callback callback) {
+			this.address = address;
+			this.request = request;
+			this.start = start;
+			this.deadline = deadline;
+			this.callback = callback;
+		}
+
+		/**
+		 * @return the status from the response line ("HTTP/1.1 200"), 0 if it has not
+		 * all been read yet, or -1 if it is not HTTP
+		 */
+		int getStatus() {
+			if (this.response.position() < 12) {
+				return 0;
+			}
+			String line = new String(this.response.array(), 0, 12, ASCII);
+			if (!line.startsWith("HTTP/") || line.charAt(8) != ' ') {
+				return -1;
+			}
+			try {
+				return Integer.parseInt(line.substring(9, 12));
+			}
+			catch (NumberFormatException ex) {
+				return -1;
+			}
+		}
+
+	}
+
+	private static class Holder {
+
+		private static final HealthChecker INSTANCE = new HealthChecker();
+
+	}
+
+}
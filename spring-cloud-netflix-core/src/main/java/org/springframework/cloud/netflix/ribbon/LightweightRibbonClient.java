@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.cloud.netflix.ribbon.eureka.EurekaRibbonClientComponents;
+import org.springframework.cloud.netflix.ribbon.eureka.EurekaRibbonClientConfiguration;
+import org.springframework.context.ApplicationContext;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.discovery.EurekaClientConfig;
+import com.netflix.http4.NFHttpClientFactory;
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.IPing;
+import com.netflix.loadbalancer.IRule;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerList;
+import com.netflix.loadbalancer.ServerListFilter;
+import com.netflix.niws.client.http.RestClient;
+
+/**
+ * The components of a Ribbon client created without a child application context. They
+ * are created by {@link RibbonClientComponents} (and {@link EurekaRibbonClientComponents}
+ * if {@link EurekaRibbonClientConfiguration} is the default configuration), like the
+ * beans of the configurations, unless the parent context has a bean of the same type.
+ * The {@link RestClient} is created on demand, like the lazy bean in the context.
+ *
+ * @author Dave Syer
+ */
+class LightweightRibbonClient {
+
+	static final String EUREKA_CONFIGURATION = "org.springframework.cloud.netflix.ribbon.eureka.EurekaRibbonClientConfiguration";
+
+	private final String name;
+
+	private final ApplicationContext parent;
+
+	private final List<Object> components = new ArrayList<>();
+
+	private final IClientConfig config;
+
+	private final ILoadBalancer loadBalancer;
+
+	private RestClient restClient;
+
+	LightweightRibbonClient(String name, ApplicationContext parent, boolean eureka) {
+		this.name = name;
+		this.parent = parent;
+		if (eureka) {
+			EurekaRibbonClientComponents.preprocess(getShared(EurekaClientConfig.class),
+					name);
+		}
+		IClientConfig config = getShared(IClientConfig.class);
+		if (config == null) {
+			config = RibbonClientComponents.clientConfig(name);
+		}
+		IRule rule = getShared(IRule.class);
+		if (rule == null) {
+			rule = RibbonClientComponents.rule(name, config);
+		}
+		IPing ping = getShared(IPing.class);
+		if (ping == null) {
+			ping = eureka ? EurekaRibbonClientComponents.ping(config)
+					: RibbonClientComponents.ping(config);
+		}
+		@SuppressWarnings("unchecked")
+		ServerList<Server> serverList = getShared(ServerList.class);
+		if (serverList == null) {
+			@SuppressWarnings("unchecked")
+			ServerList<Server> created = (ServerList<Server>) (eureka ? EurekaRibbonClientComponents
+					.serverList(config, parent != null
+							&& parent.getEnvironment().getProperty(
+									"ribbon.eureka.approximateZoneFromHostname",
+									Boolean.class, false))
+					: RibbonClientComponents.serverList(config));
+			serverList = created;
+		}
+		@SuppressWarnings("unchecked")
+		ServerListFilter<Server> filter = getShared(ServerListFilter.class);
+		if (filter == null) {
+			filter = RibbonClientComponents.serverListFilter(config);
+		}
+		ILoadBalancer loadBalancer = getShared(ILoadBalancer.class);
+		if (loadBalancer == null) {
+			loadBalancer = RibbonClientComponents.loadBalancer(config, serverList,
+					filter, rule, ping);
+		}
+		RetryBudget budget = getShared(RetryBudget.class);
+		if (budget == null) {
+			budget = RibbonClientComponents.retryBudget(name, config);
+		}
+		RibbonLoadBalancerContext context = getShared(RibbonLoadBalancerContext.class);
+		if (context == null) {
+			context = RibbonClientComponents.loadBalancerContext(loadBalancer, config);
+		}
+		this.config = config;
+		this.loadBalancer = loadBalancer;
+		add(config, rule, ping, serverList, filter, loadBalancer, budget, context);
+	}
+
+	/**
+	 * @param type the type of component
+	 * @return the component of that type, or null if there is none
+	 */
+	synchronized <C> C getInstance(Class<C> type) {
+		for (Object component : this.components) {
+			if (type.isInstance(component)) {
+				return type.cast(component);
+			}
+		}
+		if (this.restClient == null && type.isAssignableFrom(RestClient.class)) {
+			this.restClient = getShared(RestClient.class);
+			if (this.restClient == null) {
+				this.restClient = RibbonClientComponents.restClient(this.name,
+						this.config, this.loadBalancer, getInstance(RetryBudget.class));
+			}
+			this.components.add(this.restClient);
+			return type.cast(this.restClient);
+		}
+		return null;
+	}
+
+	/**
+	 * Stop the background tasks of the load balancer and the connection pool of the
+	 * {@link RestClient} (like closing the context would).
+	 */
+	void close() {
+		boolean sharedBalancer = getShared(ILoadBalancer.class) != null;
+		RestClient restClient;
+		synchronized (this) {
+			restClient = this.restClient;
+		}
+		if (restClient != null && getShared(RestClient.class) == null) {
+			if (sharedBalancer) {
+				// only the connection pool (the client would shut down the balancer too)
+				NFHttpClientFactory.shutdownNFHttpClient(this.config.getClientName());
+			}
+			else {
+				restClient.shutdown();
+			}
+		}
+		else if (this.loadBalancer instanceof BaseLoadBalancer && !sharedBalancer) {
+			((BaseLoadBalancer) this.loadBalancer).shutdown();
+		}
+		IPing ping = getInstance(IPing.class);
+		if (ping instanceof HealthCheckPing && getShared(IPing.class) == null) {
+			((HealthCheckPing) ping).close();
+		}
+		if (getShared(RetryBudget.class) == null) {
+			getInstance(RetryBudget.class).close();
+		}
+	}
+
+	String getName() {
+		return this.name;
+	}
+
+	private void add(Object... components) {
+		for (Object component : components) {
+			this.components.add(component);
+		}
+	}
+
+	private <T> T getShared(Class<T> type) {
+		if (this.parent != null
+				&& BeanFactoryUtils.beanNamesForTypeIncludingAncestors(this.parent, type).length > 0) {
+			return this.parent.getBean(type);
+		}
+		return null;
+	}
+
+}
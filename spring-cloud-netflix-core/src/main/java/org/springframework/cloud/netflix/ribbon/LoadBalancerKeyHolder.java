@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+/**
+ * Holds a load balancer key for the requests of the current thread, for callers that
+ * cannot pass one to Ribbon themselves (like Feign). Key-aware rules (like
+ * {@link ConsistentHashRule}) use it when they are asked to choose a server without a
+ * key.
+ *
+ * @author Dave Syer
+ */
+public abstract class LoadBalancerKeyHolder {
+
+	private static final ThreadLocal<Object> key = new ThreadLocal<>();
+
+	/**
+	 * @param value the key for the requests of the current thread
+	 */
+	public static void setKey(Object value) {
+		key.set(value);
+	}
+
+	/**
+	 * @return the key for the requests of the current thread, or null
+	 */
+	public static Object getKey() {
+		return key.get();
+	}
+
+	/**
+	 * Remove the key of the current thread.
+	 */
+	public static void resetKey() {
+		key.remove();
+	}
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.AbstractLoadBalancer;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.LoadBalancerStats;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerStats;
+
+/**
+ * A rule that picks two servers at random and keeps the one with the lower score, where
+ * the score is an exponentially weighted moving average of its response times
+ * multiplied by its requests in flight (both plus one, so that idle and unmeasured
+ * servers get a share as well). The response times and requests in flight come from the
+ * {@link ServerStats} of the load balancer, which Ribbon updates on every request.
+ * Choosing a server does not lock: the moving averages are immutable and replaced with
+ * a compare and set. Select it with
+ * <code>{client}.ribbon.NFLoadBalancerRuleClassName</code>.
+ *
+ * @author Dave Syer
+ */
+public class PowerOfTwoChoicesRule extends AbstractLoadBalancerRule {
+
+	private static final long DEFAULT_DECAY_TIME = 10000;
+
+	private final ConcurrentMap<String, AtomicReference<Ewma>> latencies = new ConcurrentHashMap<>();
+
+	private final long decayTime;
+
+	public PowerOfTwoChoicesRule() {
+		this(DEFAULT_DECAY_TIME);
+	}
+
+	/**
+	 * @param decayTime the millis after which a response time only has 1/e of its
+	 * original weight in the moving average
+	 */
+	public PowerOfTwoChoicesRule(long decayTime) {
+		this.decayTime = decayTime;
+	}
+
+	@Override
+	public void initWithNiwsConfig(IClientConfig config) {
+	}
+
+	@Override
+	public Server choose(Object key) {
+		ILoadBalancer balancer = getLoadBalancer();
+		if (balancer == null) {
+			return null;
+		}
+		List<Server> servers = balancer.getServerList(true);
+		if (servers.isEmpty()) {
+			servers = balancer.getServerList(false);
+		}
+		int size = servers.size();
+		if (size == 0) {
+			return null;
+		}
+		if (size == 1 || !(balancer instanceof AbstractLoadBalancer)) {
+			return servers.get(ThreadLocalRandom.current().nextInt(size));
+		}
+		LoadBalancerStats stats = ((AbstractLoadBalancer) balancer)
+				.getLoadBalancerStats();
+		if (this.latencies.size() > 2 * size) {
+			removeOldServers(servers);
+		}
+		int first = ThreadLocalRandom.current().nextInt(size);
+		int second = ThreadLocalRandom.current().nextInt(size - 1);
+		if (second >= first) {
+			second++;
+		}
+		Server one = servers.get(first);
+		Server other = servers.get(second);
+		ServerStats oneStats = stats.getSingleServerStat(one);
+		ServerStats otherStats = stats.getSingleServerStat(other);
+		long now = now();
+		boolean oneTripped = oneStats.isCircuitBreakerTripped();
+		if (oneTripped != otherStats.isCircuitBreakerTripped()) {
+			return oneTripped ? other : one;
+		}
+		return getScore(one, oneStats, now) <= getScore(other, otherStats, now) ? one
+				: other;
+	}
+
+	long now() {
+		return System.currentTimeMillis();
+	}
+
+	double getScore(Server server, ServerStats stats, long now) {
+		return (getLatency(server, stats, now) + 1)
+				* (stats.getActiveRequestsCount() + 1);
+	}
+
+	double getLatency(Server server, ServerStats stats, long now) {
+		AtomicReference<Ewma> latency = this.latencies.get(server.getId());
+		if (latency == null) {
+			latency = new AtomicReference<>(Ewma.EMPTY);
+			AtomicReference<Ewma> existing = this.latencies.putIfAbsent(server.getId(),
+					latency);
+			if (existing != null) {
+				latency = existing;
+			}
+		}
+		Ewma current = latency.get();
+		// every response noted by the load balancer context is counted as a request
+		long count = stats.getTotalRequestsCount();
+		if (count == current.count) {
+			return current.value;
+		}
+		Ewma next = current.update(count, stats.getResponseTimeAvg() * count, now,
+				this.decayTime);
+		// if another thread got there first it has the same samples
+		latency.compareAndSet(current, next);
+		return next.value;
+	}
+
+	private void removeOldServers(List<Server> servers) {
+		Set<String> ids = new HashSet<>();
+		for (Server server : servers) {
+			ids.add(server.getId());
+		}
+		this.latencies.keySet().retainAll(ids);
+	}
+
+	/**
+	 * The moving average of the response times of a server, and the totals of the
+	 * server stats it was computed from.
+	 */
+	static class Ewma {
+
+		static final Ewma EMPTY = new Ewma(0, 0, 0, 0);
+
+		private final long count;
+
+		private final double sum;
+
+		private final double value;
+
+		private final long time;
+
+		Ewma(long count, double sum, double value, long time) {
+			this.count = count;
+			this.sum = sum;
+			this.value = value;
+			this.time = time;
+		}
+
+		double getValue() {
+			return this.value;
+		}
+
+		Ewma update(long count, double sum, long now, long decayTime) {
+			if (this.count == 0 || count < this.count) {
+				// first samples (or the stats were reset)
+				return new Ewma(count, sum, count == 0 ? 0 : sum / count, now);
+			}
+			double sample = Math.max(0, (sum - this.sum) / (count - this.count));
+			double weight = Math.exp(-Math.max(0, now - this.time) / (double) decayTime);
+			return new Ewma(count, sum, this.value * weight + sample * (1 - weight), now);
+		}
+
+	}
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.netflix.client.RequestSpecificRetryHandler;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.client.config.IClientConfigKey;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
+
+/**
+ * Limits the retries of a Ribbon client to a percentage of its recent successful
+ * requests (plus a few per second, so that a client with little traffic can still
+ * retry), so that a partial outage does not multiply the load on the servers. The
+ * requests and retries are counted in a sliding window of one second buckets, without
+ * locking. The budget is set with the <code>RetryBudgetEnabled</code>,
+ * <code>RetryBudgetPercent</code> and <code>RetryBudgetMinRetriesPerSecond</code> client
+ * properties (e.g. <code>users.ribbon.RetryBudgetPercent=10</code>). It is used by the
+ * <code>RestClient</code> of the client (and so by the Zuul routes with a
+ * <code>serviceId</code>) and by the Feign
+ * {@link org.springframework.cloud.netflix.feign.ribbon.RibbonLoadBalancer}.
+ *
+ * @author Dave Syer
+ */
+public class RetryBudget {
+
+	public static final IClientConfigKey<Boolean> ENABLED = new ClientConfigKey<>(
+			"RetryBudgetEnabled", Boolean.class);
+
+	public static final IClientConfigKey<Integer> PERCENT = new ClientConfigKey<>(
+			"RetryBudgetPercent", Integer.class);
+
+	public static final IClientConfigKey<Integer> MIN_RETRIES_PER_SECOND = new ClientConfigKey<>(
+			"RetryBudgetMinRetriesPerSecond", Integer.class);
+
+	private static final int WINDOW_SECONDS = 10;
+
+	private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(
+			WINDOW_SECONDS);
+
+	private final boolean enabled;
+
+	private final int percent;
+
+	private final int minRetriesPerSecond;
+
+	final BasicCounter retries = new BasicCounter(MonitorConfig.builder("retries")
+			.build());
+
+	final BasicCounter exhausted = new BasicCounter(MonitorConfig
+			.builder("exhausted").build());
+
+	private String monitorName;
+
+	public RetryBudget(IClientConfig config) {
+		this(config.getPropertyAsBoolean(ENABLED, true), config.getPropertyAsInteger(
+				PERCENT, 20), config.getPropertyAsInteger(MIN_RETRIES_PER_SECOND, 10));
+	}
+
+	public RetryBudget(boolean enabled, int percent, int minRetriesPerSecond) {
+		this.enabled = enabled;
+		this.percent = percent;
+		this.minRetriesPerSecond = minRetriesPerSecond;
+	}
+
+	/**
+	 * Register the metrics with Servo as <code>RetryBudget_{client}</code>, until the
+	 * budget is closed.
+	 * @param clientName the name of the client
+	 */
+	public synchronized void register(String clientName) {
+		if (this.monitorName == null) {
+			this.monitorName = "RetryBudget_" + clientName;
+			Monitors.registerObject(this.monitorName, this);
+		}
+	}
+
+	/**
+	 * Unregister the metrics (if they were registered).
+	 */
+	public synchronized void close() {
+		if (this.monitorName != null) {
+			Monitors.unregisterObject(this.monitorName, this);
+			this.monitorName = null;
+		}
+	}
+
+	/**
+	 * Count a successful request.
+	 */
+	public void success() {
+		getBucket(now()).successes.incrementAndGet();
+	}
+
+	/**
+	 * Ask for a retry, and count it if it is allowed.
+	 * @return true if there is enough budget left for one more retry
+	 */
+	public boolean tryRetry() {
+		long now = now();
+		Bucket current = getBucket(now);
+		if (this.enabled) {
+			long successes = 0;
+			long retries = 0;
+			for (int i = 0; i < WINDOW_SECONDS; i++) {
+				Bucket bucket = this.buckets.get(i);
+				if (bucket != null && now - bucket.second < WINDOW_SECONDS) {
+					successes += bucket.successes.get();
+					retries += bucket.retries.get();
+				}
+			}
+			long allowed = Math.max(this.minRetriesPerSecond * WINDOW_SECONDS,
+					successes * this.percent / 100);
+			if (retries >= allowed) {
+				this.exhausted.increment();
+				return false;
+			}
+		}
+		current.retries.incrementAndGet();
+		this.retries.increment();
+		return true;
+	}
+
+	/**
+	 * Wrap a retry handler so that it only allows retries while there is budget left.
+	 * @param handler the retry handler of a request
+	 * @return a retry handler consulting this budget
+	 */
+	public RequestSpecificRetryHandler wrap(RequestSpecificRetryHandler handler) {
+		return new BudgetRetryHandler(handler, this);
+	}
+
+	long now() {
+		return System.currentTimeMillis() / 1000;
+	}
+
+	private Bucket getBucket(long second) {
+		int index = (int) (second % WINDOW_SECONDS);
+		while (true) {
+			Bucket bucket = this.buckets.get(index);
+			if (bucket != null && bucket.second == second) {
+				return bucket;
+			}
+			if (bucket != null && bucket.second > second) {
+				// the clock went backwards (or a slow thread), so count it anyway
+				return bucket;
+			}
+			if (this.buckets.compareAndSet(index, bucket, new Bucket(second))) {
+				return this.buckets.get(index);
+			}
+		}
+	}
+
+	private static class Bucket {
+
+		private final long second;
+
+		private final AtomicLong successes = new AtomicLong();
+
+		private final AtomicLong retries = new AtomicLong();
+
+		Bucket(long second) {
+			this.second = second;
+		}
+
+	}
+
+	private static class BudgetRetryHandler extends RequestSpecificRetryHandler {
+
+		private final RequestSpecificRetryHandler delegate;
+
+		private final RetryBudget budget;
+
+		BudgetRetryHandler(RequestSpecificRetryHandler delegate, RetryBudget budget) {
+			super(false, false);
+			this.delegate = delegate;
+			this.budget = budget;
+		}
+
+		@Override
+		public boolean isConnectionException(Throwable e) {
+			return this.delegate.isConnectionException(e);
+		}
+
+		@Override
+		public boolean isRetriableException(Throwable e, boolean sameServer) {
+			// only called when the retry limits allow one more attempt
+			return this.delegate.isRetriableException(e, sameServer)
+					&& this.budget.tryRetry();
+		}
+
+		@Override
+		public boolean isCircuitTrippingException(Throwable e) {
+			return this.delegate.isCircuitTrippingException(e);
+		}
+
+		@Override
+		public int getMaxRetriesOnSameServer() {
+			return this.delegate.getMaxRetriesOnSameServer();
+		}
+
+		@Override
+		public int getMaxRetriesOnNextServer() {
+			return this.delegate.getMaxRetriesOnNextServer();
+		}
+
+	}
+
+}
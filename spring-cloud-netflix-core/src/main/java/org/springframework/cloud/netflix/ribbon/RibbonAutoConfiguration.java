@@ -24,6 +24,8 @@ import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerAutoConfiguration;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
 import org.springframework.cloud.client.loadbalancer.RestTemplateCustomizer;
@@ -46,16 +48,25 @@ import com.netflix.client.http.HttpRequest;
 @RibbonClients
 @AutoConfigureAfter(EurekaClientAutoConfiguration.class)
 @AutoConfigureBefore(LoadBalancerAutoConfiguration.class)
+@EnableConfigurationProperties({ RibbonEagerLoadProperties.class,
+		RibbonLightweightProperties.class, RibbonEvictionProperties.class })
 public class RibbonAutoConfiguration {
 
 	@Autowired(required = false)
 	private List<RibbonClientSpecification> configurations = new ArrayList<>();
 
+	@Autowired
+	private RibbonLightweightProperties lightweight;
+
+	@Autowired
+	private RibbonEvictionProperties eviction;
 
 	@Bean
 	public SpringClientFactory springClientFactory() {
 		SpringClientFactory factory = new SpringClientFactory();
 		factory.setConfigurations(this.configurations);
+		factory.setLightweight(this.lightweight.isEnabled());
+		factory.setIdleTimeout(this.eviction.getIdleTimeout());
 		return factory;
 	}
 
@@ -65,6 +76,12 @@ public class RibbonAutoConfiguration {
 		return new RibbonLoadBalancerClient(springClientFactory());
 	}
 
+	@Bean
+	@ConditionalOnProperty("ribbon.eager-load.enabled")
+	public RibbonEagerLoad ribbonEagerLoad(RibbonEagerLoadProperties properties) {
+		return new RibbonEagerLoad(springClientFactory(), properties);
+	}
+
     @Configuration
     @ConditionalOnClass(HttpRequest.class)
     protected static class RibbonClientConfig {
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import org.springframework.cloud.netflix.ribbon.RibbonClientConfiguration.OverrideRestClient;
+import org.springframework.util.StringUtils;
+
+import com.netflix.client.ClientFactory;
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.config.ConfigurationManager;
+import com.netflix.loadbalancer.ConfigurationBasedServerList;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.IPing;
+import com.netflix.loadbalancer.IRule;
+import com.netflix.loadbalancer.NoOpPing;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerList;
+import com.netflix.loadbalancer.ServerListFilter;
+import com.netflix.loadbalancer.ZoneAvoidanceRule;
+import com.netflix.niws.client.http.RestClient;
+import com.netflix.servo.monitor.Monitors;
+
+/**
+ * Creates the default components of a Ribbon client. The beans of
+ * {@link RibbonClientConfiguration} and the clients built without a context (see
+ * {@link SpringClientFactory#setLightweight(boolean)}) are both created here, so that
+ * they are always the same.
+ *
+ * @author Dave Syer
+ */
+public abstract class RibbonClientComponents {
+
+	public static IClientConfig clientConfig(String name) {
+		DefaultClientConfigImpl config = new DefaultClientConfigImpl();
+		config.loadProperties(name);
+		return config;
+	}
+
+	/**
+	 * @param name the client name
+	 * @param config the client config
+	 * @return the rule set with <code>NFLoadBalancerRuleClassName</code> for this client
+	 * (the default in {@link DefaultClientConfigImpl} is ignored), or a
+	 * {@link ZoneAvoidanceRule}
+	 */
+	public static IRule rule(String name, IClientConfig config) {
+		String className = ConfigurationManager.getConfigInstance().getString(
+				name + ".ribbon."
+						+ CommonClientConfigKey.NFLoadBalancerRuleClassName.key());
+		if (StringUtils.hasText(className)) {
+			try {
+				return (IRule) ClientFactory.instantiateInstanceWithClientConfig(
+						className, config);
+			}
+			catch (Exception ex) {
+				throw new IllegalStateException("Could not create rule " + className
+						+ " for Ribbon client " + name, ex);
+			}
+		}
+		ZoneAvoidanceRule rule = new ZoneAvoidanceRule();
+		rule.initWithNiwsConfig(config);
+		return rule;
+	}
+
+	public static IPing ping(IClientConfig config) {
+		if (config.getPropertyAsBoolean(HealthCheckPing.ENABLED, false)) {
+			return new HealthCheckPing(config);
+		}
+		return new NoOpPing();
+	}
+
+	public static ServerList<Server> serverList(IClientConfig config) {
+		ConfigurationBasedServerList serverList = new ConfigurationBasedServerList();
+		serverList.initWithNiwsConfig(config);
+		return serverList;
+	}
+
+	public static ServerListFilter<Server> serverListFilter(IClientConfig config) {
+		ZonePreferenceServerListFilter filter = new ZonePreferenceServerListFilter();
+		filter.initWithNiwsConfig(config);
+		return filter;
+	}
+
+	public static ILoadBalancer loadBalancer(IClientConfig config,
+			ServerList<Server> serverList, ServerListFilter<Server> serverListFilter,
+			IRule rule, IPing ping) {
+		return new SkipUnchangedZoneAwareLoadBalancer<>(config, rule, ping, serverList,
+				serverListFilter);
+	}
+
+	/**
+	 * @param name the client name
+	 * @param config the client config
+	 * @return a retry budget, with its metrics registered with Servo (until it is closed)
+	 */
+	public static RetryBudget retryBudget(String name, IClientConfig config) {
+		RetryBudget budget = new RetryBudget(config);
+		budget.register(name);
+		return budget;
+	}
+
+	/**
+	 * @param name the client name
+	 * @param config the client config
+	 * @param loadBalancer the load balancer
+	 * @param retryBudget the retry budget of the client
+	 * @return a rest client, registered with Servo as <code>Client_{name}</code>
+	 */
+	public static RestClient restClient(String name, IClientConfig config,
+			ILoadBalancer loadBalancer, RetryBudget retryBudget) {
+		RestClient client = new OverrideRestClient(config, retryBudget);
+		client.setLoadBalancer(loadBalancer);
+		Monitors.registerObject("Client_" + name, client);
+		return client;
+	}
+
+	public static RibbonLoadBalancerContext loadBalancerContext(
+			ILoadBalancer loadBalancer, IClientConfig config) {
+		return new RibbonLoadBalancerContext(loadBalancer, config);
+	}
+
+}
@@ -25,21 +25,17 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
 
-import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.client.RequestSpecificRetryHandler;
 import com.netflix.client.config.IClientConfig;
-import com.netflix.loadbalancer.ConfigurationBasedServerList;
 import com.netflix.loadbalancer.ILoadBalancer;
 import com.netflix.loadbalancer.IPing;
 import com.netflix.loadbalancer.IRule;
-import com.netflix.loadbalancer.LoadBalancerBuilder;
-import com.netflix.loadbalancer.NoOpPing;
 import com.netflix.loadbalancer.Server;
 import com.netflix.loadbalancer.ServerList;
 import com.netflix.loadbalancer.ServerListFilter;
-import com.netflix.loadbalancer.ZoneAvoidanceRule;
-import com.netflix.loadbalancer.ZoneAwareLoadBalancer;
+import com.netflix.client.http.HttpRequest;
+import com.netflix.client.http.HttpResponse;
 import com.netflix.niws.client.http.RestClient;
-import com.netflix.servo.monitor.Monitors;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.client.apache4.ApacheHttpClient4;
 
@@ -60,32 +56,25 @@ public class RibbonClientConfiguration {
 	@Bean
 	@ConditionalOnMissingBean
 	public IClientConfig ribbonClientConfig() {
-		DefaultClientConfigImpl config = new DefaultClientConfigImpl();
-		config.loadProperties(this.name);
-		return config;
+		return RibbonClientComponents.clientConfig(this.name);
 	}
 
 	@Bean
 	@ConditionalOnMissingBean
 	public IRule ribbonRule(IClientConfig config) {
-		ZoneAvoidanceRule rule = new ZoneAvoidanceRule();
-		rule.initWithNiwsConfig(config);
-		return rule;
+		return RibbonClientComponents.rule(this.name, config);
 	}
 
 	@Bean
 	@ConditionalOnMissingBean
 	public IPing ribbonPing(IClientConfig config) {
-		// TODO: use PingUrl
-		return new NoOpPing();
+		return RibbonClientComponents.ping(config);
 	}
 
 	@Bean
 	@ConditionalOnMissingBean
 	public ServerList<Server> ribbonServerList(IClientConfig config) {
-		ConfigurationBasedServerList serverList = new ConfigurationBasedServerList();
-		serverList.initWithNiwsConfig(config);
-		return serverList;
+		return RibbonClientComponents.serverList(config);
 	}
 
 	/**
@@ -100,11 +89,16 @@ public class RibbonClientConfiguration {
 	@Bean
 	@Lazy
 	@ConditionalOnMissingBean
-	public RestClient ribbonRestClient(IClientConfig config, ILoadBalancer loadBalancer) {
-		RestClient client = new OverrideRestClient(config);
-		client.setLoadBalancer(loadBalancer);
-		Monitors.registerObject("Client_" + this.name, client);
-		return client;
+	public RestClient ribbonRestClient(IClientConfig config, ILoadBalancer loadBalancer,
+			RetryBudget retryBudget) {
+		return RibbonClientComponents.restClient(this.name, config, loadBalancer,
+				retryBudget);
+	}
+
+	@Bean(destroyMethod = "close")
+	@ConditionalOnMissingBean
+	public RetryBudget ribbonRetryBudget(IClientConfig config) {
+		return RibbonClientComponents.retryBudget(this.name, config);
 	}
 
 	@Bean
@@ -112,35 +106,55 @@ public class RibbonClientConfiguration {
 	public ILoadBalancer ribbonLoadBalancer(IClientConfig config,
 			ServerList<Server> serverList, ServerListFilter<Server> serverListFilter,
 			IRule rule, IPing ping) {
-		ZoneAwareLoadBalancer<Server> balancer = LoadBalancerBuilder.newBuilder()
-				.withClientConfig(config).withRule(rule).withPing(ping)
-				.withServerListFilter(serverListFilter).withDynamicServerList(serverList)
-				.buildDynamicServerListLoadBalancer();
-		return balancer;
+		return RibbonClientComponents.loadBalancer(config, serverList,
+				serverListFilter, rule, ping);
 	}
 
 	@Bean
 	@ConditionalOnMissingBean
 	public ServerListFilter<Server> ribbonServerListFilter(IClientConfig config) {
-		ZonePreferenceServerListFilter filter = new ZonePreferenceServerListFilter();
-		filter.initWithNiwsConfig(config);
-		return filter;
+		return RibbonClientComponents.serverListFilter(config);
 	}
 
 	@Bean
 	@ConditionalOnMissingBean
 	public RibbonLoadBalancerContext ribbonLoadBalancerContext(
 			ILoadBalancer loadBalancer, IClientConfig config) {
-		return new RibbonLoadBalancerContext(loadBalancer, config);
+		return RibbonClientComponents.loadBalancerContext(loadBalancer, config);
 	}
 
 	static class OverrideRestClient extends RestClient {
 
+		private final RetryBudget retryBudget;
+
 		protected OverrideRestClient(IClientConfig ncc) {
+			this(ncc, new RetryBudget(ncc));
+		}
+
+		protected OverrideRestClient(IClientConfig ncc, RetryBudget retryBudget) {
 			super();
+			this.retryBudget = retryBudget;
 			initWithNiwsConfig(ncc);
 		}
 
+		@Override
+		public HttpResponse execute(HttpRequest task, IClientConfig requestConfig)
+				throws Exception {
+			HttpResponse response = super.execute(task, requestConfig);
+			if (response.getStatus() < 500) {
+				// a server error should not make more room for retries
+				this.retryBudget.success();
+			}
+			return response;
+		}
+
+		@Override
+		public RequestSpecificRetryHandler getRequestSpecificRetryHandler(
+				HttpRequest request, IClientConfig requestConfig) {
+			return this.retryBudget.wrap(super.getRequestSpecificRetryHandler(request,
+					requestConfig));
+		}
+
 		@Override
 		protected Client apacheHttpClientSpecificInitialization() {
 			ApacheHttpClient4 apache = (ApacheHttpClient4) super
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.util.Collection;
+
+/**
+ * Strategy for contributing the names of Ribbon clients that an application uses, so
+ * that {@link RibbonEagerLoad} can create them when it starts. Any bean of this type in
+ * the application context is asked for its names.
+ *
+ * @author Dave Syer
+ */
+public interface RibbonClientNames {
+
+	/**
+	 * @return the names of the Ribbon clients (never null)
+	 */
+	Collection<String> getClientNames();
+
+}
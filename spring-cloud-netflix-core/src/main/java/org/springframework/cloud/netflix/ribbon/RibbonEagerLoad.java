@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.util.StringUtils;
+
+/**
+ * Creates the Ribbon clients of the application (with their child contexts and load
+ * balancers) in parallel when it starts, so that their first requests do not pay for it.
+ * The clients are the ones named in <code>@RibbonClient</code> and
+ * <code>@FeignClient</code> declarations, the ones contributed by
+ * {@link RibbonClientNames} beans (e.g. the service routes of Zuul),
+ * <code>ribbon.eager-load.clients</code> and, optionally, the services in the discovery
+ * registry.
+ *
+ * @author Dave Syer
+ */
+public class RibbonEagerLoad implements ApplicationListener<ContextRefreshedEvent>,
+		ApplicationContextAware {
+
+	private static final String FEIGN_CLIENT_FACTORY_BEAN = "org.springframework.cloud.netflix.feign.FeignClientFactoryBean";
+
+	private final SpringClientFactory factory;
+
+	private final RibbonEagerLoadProperties properties;
+
+	private final AtomicBoolean done = new AtomicBoolean();
+
+	private ApplicationContext context;
+
+	private volatile Map<String, Long> timings = Collections.emptyMap();
+
+	public RibbonEagerLoad(SpringClientFactory factory,
+			RibbonEagerLoadProperties properties) {
+		this.factory = factory;
+		this.properties = properties;
+	}
+
+	@Override
+	public void setApplicationContext(ApplicationContext context) throws BeansException {
+		this.context = context;
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		// the child contexts of the clients publish their events here as well
+		if (event.getApplicationContext() != this.context
+				|| !this.done.compareAndSet(false, true)) {
+			return;
+		}
+		this.timings = this.factory.warmUp(getClientNames(),
+				this.properties.getThreads());
+	}
+
+	/**
+	 * @return the millis it took to create each client when the application started
+	 */
+	public Map<String, Long> getTimings() {
+		return this.timings;
+	}
+
+	Set<String> getClientNames() {
+		Set<String> names = new LinkedHashSet<>(this.properties.getClients());
+		for (String name : this.factory.getConfigurationNames()) {
+			if (!name.startsWith("default.")) {
+				names.add(name);
+			}
+		}
+		if (this.context instanceof ConfigurableApplicationContext) {
+			ConfigurableListableBeanFactory beanFactory = ((ConfigurableApplicationContext) this.context)
+					.getBeanFactory();
+			for (String beanName : beanFactory.getBeanDefinitionNames()) {
+				BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+				if (FEIGN_CLIENT_FACTORY_BEAN.equals(definition.getBeanClassName())) {
+					addFeignClient(names, definition);
+				}
+			}
+		}
+		for (RibbonClientNames provider : this.context.getBeansOfType(
+				RibbonClientNames.class).values()) {
+			names.addAll(provider.getClientNames());
+		}
+		if (this.properties.isDiscovery()) {
+			for (DiscoveryClient discovery : this.context.getBeansOfType(
+					DiscoveryClient.class).values()) {
+				names.addAll(discovery.getServices());
+			}
+		}
+		return names;
+	}
+
+	private void addFeignClient(Set<String> names, BeanDefinition definition) {
+		PropertyValue url = definition.getPropertyValues().getPropertyValue("url");
+		PropertyValue name = definition.getPropertyValues().getPropertyValue("name");
+		if (url != null && StringUtils.hasText((String) url.getValue())) {
+			// a fixed url does not go through Ribbon
+			return;
+		}
+		if (name != null && StringUtils.hasText((String) name.getValue())) {
+			names.add((String) name.getValue());
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for creating the Ribbon clients when the application starts, instead of on
+ * their first request.
+ *
+ * @author Dave Syer
+ */
+@Data
+@ConfigurationProperties("ribbon.eager-load")
+public class RibbonEagerLoadProperties {
+
+	/**
+	 * Flag to create the Ribbon clients of the application (the ones named in
+	 * <code>@RibbonClient</code>, <code>@FeignClient</code> and the Zuul routes) when it
+	 * starts.
+	 */
+	private boolean enabled;
+
+	/**
+	 * Names of other Ribbon clients to create when the application starts.
+	 */
+	private List<String> clients = new ArrayList<>();
+
+	/**
+	 * Flag to also create a Ribbon client for each service in the discovery registry.
+	 */
+	private boolean discovery;
+
+	/**
+	 * Maximum number of Ribbon clients to create at the same time.
+	 */
+	private int threads = 4;
+
+}
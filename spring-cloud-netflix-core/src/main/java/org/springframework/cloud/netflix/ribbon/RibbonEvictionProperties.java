@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for closing the Ribbon clients that are not used any more.
+ *
+ * @author Dave Syer
+ */
+@Data
+@ConfigurationProperties("ribbon.eviction")
+public class RibbonEvictionProperties {
+
+	/**
+	 * Time in millis after which a Ribbon client that has not been used is closed (it is
+	 * created again on its next request). The default (0) keeps the clients forever.
+	 */
+	private long idleTimeout;
+
+}
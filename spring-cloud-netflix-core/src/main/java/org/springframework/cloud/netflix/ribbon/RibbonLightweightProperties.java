@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for building the Ribbon clients without a child application context.
+ *
+ * @author Dave Syer
+ */
+@Data
+@ConfigurationProperties("ribbon.lightweight")
+public class RibbonLightweightProperties {
+
+	/**
+	 * Flag to build the components of the Ribbon clients that have no
+	 * <code>@RibbonClient</code> configuration of their own directly, without a child
+	 * application context.
+	 */
+	private boolean enabled;
+
+}
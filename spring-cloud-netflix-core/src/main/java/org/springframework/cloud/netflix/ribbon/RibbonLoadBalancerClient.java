@@ -55,7 +55,19 @@ public class RibbonLoadBalancerClient implements LoadBalancerClient {
 
 	@Override
 	public ServiceInstance choose(String serviceId) {
-		Server server = getServer(serviceId);
+		return choose(serviceId, null);
+	}
+
+	/**
+	 * Choose a server for a load balancer key, so that a key-aware rule (like
+	 * {@link ConsistentHashRule}) can send the requests with the same key to the same
+	 * server.
+	 * @param serviceId the service id
+	 * @param key the load balancer key (e.g. a tenant or a user), or null
+	 * @return a server, or null if there is none
+	 */
+	public ServiceInstance choose(String serviceId, Object key) {
+		Server server = getServer(getLoadBalancer(serviceId), key);
 		if (server == null) {
 			return null;
 		}
@@ -64,10 +76,22 @@ public class RibbonLoadBalancerClient implements LoadBalancerClient {
 
 	@Override
 	public <T> T execute(String serviceId, LoadBalancerRequest<T> request) {
+		return execute(serviceId, null, request);
+	}
+
+	/**
+	 * Execute a request on a server chosen for a load balancer key.
+	 * @param serviceId the service id
+	 * @param key the load balancer key (e.g. a tenant or a user), or null
+	 * @param request the request
+	 * @return the result of the request
+	 * @see #choose(String, Object)
+	 */
+	public <T> T execute(String serviceId, Object key, LoadBalancerRequest<T> request) {
 		ILoadBalancer loadBalancer = getLoadBalancer(serviceId);
 		RibbonLoadBalancerContext context = this.clientFactory
 				.getLoadBalancerContext(serviceId);
-		Server server = getServer(loadBalancer);
+		Server server = getServer(loadBalancer, key);
 		RibbonServer ribbonServer = new RibbonServer(serviceId, server);
 
 		ServerStats serverStats = context.getServerStats(server);
@@ -98,10 +122,14 @@ public class RibbonLoadBalancerClient implements LoadBalancerClient {
 	}
 
 	protected Server getServer(ILoadBalancer loadBalancer) {
+		return getServer(loadBalancer, null);
+	}
+
+	protected Server getServer(ILoadBalancer loadBalancer, Object key) {
 		if (loadBalancer == null) {
 			return null;
 		}
-		return loadBalancer.chooseServer("default"); //TODO: better handling of key
+		return loadBalancer.chooseServer(key != null ? key : "default");
 	}
 
 	protected ILoadBalancer getLoadBalancer(String serviceId) {
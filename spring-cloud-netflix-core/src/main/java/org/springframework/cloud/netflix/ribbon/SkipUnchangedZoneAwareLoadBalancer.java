@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import lombok.extern.apachecommons.CommonsLog;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.IPing;
+import com.netflix.loadbalancer.IRule;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerList;
+import com.netflix.loadbalancer.ServerListFilter;
+import com.netflix.loadbalancer.ZoneAwareLoadBalancer;
+
+/**
+ * A {@link ZoneAwareLoadBalancer} that skips the update of its servers on a refresh if
+ * the (filtered) list has exactly the same {@link Server} objects as before, instead of
+ * rebuilding the lists of all the zones and marking all the servers alive again. It
+ * only helps with a server list that keeps its servers between refreshes (like the
+ * one for Eureka).
+ *
+ * @author Dave Syer
+ */
+@CommonsLog
+public class SkipUnchangedZoneAwareLoadBalancer<T extends Server> extends
+		ZoneAwareLoadBalancer<T> {
+
+	public SkipUnchangedZoneAwareLoadBalancer(IClientConfig config, IRule rule,
+			IPing ping, ServerList<T> serverList, ServerListFilter<T> filter) {
+		super(config, rule, ping, serverList, filter);
+	}
+
+	@Override
+	protected void updateAllServerList(List<T> servers) {
+		if (isUnchanged(servers)) {
+			if (log.isDebugEnabled()) {
+				log.debug("Servers of " + getName() + " unchanged: " + servers);
+			}
+			return;
+		}
+		super.updateAllServerList(servers);
+	}
+
+	private boolean isUnchanged(List<T> servers) {
+		List<Server> current = this.allServerList;
+		if (servers.size() != current.size()) {
+			return false;
+		}
+		boolean sameOrder = true;
+		for (int i = 0; i < servers.size() && sameOrder; i++) {
+			sameOrder = servers.get(i) == current.get(i);
+		}
+		if (sameOrder) {
+			return true;
+		}
+		Set<Server> existing = Collections
+				.newSetFromMap(new IdentityHashMap<Server, Boolean>());
+		existing.addAll(current);
+		for (Server server : servers) {
+			if (!existing.contains(server)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
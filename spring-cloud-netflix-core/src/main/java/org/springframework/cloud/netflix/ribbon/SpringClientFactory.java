@@ -16,12 +16,27 @@
 
 package org.springframework.cloud.netflix.ribbon;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.apachecommons.CommonsLog;
 
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeansException;
@@ -30,30 +45,74 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.autoconfigure.PropertyPlaceholderAutoConfiguration;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.env.MapPropertySource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import com.netflix.client.IClient;
 import com.netflix.client.IClientConfigAware;
 import com.netflix.client.config.IClientConfig;
 import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.niws.client.http.RestClient;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
 
 /**
  * A factory that creates client, load balancer and client configuration instances. It
  * creates a Spring ApplicationContext per client name, and extracts the beans that it
- * needs from there.
+ * needs from there. The instances are cached per name and type, so that looking one up
+ * again (e.g. on every request through a proxy) is a single map lookup, until the
+ * context of the client is refreshed or closed. The contexts are created lazily, with a
+ * lock per client name, or up front and in parallel with {@link #warmUp(Collection, int)}.
+ * In {@link #setLightweight(boolean) lightweight} mode the clients without a
+ * configuration of their own are built without a context. With an
+ * {@link #setIdleTimeout(long) idle timeout} the clients that have not been used for that
+ * long are closed in the background, and created again the next time they are needed.
  *
  * @author Spencer Gibb
  * @author Dave Syer
  */
+@CommonsLog
 public class SpringClientFactory implements DisposableBean, ApplicationContextAware {
 
-	private Map<String, AnnotationConfigApplicationContext> contexts = new ConcurrentHashMap<>();
+	private ConcurrentMap<String, AnnotationConfigApplicationContext> contexts = new ConcurrentHashMap<>();
+
+	private ConcurrentMap<String, ConcurrentMap<Class<?>, Object>> instances = new ConcurrentHashMap<>();
+
+	private ConcurrentMap<String, LightweightRibbonClient> clients = new ConcurrentHashMap<>();
+
+	private ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
 
 	private Map<String, RibbonClientSpecification> configurations = new ConcurrentHashMap<>();
 
 	private ApplicationContext parent;
 
+	private boolean lightweight;
+
+	private ConcurrentMap<String, AtomicLong> lastUsed = new ConcurrentHashMap<>();
+
+	private long idleTimeout;
+
+	private ScheduledExecutorService evictor;
+
+	final BasicGauge<Integer> live = new BasicGauge<>(MonitorConfig.builder("live")
+			.build(), new Callable<Integer>() {
+		@Override
+		public Integer call() {
+			return SpringClientFactory.this.contexts.size()
+					+ SpringClientFactory.this.clients.size();
+		}
+	});
+
+	final BasicCounter evicted = new BasicCounter(MonitorConfig.builder("evicted")
+			.build());
+
 	@Override
 	public void setApplicationContext(ApplicationContext parent) throws BeansException {
 		this.parent = parent;
@@ -65,13 +124,66 @@ public class SpringClientFactory implements DisposableBean, ApplicationContextAw
 		}
 	}
 
+	/**
+	 * Flag to build the components of the clients that do not have a
+	 * <code>@RibbonClient</code> configuration of their own directly, without a child
+	 * application context. It only applies if there are no default configurations
+	 * (other than the one for Eureka), since they can only be applied in a context.
+	 * @param lightweight the flag to set (default false)
+	 */
+	public void setLightweight(boolean lightweight) {
+		this.lightweight = lightweight;
+	}
+
+	/**
+	 * Close the clients that have not been used for longer than the timeout provided (in
+	 * the background, at least once a minute). The number of live clients and of the ones
+	 * that were closed are registered with Servo as <code>RibbonClients</code>.
+	 * @param idleTimeout the timeout in millis (default 0, never close them)
+	 */
+	public synchronized void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+		if (idleTimeout > 0 && this.evictor == null) {
+			long period = Math.max(1, Math.min(idleTimeout, 120000) / 2);
+			this.evictor = Executors
+					.newSingleThreadScheduledExecutor(new CustomizableThreadFactory(
+							"ribbon-evictor-"));
+			this.evictor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						evictIdleClients();
+					}
+					catch (Exception ex) {
+						log.warn("Could not close idle Ribbon clients", ex);
+					}
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+			Monitors.registerObject("RibbonClients", this);
+		}
+	}
+
 	@Override
 	public void destroy() {
+		synchronized (this) {
+			if (this.evictor != null) {
+				this.evictor.shutdownNow();
+				this.evictor = null;
+				Monitors.unregisterObject("RibbonClients", this);
+			}
+		}
 		Collection<AnnotationConfigApplicationContext> values = this.contexts.values();
+		Collection<LightweightRibbonClient> clients = this.clients.values();
 		this.contexts.clear();
+		this.clients.clear();
+		this.instances.clear();
+		this.lastUsed.clear();
 		for (AnnotationConfigApplicationContext context : values) {
 			context.close();
 		}
+		for (LightweightRibbonClient client : clients) {
+			client.close();
+		}
 	}
 
 	/**
@@ -106,19 +218,260 @@ public class SpringClientFactory implements DisposableBean, ApplicationContextAw
 		return getInstance(serviceId, RibbonLoadBalancerContext.class);
 	}
 
+	/**
+	 * Get the retry budget associated with the name, shared by all the clients of the
+	 * service.
+	 * @throws RuntimeException if any error occurs
+	 */
+	public RetryBudget getRetryBudget(String name) {
+		return getInstance(name, RetryBudget.class);
+	}
+
+	/**
+	 * Get the load balancers of the clients that have been created so far, without
+	 * creating any more, or counting as a use of the clients for the idle timeout.
+	 * @return the load balancers by client name
+	 */
+	public Map<String, ILoadBalancer> getLoadBalancers() {
+		Map<String, ILoadBalancer> balancers = new LinkedHashMap<>();
+		for (Entry<String, AnnotationConfigApplicationContext> entry : this.contexts
+				.entrySet()) {
+			AnnotationConfigApplicationContext context = entry.getValue();
+			try {
+				if (context.isActive()
+						&& BeanFactoryUtils.beanNamesForTypeIncludingAncestors(context,
+								ILoadBalancer.class).length > 0) {
+					balancers.put(entry.getKey(), context.getBean(ILoadBalancer.class));
+				}
+			}
+			catch (IllegalStateException ex) {
+				// closed in the meantime
+			}
+		}
+		for (Entry<String, LightweightRibbonClient> entry : this.clients.entrySet()) {
+			ILoadBalancer balancer = entry.getValue().getInstance(ILoadBalancer.class);
+			if (balancer != null) {
+				balancers.put(entry.getKey(), balancer);
+			}
+		}
+		return balancers;
+	}
+
+	/**
+	 * Create the contexts (and load balancers) of the clients with the names provided,
+	 * in parallel, so that the first requests to them do not have to wait.
+	 * @param names the client names
+	 * @param threads the maximum number of contexts to create at the same time
+	 * @return the millis it took to create each context (only the ones that were
+	 * created successfully)
+	 */
+	public Map<String, Long> warmUp(Collection<String> names, int threads) {
+		Map<String, Long> timings = new LinkedHashMap<>();
+		Set<String> unique = new LinkedHashSet<>(names);
+		if (unique.isEmpty()) {
+			return timings;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(threads, unique.size())),
+				new CustomizableThreadFactory("ribbon-warm-up-"));
+		try {
+			List<Future<Long>> futures = new ArrayList<>();
+			for (final String name : unique) {
+				futures.add(executor.submit(new Callable<Long>() {
+					@Override
+					public Long call() {
+						long start = System.currentTimeMillis();
+						getLoadBalancer(name);
+						return System.currentTimeMillis() - start;
+					}
+				}));
+			}
+			int index = 0;
+			for (String name : unique) {
+				try {
+					long millis = futures.get(index++).get();
+					timings.put(name, millis);
+					log.info("Warmed up Ribbon client " + name + " in " + millis + "ms");
+				}
+				catch (ExecutionException ex) {
+					log.warn("Could not warm up Ribbon client " + name, ex.getCause());
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return timings;
+	}
+
+	/**
+	 * Close the clients that have been idle for longer than the timeout.
+	 * @return the number of clients closed
+	 */
+	int evictIdleClients() {
+		int count = 0;
+		long now = System.currentTimeMillis();
+		for (Entry<String, AtomicLong> entry : this.lastUsed.entrySet()) {
+			if (now - entry.getValue().get() > this.idleTimeout
+					&& evict(entry.getKey(), entry.getValue().get())) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private boolean evict(String name, long lastUsed) {
+		AnnotationConfigApplicationContext context;
+		LightweightRibbonClient client;
+		Map<Class<?>, Object> instances;
+		synchronized (getLock(name)) {
+			AtomicLong used = this.lastUsed.get(name);
+			if (used == null || used.get() != lastUsed) {
+				// used again in the meantime
+				return false;
+			}
+			this.lastUsed.remove(name, used);
+			context = this.contexts.remove(name);
+			client = this.clients.remove(name);
+			instances = this.instances.remove(name);
+		}
+		if (context == null && client == null) {
+			return false;
+		}
+		RestClient restClient = instances == null ? null : (RestClient) instances
+				.get(RestClient.class);
+		if (restClient != null) {
+			Monitors.unregisterObject("Client_" + name, restClient);
+		}
+		if (context != null) {
+			context.close();
+		}
+		if (client != null) {
+			client.close();
+		}
+		this.evicted.increment();
+		log.info("Closed Ribbon client " + name + " after "
+				+ (System.currentTimeMillis() - lastUsed) + "ms idle");
+		return true;
+	}
+
+	private void touch(String name) {
+		long now = System.currentTimeMillis();
+		AtomicLong used = this.lastUsed.get(name);
+		if (used == null) {
+			used = new AtomicLong(now);
+			AtomicLong existing = this.lastUsed.putIfAbsent(name, used);
+			if (existing != null) {
+				used = existing;
+			}
+		}
+		if (used.get() != now) {
+			used.set(now);
+		}
+	}
+
+	Set<String> getConfigurationNames() {
+		return this.configurations.keySet();
+	}
+
 	private AnnotationConfigApplicationContext getContext(String name) {
-		if (!this.contexts.containsKey(name)) {
-			synchronized (this.contexts) {
-				if (!this.contexts.containsKey(name)) {
-					this.contexts.put(name, createContext(name));
+		AnnotationConfigApplicationContext context = this.contexts.get(name);
+		if (context == null) {
+			// only the callers of the same client wait for each other
+			synchronized (getLock(name)) {
+				context = this.contexts.get(name);
+				if (context == null) {
+					context = createContext(name);
+					this.contexts.put(name, context);
+				}
+			}
+		}
+		return context;
+	}
+
+	private LightweightRibbonClient getLightweightClient(String name) {
+		LightweightRibbonClient client = this.clients.get(name);
+		if (client == null) {
+			synchronized (getLock(name)) {
+				client = this.clients.get(name);
+				if (client == null) {
+					client = new LightweightRibbonClient(name, this.parent,
+							hasDefaultConfiguration(LightweightRibbonClient.EUREKA_CONFIGURATION));
+					this.clients.put(name, client);
+				}
+			}
+		}
+		return client;
+	}
+
+	private Object getLock(String name) {
+		Object lock = this.locks.get(name);
+		if (lock == null) {
+			lock = new Object();
+			Object existing = this.locks.putIfAbsent(name, lock);
+			if (existing != null) {
+				lock = existing;
+			}
+		}
+		return lock;
+	}
+
+	private boolean isLightweight(String name) {
+		if (!this.lightweight || this.configurations.containsKey(name)) {
+			return false;
+		}
+		for (Entry<String, RibbonClientSpecification> entry : this.configurations
+				.entrySet()) {
+			if (entry.getKey().startsWith("default.")) {
+				for (Class<?> configuration : entry.getValue().getConfiguration()) {
+					if (!LightweightRibbonClient.EUREKA_CONFIGURATION.equals(configuration
+							.getName())) {
+						return false;
+					}
 				}
 			}
 		}
-		return this.contexts.get(name);
+		return true;
 	}
 
-	private AnnotationConfigApplicationContext createContext(String name) {
-		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+	private boolean hasDefaultConfiguration(String className) {
+		for (Entry<String, RibbonClientSpecification> entry : this.configurations
+				.entrySet()) {
+			if (entry.getKey().startsWith("default.")) {
+				for (Class<?> configuration : entry.getValue().getConfiguration()) {
+					if (className.equals(configuration.getName())) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private AnnotationConfigApplicationContext createContext(final String name) {
+		final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.addApplicationListener(new ApplicationListener<ApplicationEvent>() {
+			@Override
+			public void onApplicationEvent(ApplicationEvent event) {
+				if (event.getSource() != context) {
+					return;
+				}
+				// the context first, so that the instances cached from now on are
+				// created in a new one (see getInstance)
+				if (event instanceof ContextClosedEvent) {
+					if (SpringClientFactory.this.contexts.remove(name, context)) {
+						SpringClientFactory.this.instances.remove(name);
+					}
+				}
+				else if (event instanceof ContextRefreshedEvent
+						&& SpringClientFactory.this.contexts.get(name) == context) {
+					SpringClientFactory.this.instances.remove(name);
+				}
+			}
+		});
 		if (this.configurations.containsKey(name)) {
 			for (Class<?> configuration : this.configurations.get(name)
 					.getConfiguration()) {
@@ -149,8 +502,8 @@ public class SpringClientFactory implements DisposableBean, ApplicationContextAw
 		return context;
 	}
 
-	private <C> C instantiateWithConfig(AnnotationConfigApplicationContext context,
-			Class<C> clazz, IClientConfig config) {
+	private <C> C instantiateWithConfig(ApplicationContext context, Class<C> clazz,
+			IClientConfig config) {
 		C result = null;
 		if (IClientConfigAware.class.isAssignableFrom(clazz)) {
 			IClientConfigAware obj = (IClientConfigAware) BeanUtils.instantiate(clazz);
@@ -173,11 +526,55 @@ public class SpringClientFactory implements DisposableBean, ApplicationContextAw
 				// NOPMD
 			}
 		}
-		context.getAutowireCapableBeanFactory().autowireBean(result);
+		if (context != null) {
+			context.getAutowireCapableBeanFactory().autowireBean(result);
+		}
 		return result;
 	}
 
 	private <C> C getInstance(String name, Class<C> type) {
+		if (this.idleTimeout > 0) {
+			touch(name);
+		}
+		// the cache is looked up before the instance is created: if the context is closed
+		// or refreshed in the meantime, the map is discarded with the instance in it
+		ConcurrentMap<Class<?>, Object> instances = getInstances(name);
+		Object cached = instances.get(type);
+		if (cached != null) {
+			return type.cast(cached);
+		}
+		C instance = createInstance(name, type);
+		if (instance != null) {
+			Object existing = instances.putIfAbsent(type, instance);
+			if (existing != null) {
+				return type.cast(existing);
+			}
+		}
+		return instance;
+	}
+
+	private ConcurrentMap<Class<?>, Object> getInstances(String name) {
+		ConcurrentMap<Class<?>, Object> instances = this.instances.get(name);
+		if (instances == null) {
+			instances = new ConcurrentHashMap<>();
+			ConcurrentMap<Class<?>, Object> existing = this.instances.putIfAbsent(name,
+					instances);
+			if (existing != null) {
+				instances = existing;
+			}
+		}
+		return instances;
+	}
+
+	private <C> C createInstance(String name, Class<C> type) {
+		if (isLightweight(name)) {
+			C instance = getLightweightClient(name).getInstance(type);
+			if (instance != null) {
+				return instance;
+			}
+			return instantiateWithConfig(this.parent, type,
+					getInstance(name, IClientConfig.class));
+		}
 		AnnotationConfigApplicationContext context = getContext(name);
 		if (BeanFactoryUtils.beanNamesForTypeIncludingAncestors(context, type).length > 0) {
 			return context.getBean(type);
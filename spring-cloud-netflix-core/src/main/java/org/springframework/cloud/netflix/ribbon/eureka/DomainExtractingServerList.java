@@ -17,11 +17,15 @@
 package org.springframework.cloud.netflix.ribbon.eureka;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import lombok.Getter;
 import lombok.Setter;
 
+import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 import com.netflix.appinfo.InstanceInfo;
@@ -32,6 +36,12 @@ import com.netflix.loadbalancer.ServerList;
 import com.netflix.niws.loadbalancer.DiscoveryEnabledServer;
 
 /**
+ * A {@link ServerList} that wraps the servers from Eureka with their zone and instance
+ * id. The wrapped servers are kept between refreshes and only rebuilt for instances
+ * that are new or have changed (by instance id and last updated timestamp), so the
+ * load balancer keeps the same {@link Server} objects (and their stats). If nothing has
+ * changed the previous list itself is returned, so callers can tell by identity.
+ *
  * @author Dave Syer
  */
 public class DomainExtractingServerList implements ServerList<DiscoveryEnabledServer> {
@@ -42,6 +52,12 @@ public class DomainExtractingServerList implements ServerList<DiscoveryEnabledSe
 
 	private boolean approximateZoneFromHostname;
 
+	private List<DiscoveryEnabledServer> servers = Collections.emptyList();
+
+	private boolean isSecure;
+
+	private boolean shouldUseIpAddr;
+
 	public DomainExtractingServerList(ServerList<DiscoveryEnabledServer> list,
 			IClientConfig clientConfig, boolean approximateZoneFromHostname) {
 		this.list = list;
@@ -63,17 +79,79 @@ public class DomainExtractingServerList implements ServerList<DiscoveryEnabledSe
 		return servers;
 	}
 
-	private List<DiscoveryEnabledServer> setZones(List<DiscoveryEnabledServer> servers) {
-		List<DiscoveryEnabledServer> result = new ArrayList<>();
+	private synchronized List<DiscoveryEnabledServer> setZones(
+			List<DiscoveryEnabledServer> servers) {
 		boolean isSecure = this.clientConfig.getPropertyAsBoolean(
 				CommonClientConfigKey.IsSecure, Boolean.TRUE);
 		boolean shouldUseIpAddr = this.clientConfig.getPropertyAsBoolean(
 				CommonClientConfigKey.UseIPAddrForServer, Boolean.FALSE);
+		if (isSecure != this.isSecure || shouldUseIpAddr != this.shouldUseIpAddr) {
+			// the host and port of all the servers change
+			this.servers = Collections.emptyList();
+			this.isSecure = isSecure;
+			this.shouldUseIpAddr = shouldUseIpAddr;
+		}
+		if (isUnchanged(servers)) {
+			return this.servers;
+		}
+		Map<String, DiscoveryEnabledServer> previous = new HashMap<>();
+		for (DiscoveryEnabledServer server : this.servers) {
+			previous.put(getKey(server.getInstanceInfo()), server);
+		}
+		List<DiscoveryEnabledServer> result = new ArrayList<>(servers.size());
+		int reused = 0;
 		for (DiscoveryEnabledServer server : servers) {
-			result.add(new DomainExtractingServer(server, isSecure, shouldUseIpAddr,
-					this.approximateZoneFromHostname));
+			DiscoveryEnabledServer existing = previous.get(getKey(server
+					.getInstanceInfo()));
+			if (existing != null
+					&& isSame(existing.getInstanceInfo(), server.getInstanceInfo())) {
+				result.add(existing);
+				reused++;
+			}
+			else {
+				result.add(new DomainExtractingServer(server, isSecure,
+						shouldUseIpAddr, this.approximateZoneFromHostname));
+			}
+		}
+		if (reused == result.size() && reused == this.servers.size()) {
+			// same servers in a different order
+			return this.servers;
+		}
+		this.servers = Collections.unmodifiableList(result);
+		return this.servers;
+	}
+
+	private boolean isUnchanged(List<DiscoveryEnabledServer> servers) {
+		if (servers.size() != this.servers.size()) {
+			return false;
+		}
+		for (int i = 0; i < servers.size(); i++) {
+			if (!isSame(this.servers.get(i).getInstanceInfo(), servers.get(i)
+					.getInstanceInfo())) {
+				return false;
+			}
 		}
-		return result;
+		return true;
+	}
+
+	private static boolean isSame(InstanceInfo existing, InstanceInfo instance) {
+		if (existing == instance) {
+			return true;
+		}
+		return existing.getLastUpdatedTimestamp() == instance.getLastUpdatedTimestamp()
+				&& existing.getPort() == instance.getPort()
+				&& ObjectUtils.nullSafeEquals(existing.getId(), instance.getId())
+				&& ObjectUtils.nullSafeEquals(getInstanceId(existing),
+						getInstanceId(instance));
+	}
+
+	private static String getKey(InstanceInfo instance) {
+		String id = getInstanceId(instance);
+		return (id != null ? id : instance.getId()) + ":" + instance.getPort();
+	}
+
+	private static String getInstanceId(InstanceInfo instance) {
+		return instance.getMetadata().get("instanceId");
 	}
 
 }
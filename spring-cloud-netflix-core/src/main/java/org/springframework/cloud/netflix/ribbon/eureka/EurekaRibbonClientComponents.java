@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon.eureka;
+
+import static com.netflix.client.config.CommonClientConfigKey.DeploymentContextBasedVipAddresses;
+import static com.netflix.client.config.CommonClientConfigKey.EnableZoneAffinity;
+
+import org.springframework.cloud.netflix.ribbon.HealthCheckPing;
+import org.springframework.cloud.netflix.ribbon.RibbonClientComponents;
+import org.springframework.cloud.netflix.ribbon.eureka.EurekaRibbonClientConfiguration.DiscoveryHealthCheckPing;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.config.ConfigurationManager;
+import com.netflix.config.DeploymentContext.ContextKey;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.discovery.EurekaClientConfig;
+import com.netflix.loadbalancer.IPing;
+import com.netflix.loadbalancer.ServerList;
+import com.netflix.niws.loadbalancer.DiscoveryEnabledNIWSServerList;
+import com.netflix.niws.loadbalancer.DiscoveryEnabledServer;
+import com.netflix.niws.loadbalancer.NIWSDiscoveryPing;
+
+/**
+ * Creates the components of a Ribbon client that differ when the servers come from
+ * Eureka (the others come from {@link RibbonClientComponents}). They are used by
+ * {@link EurekaRibbonClientConfiguration} and by the clients built without a context.
+ *
+ * @author Dave Syer
+ */
+public abstract class EurekaRibbonClientComponents {
+
+	public static IPing ping(IClientConfig config) {
+		NIWSDiscoveryPing ping = new NIWSDiscoveryPing();
+		ping.initWithNiwsConfig(config);
+		if (config.getPropertyAsBoolean(HealthCheckPing.ENABLED, false)) {
+			// the registry status still counts, but the checks notice failures sooner
+			return new DiscoveryHealthCheckPing(config, ping);
+		}
+		return ping;
+	}
+
+	public static ServerList<DiscoveryEnabledServer> serverList(IClientConfig config,
+			boolean approximateZoneFromHostname) {
+		DiscoveryEnabledNIWSServerList discoveryServerList = new DiscoveryEnabledNIWSServerList(
+				config);
+		return new DomainExtractingServerList(discoveryServerList, config,
+				approximateZoneFromHostname);
+	}
+
+	/**
+	 * Set the zone of this instance from Eureka (unless it is set already), and the
+	 * default VIP address and zone affinity of the client.
+	 * @param clientConfig the Eureka client config, or null
+	 * @param serviceId the client name
+	 */
+	public static void preprocess(EurekaClientConfig clientConfig, String serviceId) {
+		setZone(clientConfig);
+		setProp(serviceId, DeploymentContextBasedVipAddresses.key(), serviceId);
+		setProp(serviceId, EnableZoneAffinity.key(), "true");
+	}
+
+	static void setZone(EurekaClientConfig clientConfig) {
+		if (clientConfig != null
+				&& ConfigurationManager.getDeploymentContext().getValue(ContextKey.zone) == null) {
+			String[] zones = clientConfig.getAvailabilityZones(clientConfig.getRegion());
+			String zone = zones != null && zones.length > 0 ? zones[0] : null;
+			if (zone != null) {
+				// You can set this with archaius.deployment.* (maybe requires
+				// custom deployment context)?
+				ConfigurationManager.getDeploymentContext().setValue(ContextKey.zone,
+						zone);
+			}
+		}
+	}
+
+	private static void setProp(String serviceId, String suffix, String value) {
+		String key = serviceId + "." + EurekaRibbonClientConfiguration.DEFAULT_NAMESPACE
+				+ "." + suffix;
+		if (DynamicPropertyFactory.getInstance()
+				.getStringProperty(key, EurekaRibbonClientConfiguration.VALUE_NOT_SET)
+				.get().equals(EurekaRibbonClientConfiguration.VALUE_NOT_SET)) {
+			ConfigurationManager.getConfigInstance().setProperty(key, value);
+		}
+	}
+
+}
@@ -24,19 +24,21 @@ import javax.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.cloud.netflix.ribbon.HealthCheckPing;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.PortType;
 import com.netflix.client.config.IClientConfig;
 import com.netflix.config.ConfigurationManager;
-import com.netflix.config.DeploymentContext.ContextKey;
 import com.netflix.config.DynamicPropertyFactory;
 import com.netflix.config.DynamicStringProperty;
 import com.netflix.discovery.EurekaClientConfig;
 import com.netflix.loadbalancer.IPing;
+import com.netflix.loadbalancer.Server;
 import com.netflix.loadbalancer.ServerList;
-import com.netflix.niws.loadbalancer.DiscoveryEnabledNIWSServerList;
-import com.netflix.niws.loadbalancer.NIWSDiscoveryPing;
+import com.netflix.niws.loadbalancer.DiscoveryEnabledServer;
 
 /**
  * Preprocessor that configures defaults for eureka-discovered ribbon clients. Such as:
@@ -74,33 +76,19 @@ public class EurekaRibbonClientConfiguration {
 	@Bean
 	@ConditionalOnMissingBean
 	public IPing ribbonPing(IClientConfig config) {
-		NIWSDiscoveryPing ping = new NIWSDiscoveryPing();
-		ping.initWithNiwsConfig(config);
-		return ping;
+		return EurekaRibbonClientComponents.ping(config);
 	}
 
 	@Bean
 	@ConditionalOnMissingBean
 	public ServerList<?> ribbonServerList(IClientConfig config) {
-		DiscoveryEnabledNIWSServerList discoveryServerList = new DiscoveryEnabledNIWSServerList(config);
-		DomainExtractingServerList serverList = new DomainExtractingServerList(discoveryServerList, config, this.approximateZoneFromHostname);
-		return serverList;
+		return EurekaRibbonClientComponents.serverList(config,
+				this.approximateZoneFromHostname);
 	}
 
 	@PostConstruct
 	public void preprocess() {
-		if (this.clientConfig != null
-				&& ConfigurationManager.getDeploymentContext().getValue(ContextKey.zone) == null) {
-			String[] zones = this.clientConfig.getAvailabilityZones(this.clientConfig
-					.getRegion());
-			String zone = zones != null && zones.length > 0 ? zones[0] : null;
-			if (zone != null) {
-				// You can set this with archaius.deployment.* (maybe requires
-				// custom deployment context)?
-				ConfigurationManager.getDeploymentContext().setValue(ContextKey.zone,
-						zone);
-			}
-		}
+		EurekaRibbonClientComponents.setZone(this.clientConfig);
 		setProp(this.serviceId, DeploymentContextBasedVipAddresses.key(), this.serviceId);
 		setProp(this.serviceId, EnableZoneAffinity.key(), "true");
 	}
@@ -122,4 +110,25 @@ public class EurekaRibbonClientConfiguration {
 		return serviceId + "." + DEFAULT_NAMESPACE + "." + suffix;
 	}
 
+	/**
+	 * A {@link HealthCheckPing} that knows which servers are on their secure port.
+	 */
+	static class DiscoveryHealthCheckPing extends HealthCheckPing {
+
+		DiscoveryHealthCheckPing(IClientConfig config, IPing delegate) {
+			super(config, delegate);
+		}
+
+		@Override
+		protected boolean isSecure(Server server) {
+			if (server instanceof DiscoveryEnabledServer) {
+				InstanceInfo info = ((DiscoveryEnabledServer) server).getInstanceInfo();
+				return info.isPortEnabled(PortType.SECURE)
+						&& server.getPort() == info.getSecurePort();
+			}
+			return super.isSecure(server);
+		}
+
+	}
+
 }
@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.netflix.ribbon.eureka;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -24,6 +25,7 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.cloud.netflix.ribbon.RibbonAutoConfiguration;
 import org.springframework.cloud.netflix.ribbon.RibbonClients;
 import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.netflix.niws.loadbalancer.DiscoveryEnabledNIWSServerList;
@@ -32,7 +34,7 @@ import com.netflix.niws.loadbalancer.DiscoveryEnabledNIWSServerList;
  * @author Dave Syer
  */
 @Configuration
-@EnableConfigurationProperties
+@EnableConfigurationProperties(RibbonPushRefreshProperties.class)
 @ConditionalOnClass(DiscoveryEnabledNIWSServerList.class)
 @ConditionalOnBean(SpringClientFactory.class)
 @ConditionalOnProperty(value = "ribbon.eureka.enabled", matchIfMissing = true)
@@ -40,4 +42,17 @@ import com.netflix.niws.loadbalancer.DiscoveryEnabledNIWSServerList;
 @RibbonClients(defaultConfiguration = EurekaRibbonClientConfiguration.class)
 public class RibbonEurekaAutoConfiguration {
 
+	@Autowired
+	private RibbonPushRefreshProperties pushRefresh;
+
+	@Bean
+	@ConditionalOnProperty("ribbon.eureka.push-refresh.enabled")
+	public ServerListRefresher ribbonServerListRefresher(SpringClientFactory factory) {
+		ServerListRefresher refresher = new ServerListRefresher(factory);
+		refresher.setPolling(this.pushRefresh.isPolling());
+		refresher.setDelay(this.pushRefresh.getDelay());
+		refresher.setSafetyRefreshInterval(this.pushRefresh.getSafetyRefreshInterval());
+		return refresher;
+	}
+
 }
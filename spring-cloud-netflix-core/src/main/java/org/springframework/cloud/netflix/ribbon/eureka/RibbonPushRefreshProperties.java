@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon.eureka;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for updating the servers of the Ribbon clients when the Eureka registry
+ * changes (see {@link ServerListRefresher}).
+ *
+ * @author Dave Syer
+ */
+@Data
+@ConfigurationProperties("ribbon.eureka.push-refresh")
+public class RibbonPushRefreshProperties {
+
+	/**
+	 * Flag to update the servers of all the Ribbon clients when the registry changes.
+	 */
+	private boolean enabled;
+
+	/**
+	 * Flag to keep the polling timers of the load balancers running.
+	 */
+	private boolean polling;
+
+	/**
+	 * Time in millis to wait after a registry change before updating the servers.
+	 */
+	private long delay = 1000;
+
+	/**
+	 * Time in millis between refreshes of all the clients that do not wait for a
+	 * registry change, in case one is missed (0 for none).
+	 */
+	private long safetyRefreshInterval = 30000;
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon.eureka;
+
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.client.discovery.event.HeartbeatMonitor;
+import org.springframework.cloud.client.discovery.event.ParentHeartbeatEvent;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.netflix.discovery.DiscoveryClient;
+import com.netflix.discovery.DiscoveryManager;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.loadbalancer.DynamicServerListLoadBalancer;
+import com.netflix.loadbalancer.ILoadBalancer;
+
+/**
+ * Updates the servers of all the live Ribbon load balancers when the local copy of the
+ * Eureka registry changes (signalled by a {@link HeartbeatEvent} with a new version),
+ * in one batch on a single thread. Each load balancer reads the registry when its turn
+ * comes, so a change that lands in the middle of a batch can reach only some of them
+ * until the next one. The event can come before the change is merged into the local
+ * registry, so the batch waits (up to 10 times the delay) until the registry has the
+ * version of the event. Events that arrive while a refresh is pending are coalesced into
+ * it. Optionally the polling timers of the load balancers are stopped, since they are
+ * no longer needed: as soon as the context of a client is refreshed (its events reach
+ * the parent context), or else at the first refresh that sees the load balancer. A
+ * safety refresh of all the load balancers also runs at a fixed interval, in case a
+ * change is missed.
+ *
+ * @author Dave Syer
+ */
+@CommonsLog
+public class ServerListRefresher implements ApplicationListener<ApplicationEvent>,
+		InitializingBean, DisposableBean {
+
+	private final SpringClientFactory factory;
+
+	private final HeartbeatMonitor monitor = new HeartbeatMonitor();
+
+	private static final int MAX_WAITS = 10;
+
+	private final AtomicBoolean pending = new AtomicBoolean();
+
+	private final ScheduledExecutorService executor = Executors
+			.newSingleThreadScheduledExecutor(new CustomizableThreadFactory(
+					"ribbon-refresher-"));
+
+	private boolean polling = true;
+
+	private long delay = 1000;
+
+	private long safetyRefreshInterval = 30000;
+
+	private volatile Object version;
+
+	public ServerListRefresher(SpringClientFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * @param polling false to stop the polling timers of the load balancers (default
+	 * true)
+	 */
+	public void setPolling(boolean polling) {
+		this.polling = polling;
+	}
+
+	/**
+	 * @param delay the millis to wait after a registry change before the refresh, to
+	 * let the registry settle and batch up more changes (default 1000)
+	 */
+	public void setDelay(long delay) {
+		this.delay = delay;
+	}
+
+	/**
+	 * @param safetyRefreshInterval the millis between refreshes of all the load
+	 * balancers that do not wait for a registry change (default 30000, 0 for none)
+	 */
+	public void setSafetyRefreshInterval(long safetyRefreshInterval) {
+		this.safetyRefreshInterval = safetyRefreshInterval;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (this.safetyRefreshInterval > 0) {
+			this.executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						refresh();
+					}
+					catch (Exception ex) {
+						log.warn("Could not refresh servers of Ribbon clients", ex);
+					}
+				}
+			}, this.safetyRefreshInterval, this.safetyRefreshInterval,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationEvent event) {
+		if (event instanceof ParentHeartbeatEvent) {
+			refreshIfNeeded(((ParentHeartbeatEvent) event).getValue());
+		}
+		else if (event instanceof HeartbeatEvent) {
+			refreshIfNeeded(((HeartbeatEvent) event).getValue());
+		}
+		else if (event instanceof ContextRefreshedEvent && !this.polling) {
+			stopPolling(((ContextRefreshedEvent) event).getApplicationContext());
+		}
+	}
+
+	@Override
+	public void destroy() {
+		this.executor.shutdownNow();
+	}
+
+	private void refreshIfNeeded(Object value) {
+		if (this.monitor.update(value)) {
+			this.version = value;
+			if (this.pending.compareAndSet(false, true)) {
+				schedule(0);
+			}
+		}
+	}
+
+	private void stopPolling(ApplicationContext context) {
+		// only the beans of the context itself, without creating any
+		for (ILoadBalancer balancer : context.getBeansOfType(ILoadBalancer.class, false,
+				false).values()) {
+			if (balancer instanceof DynamicServerListLoadBalancer) {
+				((DynamicServerListLoadBalancer<?>) balancer).stopServerListRefreshing();
+			}
+		}
+	}
+
+	private void schedule(final int waits) {
+		this.executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				Object current = getRegistryVersion();
+				if (current != null && !current.equals(ServerListRefresher.this.version)
+						&& waits < MAX_WAITS) {
+					// the registry has not caught up with the event yet
+					schedule(waits + 1);
+					return;
+				}
+				ServerListRefresher.this.pending.set(false);
+				try {
+					refresh();
+				}
+				catch (Exception ex) {
+					log.warn("Could not refresh servers of Ribbon clients", ex);
+				}
+			}
+		}, this.delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the version of the local copy of the registry, or null if it is not known
+	 */
+	protected Object getRegistryVersion() {
+		DiscoveryClient client = DiscoveryManager.getInstance().getDiscoveryClient();
+		Applications applications = client == null ? null : client.getApplications();
+		return applications == null ? null : applications.getVersion();
+	}
+
+	/**
+	 * Update the servers of all the live load balancers.
+	 * @return the number of load balancers updated
+	 */
+	int refresh() {
+		long start = System.currentTimeMillis();
+		int count = 0;
+		for (Entry<String, ILoadBalancer> entry : this.factory.getLoadBalancers()
+				.entrySet()) {
+			if (entry.getValue() instanceof DynamicServerListLoadBalancer) {
+				DynamicServerListLoadBalancer<?> balancer = (DynamicServerListLoadBalancer<?>) entry
+						.getValue();
+				try {
+					if (!this.polling) {
+						balancer.stopServerListRefreshing();
+					}
+					balancer.updateListOfServers();
+					count++;
+				}
+				catch (Exception ex) {
+					log.warn("Could not refresh servers of Ribbon client "
+							+ entry.getKey(), ex);
+				}
+			}
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Refreshed servers of " + count + " Ribbon clients in "
+					+ (System.currentTimeMillis() - start) + "ms");
+		}
+		return count;
+	}
+
+}
@@ -18,10 +18,13 @@ package org.springframework.cloud.netflix.zuul;
 
 import java.util.Map;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.actuate.endpoint.Endpoint;
 import org.springframework.boot.actuate.endpoint.mvc.MvcEndpoint;
 import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator.RouteSnapshot;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
@@ -30,9 +33,12 @@ import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
 
 /**
- * Endpoint to display and reset the zuul proxy routes
+ * Endpoint to display and reset the zuul proxy routes. The routes are served with an
+ * ETag and Last-Modified header derived from the route snapshot, so clients that poll
+ * the endpoint can use conditional requests.
  *
  * @author Spencer Gibb
  * @author Dave Syer
@@ -64,11 +70,37 @@ public class RoutesEndpoint implements MvcEndpoint, ApplicationEventPublisherAwa
 
 	@RequestMapping(method = RequestMethod.GET)
 	@ResponseBody
+	public Map<String, String> routes(WebRequest request, HttpServletResponse response) {
+		RouteSnapshot snapshot = this.routes.getRouteSnapshot();
+		// the ETag alone decides: it is derived from the version and the timestamp
+		response.setDateHeader("Last-Modified", snapshot.getTimestamp());
+		if (request.checkNotModified(getETag(snapshot))) {
+			return null;
+		}
+		return snapshot.getRoutes();
+	}
+
 	@ManagedAttribute
 	public Map<String, String> getRoutes() {
 		return this.routes.getRoutes();
 	}
 
+	@ManagedAttribute(description = "Increases every time the routes are rebuilt")
+	public long getVersion() {
+		return this.routes.getRouteSnapshot().getVersion();
+	}
+
+	@ManagedAttribute(description = "Time the routes were built (millis since epoch)")
+	public long getLastModified() {
+		return this.routes.getRouteSnapshot().getTimestamp();
+	}
+
+	private String getETag(RouteSnapshot snapshot) {
+		// the timestamp distinguishes versions from different JVMs
+		return "\"" + Long.toHexString(snapshot.getTimestamp()) + "-"
+				+ snapshot.getVersion() + "\"";
+	}
+
 	@Override
 	public String getPath() {
 		return "/routes";
@@ -107,7 +107,7 @@ public class ZuulConfiguration {
 
 	@Bean
 	public SendResponseFilter sendResponseFilter() {
-		return new SendResponseFilter();
+		return new SendResponseFilter(this.zuulProperties);
 	}
 
 	@Bean
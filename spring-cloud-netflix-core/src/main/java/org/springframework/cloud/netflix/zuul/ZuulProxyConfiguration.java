@@ -16,6 +16,10 @@
 
 package org.springframework.cloud.netflix.zuul;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.actuate.endpoint.Endpoint;
 import org.springframework.boot.actuate.trace.TraceRepository;
@@ -27,10 +31,15 @@ import org.springframework.cloud.client.discovery.event.HeartbeatMonitor;
 import org.springframework.cloud.client.discovery.event.InstanceRegisteredEvent;
 import org.springframework.cloud.client.discovery.event.ParentHeartbeatEvent;
 import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.cloud.netflix.ribbon.RibbonClientNames;
 import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
 import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper;
 import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator;
 import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.cloud.netflix.zuul.filters.cache.ResponseCache;
+import org.springframework.cloud.netflix.zuul.filters.cache.ResponseCacheFilter;
+import org.springframework.cloud.netflix.zuul.filters.cache.ResponseCacheStoreFilter;
 import org.springframework.cloud.netflix.zuul.filters.pre.PreDecorationFilter;
 import org.springframework.cloud.netflix.zuul.filters.route.RibbonRoutingFilter;
 import org.springframework.cloud.netflix.zuul.filters.route.SimpleHostRoutingFilter;
@@ -39,6 +48,7 @@ import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
 
 /**
  * @author Spencer Gibb
@@ -77,13 +87,19 @@ public class ZuulProxyConfiguration extends ZuulConfiguration {
 	}
 
 	// route filters
+	@Bean
+	public ResponseCacheFilter responseCacheFilter() {
+		return new ResponseCacheFilter(zuulResponseCache());
+	}
+
 	@Bean
 	public RibbonRoutingFilter ribbonRoutingFilter() {
 		ProxyRequestHelper helper = new ProxyRequestHelper();
 		if (this.traces != null) {
 			helper.setTraces(this.traces);
 		}
-		RibbonRoutingFilter filter = new RibbonRoutingFilter(helper, this.clientFactory);
+		RibbonRoutingFilter filter = new RibbonRoutingFilter(helper, this.clientFactory,
+				this.zuulProperties);
 		return filter;
 	}
 
@@ -93,7 +109,23 @@ public class ZuulProxyConfiguration extends ZuulConfiguration {
 		if (this.traces != null) {
 			helper.setTraces(this.traces);
 		}
-		return new SimpleHostRoutingFilter(helper);
+		return new SimpleHostRoutingFilter(helper, this.zuulProperties);
+	}
+
+	// post filters
+	@Bean
+	public ResponseCacheStoreFilter responseCacheStoreFilter() {
+		return new ResponseCacheStoreFilter(zuulResponseCache());
+	}
+
+	@Bean
+	public ResponseCache zuulResponseCache() {
+		return new ResponseCache(this.zuulProperties);
+	}
+
+	@Bean
+	public RibbonClientNames zuulRibbonClientNames() {
+		return new ZuulRibbonClientNames(this.zuulProperties);
 	}
 
 	@Bean
@@ -117,6 +149,32 @@ public class ZuulProxyConfiguration extends ZuulConfiguration {
 
 	}
 
+	/**
+	 * The service ids of the routes that do not have a url, so that their Ribbon clients
+	 * can be created eagerly.
+	 */
+	private static class ZuulRibbonClientNames implements RibbonClientNames {
+
+		private final ZuulProperties properties;
+
+		public ZuulRibbonClientNames(ZuulProperties properties) {
+			this.properties = properties;
+		}
+
+		@Override
+		public Collection<String> getClientNames() {
+			Set<String> names = new LinkedHashSet<>();
+			for (ZuulRoute route : this.properties.getRoutes().values()) {
+				if (!StringUtils.hasText(route.getUrl())
+						&& StringUtils.hasText(route.getServiceId())) {
+					names.add(route.getServiceId());
+				}
+			}
+			return names;
+		}
+
+	}
+
 	private static class ZuulRefreshListener implements
 			ApplicationListener<ApplicationEvent> {
 
@@ -147,8 +205,8 @@ public class ZuulProxyConfiguration extends ZuulConfiguration {
 		}
 
 		private void resetIfNeeded(Object value) {
-			if (this.monitor.update(value)) {
-				reset();
+			if (this.monitor.update(value) && this.routeLocator.refreshRoutes()) {
+				this.zuulHandlerMapping.registerHandlers();
 			}
 		}
 
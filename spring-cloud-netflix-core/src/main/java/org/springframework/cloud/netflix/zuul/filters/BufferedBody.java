@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+
+/**
+ * A response body read into memory up to a limit, so that it can be sent more than once
+ * (e.g. from a cache, or to several clients). A body larger than the limit is only
+ * partly buffered, and the rest of it can be read once, after the buffered part, from
+ * {@link #getInputStream()}.
+ */
+public class BufferedBody {
+
+	private static final int INITIAL_SIZE = 4096;
+
+	private final byte[] bytes;
+
+	private final int length;
+
+	private final InputStream remainder;
+
+	private BufferedBody(byte[] bytes, int length, InputStream remainder) {
+		this.bytes = bytes;
+		this.length = length;
+		this.remainder = remainder;
+	}
+
+	/**
+	 * Read a body, up to the given limit. The input is closed if it was read to the end.
+	 * @param input the body
+	 * @param limit the maximum number of bytes to buffer
+	 * @return the buffered body
+	 * @throws IOException if the body cannot be read
+	 */
+	public static BufferedBody read(InputStream input, int limit) throws IOException {
+		byte[] bytes = new byte[Math.min(limit + 1, INITIAL_SIZE)];
+		int length = 0;
+		while (length <= limit) {
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.min(bytes.length * 2, limit + 1));
+			}
+			int read = input.read(bytes, length, bytes.length - length);
+			if (read == -1) {
+				break;
+			}
+			length += read;
+		}
+		if (length > limit) {
+			return new BufferedBody(bytes, length, input);
+		}
+		try {
+			input.close();
+		}
+		catch (IOException ex) {
+			// ignore
+		}
+		return new BufferedBody(bytes, length, null);
+	}
+
+	/**
+	 * @return true if the whole body is buffered (so it can be read more than once)
+	 */
+	public boolean isComplete() {
+		return this.remainder == null;
+	}
+
+	/**
+	 * @return the buffer, with the body at the start (it may be longer than the body)
+	 */
+	public byte[] getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * @return the number of bytes buffered
+	 */
+	public int getLength() {
+		return this.length;
+	}
+
+	/**
+	 * @return a new stream over the body (followed by the rest of it if it was not all
+	 * buffered)
+	 */
+	public InputStream getInputStream() {
+		InputStream buffered = new ByteArrayInputStream(this.bytes, 0, this.length);
+		if (this.remainder != null) {
+			return new SequenceInputStream(buffered, this.remainder);
+		}
+		return buffered;
+	}
+
+}
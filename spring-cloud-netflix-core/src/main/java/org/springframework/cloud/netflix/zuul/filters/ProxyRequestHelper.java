@@ -18,7 +18,11 @@ package org.springframework.cloud.netflix.zuul.filters;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -26,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -55,6 +60,16 @@ public class ProxyRequestHelper {
 
 	public static final String CONTENT_ENCODING = "Content-Encoding";
 
+	private static final String ACCEPT_ENCODING = "accept-encoding";
+
+	private static final Set<String> EXCLUDED_HEADERS = new TreeSet<>(
+			String.CASE_INSENSITIVE_ORDER);
+
+	static {
+		EXCLUDED_HEADERS.addAll(Arrays.asList("host", "connection", "content-length",
+				"content-encoding", "server", "transfer-encoding"));
+	}
+
 	private TraceRepository traces;
 
 	public void setTraces(TraceRepository traces) {
@@ -77,75 +92,140 @@ public class ProxyRequestHelper {
 
 	public MultiValueMap<String, String> buildZuulRequestQueryParams(
 			HttpServletRequest request) {
+		return new LinkedMultiValueMap<>(getZuulRequestQueryParams());
+	}
+
+	/**
+	 * @return the query parameters of the current request as parsed by Zuul (without
+	 * copying them), or an empty map if there are none
+	 */
+	public Map<String, List<String>> getZuulRequestQueryParams() {
 		Map<String, List<String>> map = HTTPRequestUtils.getInstance().getQueryParams();
-		MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
 		if (map == null) {
-			return params;
+			return Collections.emptyMap();
 		}
-		for (String key : map.keySet()) {
-			for (String value : map.get(key)) {
-				params.add(key, value);
+		return map;
+	}
+
+	/**
+	 * Encode query parameters for the url of a proxied request.
+	 * @param params the query parameters (e.g. from {@link #getZuulRequestQueryParams()})
+	 * @return the query string, starting with "?", or an empty string if there are no
+	 * parameters
+	 */
+	public String getQueryString(Map<String, ? extends Collection<String>> params) {
+		if (params.isEmpty()) {
+			return "";
+		}
+		StringBuilder query = new StringBuilder();
+		try {
+			for (Entry<String, ? extends Collection<String>> entry : params.entrySet()) {
+				String key = URLEncoder.encode(entry.getKey(), "UTF-8");
+				for (String value : entry.getValue()) {
+					query.append(query.length() == 0 ? '?' : '&');
+					query.append(key);
+					query.append('=');
+					query.append(URLEncoder.encode(value, "UTF-8"));
+				}
 			}
 		}
-		return params;
+		catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException("UTF-8 is not supported", ex);
+		}
+		return query.toString();
 	}
 
 	public MultiValueMap<String, String> buildZuulRequestHeaders(
 			HttpServletRequest request) {
+		final MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
+		copyZuulRequestHeaders(request, new HeaderSink() {
+			@Override
+			public void addHeader(String name, String value) {
+				headers.add(name, value);
+			}
+		});
+		return headers;
+	}
+
+	/**
+	 * Add the headers of a proxied request (the same ones as
+	 * {@link #buildZuulRequestHeaders(HttpServletRequest)}) straight to the outgoing
+	 * request, without collecting them first. The Zuul request headers of the context
+	 * replace the incoming headers with the same name (in any case).
+	 * @param request the incoming request
+	 * @param sink the outgoing request
+	 */
+	public void copyZuulRequestHeaders(HttpServletRequest request, HeaderSink sink) {
 		RequestContext context = RequestContext.getCurrentContext();
-		MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
+		Collection<?> ignored = getIgnoredHeaders(context);
+		// the keys are lowercase
+		Map<String, String> zuulRequestHeaders = context.getZuulRequestHeaders();
 		Enumeration<String> headerNames = request.getHeaderNames();
 		if (headerNames != null) {
 			while (headerNames.hasMoreElements()) {
 				String name = headerNames.nextElement();
-                if (isIncludedHeader(name)) {
-                    Enumeration<String> values = request.getHeaders(name);
-                    while (values.hasMoreElements()) {
-                        String value = values.nextElement();
-                        headers.add(name, value);
-                    }
+				if (isIncludedHeader(name, ignored)
+						&& !ACCEPT_ENCODING.equalsIgnoreCase(name)
+						&& (zuulRequestHeaders.isEmpty() || !zuulRequestHeaders
+								.containsKey(name.toLowerCase()))) {
+					Enumeration<String> values = request.getHeaders(name);
+					while (values.hasMoreElements()) {
+						sink.addHeader(name, values.nextElement());
+					}
 				}
 			}
 		}
-		Map<String, String> zuulRequestHeaders = context.getZuulRequestHeaders();
-		for (String header : zuulRequestHeaders.keySet()) {
-			headers.set(header, zuulRequestHeaders.get(header));
+		for (Entry<String, String> header : zuulRequestHeaders.entrySet()) {
+			if (!ACCEPT_ENCODING.equals(header.getKey())) {
+				sink.addHeader(header.getKey(), header.getValue());
+			}
 		}
-		headers.set("accept-encoding", "gzip");
-		return headers;
+		sink.addHeader(ACCEPT_ENCODING, "gzip");
+	}
+
+	/**
+	 * @return true if the proxied requests are traced (so that {@link #debug} needs
+	 * their headers)
+	 */
+	public boolean isTraceEnabled() {
+		return this.traces != null;
 	}
 
 	public void setResponse(int status, InputStream entity,
 			MultiValueMap<String, String> headers) throws IOException {
+		setResponse(status, entity, (Map<String, List<String>>) headers);
+	}
+
+	public void setResponse(int status, InputStream entity,
+			Map<String, ? extends Collection<String>> headers) throws IOException {
 		RequestContext context = RequestContext.getCurrentContext();
-		RequestContext.getCurrentContext().setResponseStatusCode(status);
+		context.setResponseStatusCode(status);
 		if (entity != null) {
-			RequestContext.getCurrentContext().setResponseDataStream(entity);
+			context.setResponseDataStream(entity);
 		}
+		Collection<?> ignored = getIgnoredHeaders(context);
 		boolean isOriginResponseGzipped = false;
-		if (headers.containsKey(CONTENT_ENCODING)) {
-			Collection<String> collection = headers.get(CONTENT_ENCODING);
-			for (String header : collection) {
-				if (HTTPRequestUtils.getInstance().isGzipped(header)) {
-					isOriginResponseGzipped = true;
-					break;
-				}
-			}
-		}
-		context.setResponseGZipped(isOriginResponseGzipped);
-		for (Entry<String, List<String>> header : headers.entrySet()) {
-			RequestContext ctx = RequestContext.getCurrentContext();
+		for (Entry<String, ? extends Collection<String>> header : headers.entrySet()) {
 			String name = header.getKey();
+			boolean contentEncoding = name.equalsIgnoreCase(CONTENT_ENCODING);
+			boolean contentLength = !contentEncoding
+					&& name.equalsIgnoreCase("content-length");
+			boolean included = isIncludedHeader(name, ignored);
 			for (String value : header.getValue()) {
-				ctx.addOriginResponseHeader(name, value);
-				if (name.equalsIgnoreCase("content-length")) {
-					ctx.setOriginContentLength(value);
+				context.addOriginResponseHeader(name, value);
+				if (contentEncoding && !isOriginResponseGzipped) {
+					isOriginResponseGzipped = HTTPRequestUtils.getInstance().isGzipped(
+							value);
+				}
+				if (contentLength) {
+					context.setOriginContentLength(value);
 				}
-				if (isIncludedHeader(name)) {
-					ctx.addZuulResponseHeader(name, value);
+				if (included) {
+					context.addZuulResponseHeader(name, value);
 				}
 			}
 		}
+		context.setResponseGZipped(isOriginResponseGzipped);
 	}
 
 	public void addIgnoredHeaders(String... names) {
@@ -161,30 +241,35 @@ public class ProxyRequestHelper {
 	}
 
 	public boolean isIncludedHeader(String headerName) {
-		String name = headerName.toLowerCase();
-		RequestContext ctx = RequestContext.getCurrentContext();
-		if (ctx.containsKey(IGNORED_HEADERS)) {
-			Object object = ctx.get(IGNORED_HEADERS);
-			if (object instanceof Collection && ((Collection<?>) object).contains(name)) {
-				return false;
-			}
-		}
-		switch (name) {
-		case "host":
-		case "connection":
-		case "content-length":
-		case "content-encoding":
-		case "server":
-		case "transfer-encoding":
+		return isIncludedHeader(headerName,
+				getIgnoredHeaders(RequestContext.getCurrentContext()));
+	}
+
+	private boolean isIncludedHeader(String headerName, Collection<?> ignored) {
+		if (EXCLUDED_HEADERS.contains(headerName)) {
 			return false;
-		default:
-			return true;
 		}
+		// the ignored headers are lowercase, only convert the name if there are any
+		return ignored == null || ignored.isEmpty()
+				|| !ignored.contains(headerName.toLowerCase());
+	}
+
+	private Collection<?> getIgnoredHeaders(RequestContext context) {
+		Object object = context.get(IGNORED_HEADERS);
+		return object instanceof Collection ? (Collection<?>) object : null;
 	}
 
 	public Map<String, Object> debug(String verb, String uri,
 			MultiValueMap<String, String> headers, MultiValueMap<String, String> params,
 			InputStream requestEntity) throws IOException {
+		return debug(verb, uri, (Map<String, List<String>>) headers,
+				(Map<String, List<String>>) params, requestEntity);
+	}
+
+	public Map<String, Object> debug(String verb, String uri,
+			Map<String, ? extends Collection<String>> headers,
+			Map<String, ? extends Collection<String>> params, InputStream requestEntity)
+			throws IOException {
 		Map<String, Object> info = new LinkedHashMap<String, Object>();
 		if (this.traces != null) {
 			RequestContext context = RequestContext.getCurrentContext();
@@ -206,7 +291,7 @@ public class ProxyRequestHelper {
 			Map<String, Object> input = new LinkedHashMap<String, Object>();
 			trace.put("request", input);
 			info.put("headers", trace);
-			for (Entry<String, List<String>> entry : headers.entrySet()) {
+			for (Entry<String, ? extends Collection<String>> entry : headers.entrySet()) {
 				Collection<String> collection = entry.getValue();
 				Object value = collection;
 				if (collection.size() < 2) {
@@ -228,12 +313,17 @@ public class ProxyRequestHelper {
 
 	public void appendDebug(Map<String, Object> info, int status,
 			MultiValueMap<String, String> headers) {
+		appendDebug(info, status, (Map<String, List<String>>) headers);
+	}
+
+	public void appendDebug(Map<String, Object> info, int status,
+			Map<String, ? extends Collection<String>> headers) {
 		if (this.traces != null) {
 			@SuppressWarnings("unchecked")
 			Map<String, Object> trace = (Map<String, Object>) info.get("headers");
 			Map<String, Object> output = new LinkedHashMap<String, Object>();
 			trace.put("response", output);
-			for (Entry<String, List<String>> key : headers.entrySet()) {
+			for (Entry<String, ? extends Collection<String>> key : headers.entrySet()) {
 				Collection<String> collection = key.getValue();
 				Object value = collection;
 				if (collection.size() < 2) {
@@ -258,4 +348,13 @@ public class ProxyRequestHelper {
 		}
 	}
 
+	/**
+	 * The outgoing request of {@link ProxyRequestHelper#copyZuulRequestHeaders}.
+	 */
+	public interface HeaderSink {
+
+		void addHeader(String name, String value);
+
+	}
+
 }
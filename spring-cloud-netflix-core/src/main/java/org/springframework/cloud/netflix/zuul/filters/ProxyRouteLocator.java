@@ -16,11 +16,19 @@
 
 package org.springframework.cloud.netflix.zuul.filters;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import lombok.AllArgsConstructor;
@@ -30,6 +38,7 @@ import lombok.extern.apachecommons.CommonsLog;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
 import org.springframework.util.AntPathMatcher;
+import org.springframework.util.ObjectUtils;
 import org.springframework.util.PathMatcher;
 import org.springframework.util.PatternMatchUtils;
 import org.springframework.util.StringUtils;
@@ -42,13 +51,22 @@ public class ProxyRouteLocator implements RouteLocator {
 
 	public static final String DEFAULT_ROUTE = "/**";
 
+	/**
+	 * Name of the request attribute that carries the {@link ProxyRouteSpec} resolved by
+	 * the handler mapping, so that it does not have to be matched again downstream.
+	 */
+	public static final String MATCHING_ROUTE_ATTRIBUTE = ProxyRouteLocator.class
+			.getName() + ".MATCHING_ROUTE";
+
 	private DiscoveryClient discovery;
 
 	private ZuulProperties properties;
 
 	private PathMatcher pathMatcher = new AntPathMatcher();
 
-	private AtomicReference<Map<String, ZuulRoute>> routes = new AtomicReference<>();
+	private AtomicReference<RouteSnapshot> routes = new AtomicReference<>();
+
+	private AtomicLong versions = new AtomicLong();
 
 	private Map<String, ZuulRoute> staticRoutes = new LinkedHashMap<>();
 
@@ -82,63 +100,258 @@ public class ProxyRouteLocator implements RouteLocator {
 		return getRoutes().keySet();
 	}
 
+	/**
+	 * @return the current routes (path pattern to location), unmodifiable
+	 */
 	public Map<String, String> getRoutes() {
-		if (this.routes.get() == null) {
-			this.routes.set(locateRoutes());
-		}
-		Map<String, String> values = new LinkedHashMap<>();
-		for (String key : this.routes.get().keySet()) {
-			String url = key;
-			values.put(url, this.routes.get().get(key).getLocation());
+		return getRouteSnapshot().getRoutes();
+	}
+
+	/**
+	 * @return the current immutable snapshot of the routes
+	 */
+	public RouteSnapshot getRouteSnapshot() {
+		RouteSnapshot snapshot = this.routes.get();
+		if (snapshot == null) {
+			snapshot = snapshot();
+			if (!this.routes.compareAndSet(null, snapshot)) {
+				snapshot = this.routes.get();
+			}
 		}
-		return values;
+		return snapshot;
 	}
 
 	public ProxyRouteSpec getMatchingRoute(String path) {
-	    log.info("Finding route for path: " + path);	    
-	    
-		String location = null;
-		String targetPath = null;
-		String id = null;
-		String prefix = this.properties.getPrefix();
-		log.debug("servletPath=" + this.servletPath);
+		if (log.isDebugEnabled()) {
+			log.debug("Finding route for path: " + path);
+		}
+		path = stripServletPath(path);
+		RoutePlan plan = getRouteSnapshot().index.match(path);
+		return (plan == null || plan.location == null ? null : plan.rewrite(path));
+	}
+
+	/**
+	 * @param path the path to match
+	 * @return the pattern of the route that matches the path, or null if there is none
+	 */
+	public String getMatchingPattern(String path) {
+		return getRouteSnapshot().index.matchPattern(stripServletPath(path));
+	}
+
+	private String stripServletPath(String path) {
 		if (StringUtils.hasText(this.servletPath) && !this.servletPath.equals("/")
 				&& path.startsWith(this.servletPath)) {
-			path = path.substring(this.servletPath.length());
-		}
-		log.debug("path=" + path);
-		Boolean retryable = this.properties.getRetryable();
-		for (Entry<String, ZuulRoute> entry : this.routes.get().entrySet()) {
-			String pattern = entry.getKey();
-			log.debug("Matching pattern:" + pattern);
-			if (this.pathMatcher.match(pattern, path)) {
-				ZuulRoute route = entry.getValue();
-				id = route.getId();
-				location = route.getLocation();
-				targetPath = path;
-				if (path.startsWith(prefix) && this.properties.isStripPrefix()) {
-					targetPath = path.substring(prefix.length());
-				}
-				if (route.isStripPrefix()) {
-					int index = route.getPath().indexOf("*") - 1;
-					if (index > 0) {
-						String routePrefix = route.getPath().substring(0, index);
-						targetPath = targetPath.replaceFirst(routePrefix, "");
-						prefix = prefix + routePrefix;
-					}
-				}
-				if (route.getRetryable() != null) {
-					retryable = route.getRetryable();
+			return path.substring(this.servletPath.length());
+		}
+		return path;
+	}
+
+	/**
+	 * Rebuild all the routes from the configuration and the discovery client.
+	 */
+	public void resetRoutes() {
+		this.routes.set(snapshot());
+	}
+
+	/**
+	 * Update the routes only if the set of services known to the discovery client has
+	 * changed since they were last located. Cheap enough to call on every registry
+	 * heartbeat: the services are compared without copying them, and when some have been
+	 * added or removed only their routes are added to or removed from the current ones
+	 * (all the routes are located again if one of them is also configured explicitly, or
+	 * if {@link #supportsIncrementalRefresh()} is false).
+	 * @return true if the routes changed
+	 */
+	public boolean refreshRoutes() {
+		while (true) {
+			RouteSnapshot current = this.routes.get();
+			List<String> services = this.discovery == null ? Collections
+					.<String> emptyList() : this.discovery.getServices();
+			if (current != null && sameServices(current.services, services)) {
+				return false;
+			}
+			RouteSnapshot next = current != null && supportsIncrementalRefresh() ? update(
+					current, services) : null;
+			if (next == null) {
+				next = snapshot();
+				if (current != null && sameRoutes(current.index, next.index)) {
+					// services changed but none of them affects the routes (e.g. ignored)
+					next = new RouteSnapshot(current, next.services);
 				}
-				break;
 			}
+			if (this.routes.compareAndSet(current, next)) {
+				return current == null || next.index != current.index;
+			}
+			// changed by another thread in the meantime, so try again
 		}
-		return (location == null ? null : new ProxyRouteSpec(id, targetPath, location,
-				prefix, retryable));
 	}
 
-	public void resetRoutes() {
-		this.routes.set(locateRoutes());
+	/**
+	 * Subclasses that change how the routes are located (e.g. by overriding
+	 * {@link #locateRoutes()} or {@link #addConfiguredRoutes(Map)}) should return false,
+	 * so that all the routes are located again whenever the services change, instead of
+	 * only the routes of the services that were added or removed.
+	 * @return true if the routes of the services can be added and removed one by one
+	 * (default true)
+	 */
+	protected boolean supportsIncrementalRefresh() {
+		return true;
+	}
+
+	private RouteSnapshot snapshot() {
+		// Capture the services before locating the routes: if the registry changes in
+		// between, the next refresh sees a difference and catches up
+		Set<String> services = discoverServices();
+		LinkedHashMap<String, ZuulRoute> located = locateRoutes();
+		return new RouteSnapshot(compile(located), services, findDiscovered(located),
+				this.versions.incrementAndGet());
+	}
+
+	/**
+	 * Add the routes of the services that have appeared in the registry and remove the
+	 * routes of the ones that have gone, reusing the plans of all the other routes.
+	 * @return the new snapshot, or null if the routes have to be located again
+	 */
+	private RouteSnapshot update(RouteSnapshot current, List<String> services) {
+		Set<String> known = new HashSet<>(services);
+		List<String> added = new ArrayList<>();
+		for (String serviceId : services) {
+			if (!current.services.contains(serviceId)) {
+				added.add(serviceId);
+			}
+		}
+		List<String> removed = new ArrayList<>();
+		for (String serviceId : current.services) {
+			if (!known.contains(serviceId)) {
+				removed.add(serviceId);
+			}
+		}
+		Set<String> configured = getConfiguredServices();
+		for (String serviceId : added) {
+			if (configured.contains(serviceId)) {
+				return null;
+			}
+		}
+		for (String serviceId : removed) {
+			if (configured.contains(serviceId)) {
+				return null;
+			}
+		}
+		Map<String, RoutePlan> plans = new LinkedHashMap<>(current.index.getRoutes());
+		Map<String, String> discovered = new HashMap<>(current.discovered);
+		boolean changed = false;
+		for (String serviceId : removed) {
+			String path = discovered.remove(serviceId);
+			if (path != null) {
+				plans.remove(path);
+				changed = true;
+			}
+		}
+		String[] ignored = this.properties.getIgnoredServices().toArray(new String[0]);
+		for (String serviceId : added) {
+			String key = "/" + serviceId + "/**";
+			String path = prefixed(key);
+			if (!PatternMatchUtils.simpleMatch(ignored, serviceId)
+					&& !plans.containsKey(path)) {
+				plans.put(path, new RoutePlan(new ZuulRoute(key, serviceId),
+						this.properties));
+				discovered.put(serviceId, path);
+				changed = true;
+			}
+		}
+		if (!changed) {
+			return new RouteSnapshot(current, known);
+		}
+		String defaultPath = prefixed(DEFAULT_ROUTE);
+		RoutePlan defaultPlan = plans.remove(defaultPath);
+		if (defaultPlan != null) {
+			// the default route stays last
+			plans.put(defaultPath, defaultPlan);
+		}
+		return new RouteSnapshot(new RouteIndex<>(plans, this.pathMatcher), known,
+				discovered, this.versions.incrementAndGet());
+	}
+
+	private Set<String> discoverServices() {
+		if (this.discovery == null) {
+			return Collections.emptySet();
+		}
+		return new HashSet<>(this.discovery.getServices());
+	}
+
+	private boolean sameServices(Set<String> known, List<String> services) {
+		// the discovery client lists each service once
+		if (known.size() != services.size()) {
+			return false;
+		}
+		for (String serviceId : services) {
+			if (!known.contains(serviceId)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the ids and service ids of the routes that are not only discovered
+	 */
+	private Set<String> getConfiguredServices() {
+		Set<String> services = new HashSet<>();
+		List<ZuulRoute> routes = new ArrayList<>(this.properties.getRoutes().values());
+		routes.addAll(this.staticRoutes.values());
+		for (ZuulRoute route : routes) {
+			if (route.getServiceId() != null) {
+				services.add(route.getServiceId());
+			}
+			if (route.getId() != null) {
+				services.add(route.getId());
+			}
+		}
+		return services;
+	}
+
+	/**
+	 * @return the paths of the routes that were created for discovered services (by
+	 * service id)
+	 */
+	private Map<String, String> findDiscovered(Map<String, ZuulRoute> located) {
+		Set<ZuulRoute> configured = Collections
+				.newSetFromMap(new IdentityHashMap<ZuulRoute, Boolean>());
+		configured.addAll(this.properties.getRoutes().values());
+		configured.addAll(this.staticRoutes.values());
+		Map<String, String> discovered = new HashMap<>();
+		for (Entry<String, ZuulRoute> entry : located.entrySet()) {
+			ZuulRoute route = entry.getValue();
+			if (!configured.contains(route) && route.getServiceId() != null) {
+				discovered.put(route.getServiceId(), entry.getKey());
+			}
+		}
+		return discovered;
+	}
+
+	private boolean sameRoutes(RouteIndex<RoutePlan> current, RouteIndex<RoutePlan> next) {
+		if (current.size() != next.size()) {
+			return false;
+		}
+		// order matters as well, because the first matching route wins
+		Iterator<Entry<String, RoutePlan>> others = next.getRoutes().entrySet()
+				.iterator();
+		for (Entry<String, RoutePlan> entry : current.getRoutes().entrySet()) {
+			Entry<String, RoutePlan> other = others.next();
+			if (!entry.getKey().equals(other.getKey())
+					|| !entry.getValue().isSameAs(other.getValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private RouteIndex<RoutePlan> compile(Map<String, ZuulRoute> routes) {
+		Map<String, RoutePlan> plans = new LinkedHashMap<>();
+		for (Entry<String, ZuulRoute> entry : routes.entrySet()) {
+			plans.put(entry.getKey(), new RoutePlan(entry.getValue(), this.properties));
+		}
+		return new RouteIndex<>(plans, this.pathMatcher);
 	}
 
 	protected LinkedHashMap<String, ZuulRoute> locateRoutes() {
@@ -194,17 +407,21 @@ public class ProxyRouteLocator implements RouteLocator {
 			if (!path.startsWith("/")) {
 				path = "/" + path;
 			}
-			if (StringUtils.hasText(this.properties.getPrefix())) {
-				path = this.properties.getPrefix() + path;
-				if (!path.startsWith("/")) {
-					path = "/" + path;
-				}
-			}
-			values.put(path, entry.getValue());
+			values.put(prefixed(path), entry.getValue());
 		}
 		return values;
 	}
 
+	private String prefixed(String path) {
+		if (StringUtils.hasText(this.properties.getPrefix())) {
+			path = this.properties.getPrefix() + path;
+			if (!path.startsWith("/")) {
+				path = "/" + path;
+			}
+		}
+		return path;
+	}
+
 	protected void addConfiguredRoutes(Map<String, ZuulRoute> routes) {
 		Map<String, ZuulRoute> routeEntries = this.properties.getRoutes();
 		for (ZuulRoute entry : routeEntries.values()) {
@@ -223,6 +440,146 @@ public class ProxyRouteLocator implements RouteLocator {
 
 	}
 
+	/**
+	 * Immutable view of the routes together with the discovered services they were built
+	 * from. Replaced atomically on every change, never modified, so it can be handed out
+	 * to any number of readers without copying.
+	 */
+	public static final class RouteSnapshot {
+
+		private final RouteIndex<RoutePlan> index;
+
+		private final Set<String> services;
+
+		private final Map<String, String> discovered;
+
+		private final Map<String, String> routes;
+
+		private final long version;
+
+		private final long timestamp;
+
+		private RouteSnapshot(RouteIndex<RoutePlan> index, Set<String> services,
+				Map<String, String> discovered, long version) {
+			this.index = index;
+			this.services = services;
+			this.discovered = discovered;
+			Map<String, String> routes = new LinkedHashMap<>();
+			for (Entry<String, RoutePlan> entry : index.getRoutes().entrySet()) {
+				routes.put(entry.getKey(), entry.getValue().location);
+			}
+			this.routes = Collections.unmodifiableMap(routes);
+			this.version = version;
+			this.timestamp = System.currentTimeMillis();
+		}
+
+		private RouteSnapshot(RouteSnapshot snapshot, Set<String> services) {
+			this.index = snapshot.index;
+			this.services = services;
+			this.discovered = snapshot.discovered;
+			this.routes = snapshot.routes;
+			this.version = snapshot.version;
+			this.timestamp = snapshot.timestamp;
+		}
+
+		/**
+		 * @return the routes (path pattern to location), unmodifiable
+		 */
+		public Map<String, String> getRoutes() {
+			return this.routes;
+		}
+
+		/**
+		 * @return a number that increases every time the routes are rebuilt
+		 */
+		public long getVersion() {
+			return this.version;
+		}
+
+		/**
+		 * @return the time the routes were built (milliseconds since the epoch)
+		 */
+		public long getTimestamp() {
+			return this.timestamp;
+		}
+
+	}
+
+	/**
+	 * Immutable instructions for turning a path matched by a route into a
+	 * {@link ProxyRouteSpec}, computed once when the routes are located so that the
+	 * request path can be rewritten without any regular expressions.
+	 */
+	private static final class RoutePlan {
+
+		private final String id;
+
+		private final String location;
+
+		private final String prefix;
+
+		private final boolean stripPrefix;
+
+		private final String routePrefix;
+
+		private final String targetPrefix;
+
+		private final Boolean retryable;
+
+		private final boolean async;
+
+		private RoutePlan(ZuulRoute route, ZuulProperties properties) {
+			this.id = route.getId();
+			this.location = route.getLocation();
+			this.prefix = properties.getPrefix();
+			this.stripPrefix = properties.isStripPrefix();
+			String routePrefix = null;
+			if (route.isStripPrefix()) {
+				int index = route.getPath().indexOf("*") - 1;
+				if (index > 0) {
+					routePrefix = route.getPath().substring(0, index);
+				}
+			}
+			this.routePrefix = routePrefix;
+			this.targetPrefix = routePrefix == null ? this.prefix : this.prefix
+					+ routePrefix;
+			this.retryable = route.getRetryable() != null ? route.getRetryable()
+					: properties.getRetryable();
+			this.async = route.isAsync();
+		}
+
+		private boolean isSameAs(RoutePlan other) {
+			return other != null && ObjectUtils.nullSafeEquals(this.id, other.id)
+					&& ObjectUtils.nullSafeEquals(this.location, other.location)
+					&& ObjectUtils.nullSafeEquals(this.prefix, other.prefix)
+					&& this.stripPrefix == other.stripPrefix
+					&& ObjectUtils.nullSafeEquals(this.routePrefix, other.routePrefix)
+					&& ObjectUtils.nullSafeEquals(this.retryable, other.retryable)
+					&& this.async == other.async;
+		}
+
+		private ProxyRouteSpec rewrite(String path) {
+			String targetPath = path;
+			if (this.stripPrefix && path.startsWith(this.prefix)) {
+				targetPath = path.substring(this.prefix.length());
+			}
+			if (this.routePrefix != null) {
+				// remove the first occurrence of the route prefix
+				int index = targetPath.indexOf(this.routePrefix);
+				if (index == 0) {
+					targetPath = targetPath.substring(this.routePrefix.length());
+				}
+				else if (index > 0) {
+					targetPath = targetPath.substring(0, index)
+							+ targetPath.substring(index + this.routePrefix.length());
+				}
+			}
+			return new ProxyRouteSpec(this.id, targetPath, this.location,
+					this.targetPrefix, this.retryable, this.async);
+		}
+
+	}
+
 	@Data
 	@AllArgsConstructor
 	public static class ProxyRouteSpec {
@@ -237,6 +594,13 @@ public class ProxyRouteLocator implements RouteLocator {
 
 		private Boolean retryable;
 
+		private boolean async;
+
+		public ProxyRouteSpec(String id, String path, String location, String prefix,
+				Boolean retryable) {
+			this(id, path, location, prefix, retryable, false);
+		}
+
 	}
 
 }
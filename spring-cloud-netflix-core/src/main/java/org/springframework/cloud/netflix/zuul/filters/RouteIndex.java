@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.springframework.util.PathMatcher;
+
+/**
+ * Immutable index of route patterns, compiled once from an ordered map of pattern to
+ * value. Patterns are stored in a trie keyed by their leading literal path segments, so
+ * that a lookup only evaluates the patterns whose literal prefix is a prefix of the
+ * requested path (plus the patterns that start with a wildcard). The first matching
+ * pattern in the original map order wins, exactly as with a linear scan.
+ *
+ * @author Dave Syer
+ */
+public class RouteIndex<T> {
+
+	private final Map<String, T> routes;
+
+	private final PathMatcher pathMatcher;
+
+	private final Node<T> root = new Node<>();
+
+	private final int size;
+
+	public RouteIndex(Map<String, T> routes, PathMatcher pathMatcher) {
+		this.routes = Collections.unmodifiableMap(new LinkedHashMap<>(routes));
+		this.pathMatcher = pathMatcher;
+		int ordinal = 0;
+		for (Entry<String, T> entry : this.routes.entrySet()) {
+			String pattern = entry.getKey();
+			Node<T> node = this.root;
+			for (String segment : literalSegments(pattern)) {
+				node = node.child(segment);
+			}
+			node.candidates.add(new Candidate<>(ordinal++, pattern, entry.getValue()));
+		}
+		this.size = ordinal;
+	}
+
+	/**
+	 * @return the routes this index was built from, in their original order
+	 */
+	public Map<String, T> getRoutes() {
+		return this.routes;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Find the value of the first route (in the original order) whose pattern matches the
+	 * path.
+	 * @param path the path to match
+	 * @return the matching value or null if there is none
+	 */
+	public T match(String path) {
+		Candidate<T> best = findCandidate(path);
+		return best == null ? null : best.value;
+	}
+
+	/**
+	 * Find the first pattern (in the original order) that matches the path.
+	 * @param path the path to match
+	 * @return the matching pattern or null if there is none
+	 */
+	public String matchPattern(String path) {
+		Candidate<T> best = findCandidate(path);
+		return best == null ? null : best.pattern;
+	}
+
+	/**
+	 * @return the number of patterns that are candidates for this path (for diagnostics
+	 * and tests)
+	 */
+	int countCandidates(String path) {
+		int count = 0;
+		for (Node<T> node : nodesFor(path)) {
+			count += node.candidates.size();
+		}
+		return count;
+	}
+
+	private Candidate<T> findCandidate(String path) {
+		Candidate<T> best = bestOf(this.root, path, null);
+		Node<T> node = this.root;
+		int start = 0;
+		while (start < path.length() && node.children != null) {
+			int end = nextSegmentEnd(path, start);
+			String segment = segment(path, start, end);
+			start = end + 1;
+			if (segment.isEmpty()) {
+				continue;
+			}
+			node = node.children.get(segment);
+			if (node == null) {
+				break;
+			}
+			best = bestOf(node, path, best);
+		}
+		return best;
+	}
+
+	private List<Node<T>> nodesFor(String path) {
+		List<Node<T>> nodes = new ArrayList<>();
+		nodes.add(this.root);
+		Node<T> node = this.root;
+		int start = 0;
+		while (start < path.length() && node.children != null) {
+			int end = nextSegmentEnd(path, start);
+			String segment = segment(path, start, end);
+			start = end + 1;
+			if (segment.isEmpty()) {
+				continue;
+			}
+			node = node.children.get(segment);
+			if (node == null) {
+				break;
+			}
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	private Candidate<T> bestOf(Node<T> node, String path, Candidate<T> best) {
+		for (Candidate<T> candidate : node.candidates) {
+			if (best != null && candidate.ordinal > best.ordinal) {
+				// candidates are in ascending order so nothing else here can win
+				break;
+			}
+			if (this.pathMatcher.match(candidate.pattern, path)) {
+				return candidate;
+			}
+		}
+		return best;
+	}
+
+	private static int nextSegmentEnd(String path, int start) {
+		int end = path.indexOf('/', start);
+		return end < 0 ? path.length() : end;
+	}
+
+	private static String segment(String path, int start, int end) {
+		// AntPathMatcher trims whitespace from path tokens by default
+		while (start < end && Character.isWhitespace(path.charAt(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(path.charAt(end - 1))) {
+			end--;
+		}
+		return path.substring(start, end);
+	}
+
+	/**
+	 * The leading path segments of a pattern that contain no wildcards or URI template
+	 * variables. Any path matched by the pattern must start with these segments.
+	 */
+	static List<String> literalSegments(String pattern) {
+		List<String> segments = new ArrayList<>();
+		int start = 0;
+		while (start < pattern.length()) {
+			int end = nextSegmentEnd(pattern, start);
+			String segment = segment(pattern, start, end);
+			start = end + 1;
+			if (!isLiteral(segment)) {
+				break;
+			}
+			if (!segment.isEmpty()) {
+				segments.add(segment);
+			}
+		}
+		return segments;
+	}
+
+	private static boolean isLiteral(String segment) {
+		for (int i = 0; i < segment.length(); i++) {
+			char c = segment.charAt(i);
+			if (c == '*' || c == '?' || c == '{' || c == '}') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static class Node<T> {
+
+		private final List<Candidate<T>> candidates = new ArrayList<>(1);
+
+		private Map<String, Node<T>> children;
+
+		private Node<T> child(String segment) {
+			if (this.children == null) {
+				this.children = new HashMap<>();
+			}
+			Node<T> child = this.children.get(segment);
+			if (child == null) {
+				child = new Node<>();
+				this.children.put(segment, child);
+			}
+			return child;
+		}
+
+	}
+
+	private static class Candidate<T> {
+
+		private final int ordinal;
+
+		private final String pattern;
+
+		private final T value;
+
+		private Candidate(int ordinal, String pattern, T value) {
+			this.ordinal = ordinal;
+			this.pattern = pattern;
+			this.value = value;
+		}
+
+	}
+
+}
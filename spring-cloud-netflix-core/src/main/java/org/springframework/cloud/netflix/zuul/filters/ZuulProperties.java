@@ -17,6 +17,7 @@
 package org.springframework.cloud.netflix.zuul.filters;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -24,7 +25,6 @@ import java.util.Map.Entry;
 
 import javax.annotation.PostConstruct;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -53,6 +53,18 @@ public class ZuulProperties {
 
 	private String servletPath = "/zuul";
 
+	private Host host = new Host();
+
+	private Compression compression = new Compression();
+
+	private Cache cache = new Cache();
+
+	private Coalescing coalescing = new Coalescing();
+
+	private Hedging hedging = new Hedging();
+
+	private Concurrency concurrency = new Concurrency();
+
 	@PostConstruct
 	public void init() {
 		for (Entry<String, ZuulRoute> entry : this.routes.entrySet()) {
@@ -69,8 +81,25 @@ public class ZuulProperties {
 		}
 	}
 
+	/**
+	 * Find a route by its id.
+	 * @param id the route id
+	 * @return the route, or null if there is none (e.g. it was created from discovery)
+	 */
+	public ZuulRoute findRoute(String id) {
+		ZuulRoute route = this.routes.get(id);
+		if (route != null && id.equals(route.getId())) {
+			return route;
+		}
+		for (ZuulRoute candidate : this.routes.values()) {
+			if (id.equals(candidate.getId())) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
 	@Data
-	@AllArgsConstructor
 	@NoArgsConstructor
 	public static class ZuulRoute {
 
@@ -86,6 +115,80 @@ public class ZuulProperties {
 
 		private Boolean retryable;
 
+		/**
+		 * Maximum number of pooled connections to the url of this route (overrides
+		 * zuul.host.maxConnections).
+		 */
+		private Integer maxConnections;
+
+		/**
+		 * Millis after which idle pooled connections to the url of this route are
+		 * closed (overrides zuul.host.idleTimeout).
+		 */
+		private Long idleTimeout;
+
+		/**
+		 * Millis of inactivity after which a pooled connection to the url of this route
+		 * is validated before it is reused (overrides zuul.host.validateAfterInactivity).
+		 */
+		private Integer validateAfterInactivity;
+
+		/**
+		 * Flag to forward requests to the url of this route without holding a servlet
+		 * container thread while waiting for the response (Servlet 3.0 async requests
+		 * and a non-blocking HTTP client).
+		 */
+		private boolean async;
+
+		/**
+		 * Flag to compress the responses of this route at the gateway (overrides
+		 * zuul.compression.enabled).
+		 */
+		private Boolean compress;
+
+		/**
+		 * Flag to cache the responses of this route to GET requests, as long as their
+		 * Cache-Control and Expires headers allow it.
+		 */
+		private boolean cacheable;
+
+		/**
+		 * Flag to share one call to the service of this route between identical
+		 * concurrent GET and HEAD requests.
+		 */
+		private boolean coalesce;
+
+		/**
+		 * Flag to send a second GET or HEAD request to another instance of the service
+		 * of this route when the first one is slow, and use whichever response comes
+		 * first.
+		 */
+		private boolean hedge;
+
+		/**
+		 * Name of a request header with the load balancer key of the requests of this
+		 * route (e.g. a tenant or a user), for a key-aware Ribbon rule like
+		 * ConsistentHashRule.
+		 */
+		private String affinityHeader;
+
+		/**
+		 * Index of the segment of the forwarded path with the load balancer key of the
+		 * requests of this route (if there is no affinityHeader, or the request does not
+		 * have it).
+		 */
+		private Integer affinityPathSegment;
+
+		public ZuulRoute(String id, String path, String serviceId, String url,
+				boolean stripPrefix, Boolean retryable) {
+			this.id = id;
+			this.path = path;
+			this.serviceId = serviceId;
+			this.url = url;
+			this.stripPrefix = stripPrefix;
+			this.retryable = retryable;
+		}
+
 		public ZuulRoute(String text) {
 			String location = null;
 			String path = text;
@@ -134,6 +237,187 @@ public class ZuulProperties {
 
 	}
 
+	/**
+	 * Connection pool settings for the routes with a url, applied to each route's pool
+	 * unless the route overrides them.
+	 */
+	@Data
+	public static class Host {
+
+		/**
+		 * Maximum number of pooled connections per route.
+		 */
+		private int maxConnections = 20;
+
+		/**
+		 * Millis after which idle pooled connections are closed (negative to keep them
+		 * open until the server closes them).
+		 */
+		private long idleTimeout = 60000;
+
+		/**
+		 * Millis of inactivity after which a pooled connection is validated before it
+		 * is reused (negative to disable).
+		 */
+		private int validateAfterInactivity = 2000;
+
+		/**
+		 * Maximum number of connection pools for hosts that are not the url of a
+		 * configured route (e.g. set by a custom filter). The least recently used one is
+		 * closed when there are more.
+		 */
+		private int maxUnroutedPools = 50;
+
+		/**
+		 * Maximum size in bytes of a request body that an async route reads into memory.
+		 * Requests with a larger body, or a chunked one, are forwarded synchronously
+		 * (streaming the body).
+		 */
+		private int maxAsyncRequestSize = 65536;
+
+	}
+
+	/**
+	 * Settings for compressing responses at the gateway, for clients that accept gzip
+	 * when the origin did not compress the response.
+	 */
+	@Data
+	public static class Compression {
+
+		/**
+		 * Flag to compress responses (routes can override it).
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Minimum size in bytes of a response to compress. Responses without a
+		 * Content-Length are compressed whatever their size.
+		 */
+		private int minResponseSize = 2048;
+
+		/**
+		 * Content types to compress.
+		 */
+		private List<String> mimeTypes = new ArrayList<String>(Arrays.asList(
+				"text/html", "text/xml", "text/plain", "text/css", "text/javascript",
+				"application/javascript", "application/json", "application/xml"));
+
+	}
+
+	/**
+	 * Settings for the response cache of the routes flagged as cacheable.
+	 */
+	@Data
+	public static class Cache {
+
+		/**
+		 * Maximum total size in bytes of the cached response bodies.
+		 */
+		private long maxSize = 10 * 1024 * 1024;
+
+		/**
+		 * Maximum size in bytes of a cached response body (larger ones are not cached).
+		 */
+		private int maxEntrySize = 1024 * 1024;
+
+		/**
+		 * Flag to keep the cached bodies in direct buffers, outside the Java heap.
+		 */
+		private boolean offHeap = false;
+
+	}
+
+	/**
+	 * Settings for sharing one call to the service between identical concurrent
+	 * requests, for the routes flagged with <code>coalesce</code>.
+	 */
+	@Data
+	public static class Coalescing {
+
+		/**
+		 * Request headers that make a response differ (requests with different values
+		 * are never coalesced).
+		 */
+		private List<String> headers = new ArrayList<String>(Arrays.asList("Accept",
+				"Accept-Language", "Authorization", "Cookie"));
+
+		/**
+		 * Maximum size in bytes of a shared response body. The requests waiting for a
+		 * larger response call the service themselves.
+		 */
+		private int maxResponseSize = 1024 * 1024;
+
+	}
+
+	/**
+	 * Settings for the hedged requests of the routes flagged with <code>hedge</code>.
+	 */
+	@Data
+	public static class Hedging {
+
+		/**
+		 * Millis to wait for a response before sending the hedged request. If 0 the
+		 * delay is the given percentile of the recent response times of the service.
+		 */
+		private long delay = 0;
+
+		/**
+		 * Percentile of the recent response times of a service used as the delay when
+		 * none is set.
+		 */
+		private int percentile = 95;
+
+		/**
+		 * Maximum number of hedged requests, as a percentage of the requests to a
+		 * service.
+		 */
+		private int budgetPercent = 10;
+
+		/**
+		 * Maximum number of threads running the attempts of hedged requests. When they
+		 * are all busy a request is sent without hedging.
+		 */
+		private int maxThreads = 100;
+
+	}
+
+	/**
+	 * Settings for the concurrency limits of the services behind the routes with a
+	 * <code>serviceId</code>.
+	 */
+	@Data
+	public static class Concurrency {
+
+		/**
+		 * Flag to adjust the limit of each service from its response times, instead of
+		 * relying only on the fixed Hystrix semaphore
+		 * (<code>zuul.eureka.{service}.semaphore.maxSemaphores</code>).
+		 */
+		private boolean adaptive = false;
+
+		/**
+		 * Limit of concurrent requests to a service before it has been adjusted.
+		 */
+		private int initialLimit = 20;
+
+		/**
+		 * Lowest limit of concurrent requests to a service.
+		 */
+		private int minLimit = 1;
+
+		/**
+		 * Highest limit of concurrent requests to a service (should not be more than
+		 * the Hystrix semaphore).
+		 */
+		private int maxLimit = 100;
+
+		/**
+		 * Weight of each new estimate of the limit (between 0 and 1).
+		 */
+		private double smoothing = 0.2;
+
+	}
+
 	public String getServletPattern() {
 		String path = this.servletPath;
 		if (!path.startsWith("/")) {
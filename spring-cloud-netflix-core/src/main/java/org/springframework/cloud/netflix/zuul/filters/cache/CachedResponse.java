@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.cache;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+
+import com.netflix.util.Pair;
+import com.netflix.zuul.context.RequestContext;
+
+/**
+ * A response stored in the {@link ResponseCache}: the status, the headers that are
+ * sent to the client and the body (compressed if the origin compressed it).
+ *
+ * @author Dave Syer
+ */
+class CachedResponse {
+
+	private final String routeId;
+
+	private final int status;
+
+	private final List<Pair<String, String>> headers;
+
+	private final boolean gzipped;
+
+	private final ByteBuffer body;
+
+	private final String etag;
+
+	private final Map<String, String> vary;
+
+	private final long created;
+
+	private volatile long expires;
+
+	private volatile boolean used;
+
+	CachedResponse(String routeId, int status, List<Pair<String, String>> headers,
+			boolean gzipped, ByteBuffer body, String etag, Map<String, String> vary,
+			long now, long lifetime) {
+		this.routeId = routeId;
+		this.status = status;
+		this.headers = new ArrayList<>(headers);
+		this.gzipped = gzipped;
+		this.body = body;
+		this.etag = etag;
+		this.vary = vary;
+		this.created = now;
+		this.expires = now + lifetime;
+	}
+
+	String getRouteId() {
+		return this.routeId;
+	}
+
+	String getEtag() {
+		return this.etag;
+	}
+
+	int size() {
+		return this.body.capacity();
+	}
+
+	/**
+	 * Note that the response was looked up, so that it is not the next to be evicted.
+	 */
+	void markUsed() {
+		if (!this.used) {
+			this.used = true;
+		}
+	}
+
+	/**
+	 * @return true if the response was looked up since the last call
+	 */
+	boolean clearUsed() {
+		if (this.used) {
+			this.used = false;
+			return true;
+		}
+		return false;
+	}
+
+	boolean isFresh(long now) {
+		return now < this.expires;
+	}
+
+	/**
+	 * Extend the lifetime after the origin said the response has not changed.
+	 */
+	void refresh(long now, long lifetime) {
+		this.expires = now + lifetime;
+	}
+
+	/**
+	 * Check that the request has the same values as the stored one for the headers
+	 * listed in the <code>Vary</code> header of the response.
+	 */
+	boolean matches(HttpServletRequest request) {
+		for (Entry<String, String> entry : this.vary.entrySet()) {
+			if (!ObjectUtils.nullSafeEquals(entry.getValue(),
+					getHeader(request, entry.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Make this the response of the current request, so that the post filters send it
+	 * to the client.
+	 */
+	void serve(RequestContext context, long now) {
+		context.setResponseStatusCode(this.status);
+		context.getZuulResponseHeaders().clear();
+		for (Pair<String, String> header : this.headers) {
+			context.addZuulResponseHeader(header.first(), header.second());
+		}
+		context.addZuulResponseHeader("Age",
+				String.valueOf(Math.max(0, (now - this.created) / 1000)));
+		context.setOriginContentLength(size());
+		context.setResponseGZipped(this.gzipped);
+		context.setResponseDataStream(new ByteBufferInputStream(this.body.duplicate()));
+	}
+
+	static String getHeader(HttpServletRequest request, String name) {
+		Enumeration<String> values = request.getHeaders(name);
+		if (values == null || !values.hasMoreElements()) {
+			return null;
+		}
+		List<String> list = new ArrayList<>();
+		while (values.hasMoreElements()) {
+			list.add(values.nextElement());
+		}
+		return StringUtils.collectionToCommaDelimitedString(list);
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!this.buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(len, this.buffer.remaining());
+			this.buffer.get(b, off, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return this.buffer.remaining();
+		}
+
+	}
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.cache;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
+import com.netflix.util.Pair;
+
+/**
+ * Size-bounded store for the responses of the routes flagged as <code>cacheable</code>.
+ * Responses that have not been used recently are evicted when the bodies exceed
+ * <code>zuul.cache.maxSize</code> bytes (a "second chance" approximation of least
+ * recently used, so that a lookup takes no lock). The bodies are kept on the heap, or
+ * in direct buffers if <code>zuul.cache.offHeap</code> is set, so that a large cache
+ * adds little to the garbage collection work. The hits, misses, revalidations and evictions of each
+ * route are registered with Servo as <code>ZuulCache_{route}</code>.
+ *
+ * @author Dave Syer
+ */
+public class ResponseCache {
+
+	private final ConcurrentMap<String, CachedResponse> responses = new ConcurrentHashMap<>();
+
+	/**
+	 * The stored responses in the order they are considered for eviction (guarded by
+	 * itself, like the size).
+	 */
+	private final Deque<Entry<String, CachedResponse>> queue = new ArrayDeque<>();
+
+	private final ConcurrentMap<String, RouteCacheStats> stats = new ConcurrentHashMap<>();
+
+	private final ZuulProperties properties;
+
+	private long size;
+
+	public ResponseCache(ZuulProperties properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * @param routeId the route id (may be null)
+	 * @return true if the responses of the route may be cached
+	 */
+	public boolean isCacheable(String routeId) {
+		if (routeId == null) {
+			return false;
+		}
+		ZuulRoute route = this.properties.findRoute(routeId);
+		return route != null && route.isCacheable();
+	}
+
+	CachedResponse get(String key) {
+		CachedResponse response = this.responses.get(key);
+		if (response != null) {
+			response.markUsed();
+		}
+		return response;
+	}
+
+	/**
+	 * Store a response, evicting the least recently used ones if the cache is full.
+	 * @return false if the response is too large to be stored
+	 */
+	boolean put(String key, CachedResponse response) {
+		long maxSize = this.properties.getCache().getMaxSize();
+		if (response.size() > maxSize) {
+			return false;
+		}
+		synchronized (this.queue) {
+			CachedResponse old = this.responses.put(key, response);
+			if (old != null) {
+				this.size -= old.size();
+			}
+			this.size += response.size();
+			this.queue.add(new SimpleImmutableEntry<>(key, response));
+			while (this.size > maxSize && !this.queue.isEmpty()) {
+				Entry<String, CachedResponse> eldest = this.queue.poll();
+				CachedResponse candidate = eldest.getValue();
+				if (this.responses.get(eldest.getKey()) != candidate) {
+					// replaced or removed already
+					continue;
+				}
+				if (candidate.clearUsed()) {
+					// used since it was last considered, so it gets another chance
+					this.queue.add(eldest);
+					continue;
+				}
+				this.responses.remove(eldest.getKey(), candidate);
+				this.size -= candidate.size();
+				getStats(candidate.getRouteId()).evictions.increment();
+			}
+			if (this.queue.size() > 2 * this.responses.size() + 16) {
+				purge();
+			}
+		}
+		return true;
+	}
+
+	void remove(String key) {
+		synchronized (this.queue) {
+			CachedResponse old = this.responses.remove(key);
+			if (old != null) {
+				this.size -= old.size();
+			}
+		}
+	}
+
+	/**
+	 * @return the total size of the bodies in the cache
+	 */
+	public long getSize() {
+		synchronized (this.queue) {
+			return this.size;
+		}
+	}
+
+	/**
+	 * @param body a buffer with the body at the start (may be larger than the body)
+	 * @param length the length of the body
+	 * @return a buffer of exactly the length of the body, so that the size of the cache
+	 * is what it really holds on to
+	 */
+	ByteBuffer allocate(byte[] body, int length) {
+		if (this.properties.getCache().isOffHeap()) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+			buffer.put(body, 0, length);
+			buffer.flip();
+			return buffer;
+		}
+		return ByteBuffer.wrap(body.length == length ? body : Arrays.copyOf(body,
+				length));
+	}
+
+	int getMaxEntrySize() {
+		return this.properties.getCache().getMaxEntrySize();
+	}
+
+	RouteCacheStats getStats(String routeId) {
+		RouteCacheStats stats = this.stats.get(routeId);
+		if (stats == null) {
+			stats = new RouteCacheStats();
+			RouteCacheStats existing = this.stats.putIfAbsent(routeId, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+			else {
+				Monitors.registerObject("ZuulCache_" + routeId, stats);
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Remove all the responses and unregister the metrics.
+	 */
+	public void close() {
+		synchronized (this.queue) {
+			this.responses.clear();
+			this.queue.clear();
+			this.size = 0;
+		}
+		for (String routeId : this.stats.keySet()) {
+			RouteCacheStats stats = this.stats.remove(routeId);
+			if (stats != null) {
+				Monitors.unregisterObject("ZuulCache_" + routeId, stats);
+			}
+		}
+	}
+
+	/**
+	 * Drop the entries of the queue for responses that were replaced or removed.
+	 */
+	private void purge() {
+		for (Iterator<Entry<String, CachedResponse>> iterator = this.queue.iterator(); iterator
+				.hasNext();) {
+			Entry<String, CachedResponse> entry = iterator.next();
+			if (this.responses.get(entry.getKey()) != entry.getValue()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Work out how long a response stays fresh from its <code>Cache-Control</code> and
+	 * <code>Expires</code> headers. A response that sets a cookie is never stored, since
+	 * the cookie belongs to the client that made the request.
+	 * @param origin the headers of the response
+	 * @param now the current time
+	 * @return the freshness lifetime in millis, 0 if the response has to be revalidated
+	 * before it is reused, or -1 if it must not be stored
+	 */
+	static long getFreshnessLifetime(List<Pair<String, String>> origin, long now) {
+		HttpHeaders headers = toHttpHeaders(origin);
+		if (headers.containsKey("Set-Cookie") || headers.containsKey("Set-Cookie2")) {
+			return -1;
+		}
+		long maxAge = -1;
+		long sharedMaxAge = -1;
+		boolean noCache = false;
+		List<String> cacheControl = headers.get(HttpHeaders.CACHE_CONTROL);
+		if (cacheControl != null) {
+			for (String value : cacheControl) {
+				for (String directive : StringUtils
+						.commaDelimitedListToStringArray(value)) {
+					directive = directive.trim().toLowerCase();
+					if (directive.equals("no-store") || directive.startsWith("private")) {
+						return -1;
+					}
+					if (directive.startsWith("no-cache")) {
+						noCache = true;
+					}
+					else if (directive.startsWith("s-maxage=")) {
+						sharedMaxAge = parseSeconds(directive.substring(9));
+					}
+					else if (directive.startsWith("max-age=")) {
+						maxAge = parseSeconds(directive.substring(8));
+					}
+				}
+			}
+		}
+		if (noCache) {
+			return 0;
+		}
+		if (sharedMaxAge >= 0) {
+			return sharedMaxAge * 1000;
+		}
+		if (maxAge >= 0) {
+			return maxAge * 1000;
+		}
+		if (headers.containsKey(HttpHeaders.EXPIRES)) {
+			try {
+				long expires = headers.getExpires();
+				long date = headers.containsKey(HttpHeaders.DATE) ? headers.getDate()
+						: now;
+				return Math.max(0, expires - date);
+			}
+			catch (IllegalArgumentException ex) {
+				// an invalid date means already expired
+				return 0;
+			}
+		}
+		// no explicit lifetime, so only reused after revalidation
+		return 0;
+	}
+
+	static HttpHeaders toHttpHeaders(List<Pair<String, String>> pairs) {
+		HttpHeaders headers = new HttpHeaders();
+		for (Pair<String, String> pair : pairs) {
+			headers.add(pair.first(), pair.second());
+		}
+		return headers;
+	}
+
+	private static long parseSeconds(String value) {
+		try {
+			return Math.max(0, Long.parseLong(value.trim()));
+		}
+		catch (NumberFormatException ex) {
+			return 0;
+		}
+	}
+
+	static class RouteCacheStats {
+
+		final BasicCounter hits = new BasicCounter(MonitorConfig.builder("hits")
+				.build());
+
+		final BasicCounter misses = new BasicCounter(MonitorConfig.builder("misses")
+				.build());
+
+		final BasicCounter revalidations = new BasicCounter(MonitorConfig.builder(
+				"revalidations").build());
+
+		final BasicCounter evictions = new BasicCounter(MonitorConfig.builder(
+				"evictions").build());
+
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.cache;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.cloud.netflix.zuul.filters.cache.ResponseCache.RouteCacheStats;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+
+/**
+ * Route filter that answers GET requests of the cacheable routes from the
+ * {@link ResponseCache}. It runs before the filters that forward the request: a fresh
+ * response is served straight away (and the request context is flagged with
+ * {@link #CACHE_HIT_KEY} so that they skip it), a stale one is revalidated with an
+ * <code>If-None-Match</code> header if it has an ETag. Responses from the origin are
+ * stored by the {@link ResponseCacheStoreFilter}.
+ *
+ * @author Dave Syer
+ */
+public class ResponseCacheFilter extends ZuulFilter {
+
+	/**
+	 * Request context flag set when the response comes from the cache.
+	 */
+	public static final String CACHE_HIT_KEY = "cacheHit";
+
+	static final String CACHE_KEY = "cacheKey";
+
+	static final String REVALIDATED_KEY = "cacheRevalidated";
+
+	private final ResponseCache cache;
+
+	public ResponseCacheFilter(ResponseCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public String filterType() {
+		return "route";
+	}
+
+	@Override
+	public int filterOrder() {
+		return 5;
+	}
+
+	@Override
+	public boolean shouldFilter() {
+		RequestContext context = RequestContext.getCurrentContext();
+		Object routeId = context.get("proxy");
+		return context.sendZuulResponse()
+				&& "GET".equals(context.getRequest().getMethod())
+				&& routeId != null && this.cache.isCacheable(routeId.toString());
+	}
+
+	@Override
+	public Object run() {
+		RequestContext context = RequestContext.getCurrentContext();
+		HttpServletRequest request = context.getRequest();
+		if (request.getHeader("Authorization") != null
+				|| hasDirective(request, "Cache-Control", "no-store")) {
+			return null;
+		}
+		String routeId = context.get("proxy").toString();
+		String key = getKey(routeId, request);
+		context.set(CACHE_KEY, key);
+		RouteCacheStats stats = this.cache.getStats(routeId);
+		if (hasDirective(request, "Cache-Control", "no-cache")
+				|| hasDirective(request, "Pragma", "no-cache")
+				|| request.getHeader("If-None-Match") != null
+				|| request.getHeader("If-Modified-Since") != null) {
+			// the client wants to hear from the origin
+			stats.misses.increment();
+			return null;
+		}
+		CachedResponse cached = this.cache.get(key);
+		if (cached == null || !cached.matches(request)) {
+			stats.misses.increment();
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (cached.isFresh(now)) {
+			stats.hits.increment();
+			cached.serve(context, now);
+			context.set(CACHE_HIT_KEY, true);
+			return null;
+		}
+		stats.misses.increment();
+		if (cached.getEtag() != null) {
+			context.addZuulRequestHeader("If-None-Match", cached.getEtag());
+			context.set(REVALIDATED_KEY, cached);
+		}
+		return null;
+	}
+
+	private String getKey(String routeId, HttpServletRequest request) {
+		StringBuilder key = new StringBuilder(routeId).append(' ').append(
+				request.getRequestURI());
+		if (request.getQueryString() != null) {
+			key.append('?').append(request.getQueryString());
+		}
+		return key.toString();
+	}
+
+	private boolean hasDirective(HttpServletRequest request, String header,
+			String directive) {
+		String value = CachedResponse.getHeader(request, header);
+		return value != null && value.toLowerCase().contains(directive);
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.springframework.cloud.netflix.zuul.filters.BufferedBody;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+
+import com.netflix.util.Pair;
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+
+/**
+ * Post filter that stores the responses of the cacheable routes in the
+ * {@link ResponseCache} (if their headers allow it), and serves the cached response
+ * when the origin confirms with a 304 that a stale one is still valid. It runs before
+ * the response is sent, and only for the requests that the {@link ResponseCacheFilter}
+ * has looked up.
+ *
+ * @author Dave Syer
+ */
+@CommonsLog
+public class ResponseCacheStoreFilter extends ZuulFilter {
+
+	private final ResponseCache cache;
+
+	public ResponseCacheStoreFilter(ResponseCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public String filterType() {
+		return "post";
+	}
+
+	@Override
+	public int filterOrder() {
+		return 900;
+	}
+
+	@Override
+	public boolean shouldFilter() {
+		RequestContext context = RequestContext.getCurrentContext();
+		return context.get(ResponseCacheFilter.CACHE_KEY) != null
+				&& !context.getBoolean(ResponseCacheFilter.CACHE_HIT_KEY)
+				&& context.get("error.status_code") == null
+				&& context.getThrowable() == null;
+	}
+
+	@Override
+	public Object run() {
+		RequestContext context = RequestContext.getCurrentContext();
+		String key = (String) context.get(ResponseCacheFilter.CACHE_KEY);
+		String routeId = context.get("proxy").toString();
+		List<Pair<String, String>> origin = context.getOriginResponseHeaders();
+		long now = System.currentTimeMillis();
+		int status = context.getResponseStatusCode();
+		CachedResponse revalidated = (CachedResponse) context
+				.get(ResponseCacheFilter.REVALIDATED_KEY);
+		if (revalidated != null && status == 304) {
+			long lifetime = ResponseCache.getFreshnessLifetime(origin, now);
+			revalidated.refresh(now, Math.max(0, lifetime));
+			this.cache.getStats(routeId).revalidations.increment();
+			closeQuietly(context.getResponseDataStream());
+			revalidated.serve(context, now);
+			return null;
+		}
+		if (status != 200 || context.getResponseBody() != null
+				|| context.getResponseDataStream() == null) {
+			return null;
+		}
+		long lifetime = ResponseCache.getFreshnessLifetime(origin, now);
+		HttpHeaders headers = ResponseCache.toHttpHeaders(origin);
+		String etag = headers.getETag();
+		Map<String, String> vary = getVary(headers, context.getRequest());
+		if (lifetime < 0 || (lifetime == 0 && etag == null) || vary == null) {
+			this.cache.remove(key);
+			return null;
+		}
+		try {
+			store(context, key, routeId, etag, vary, now, lifetime);
+		}
+		catch (IOException ex) {
+			log.debug("Could not cache response", ex);
+		}
+		return null;
+	}
+
+	private void store(RequestContext context, String key, String routeId,
+			String etag, Map<String, String> vary, long now, long lifetime)
+			throws IOException {
+		BufferedBody body = BufferedBody.read(context.getResponseDataStream(),
+				this.cache.getMaxEntrySize());
+		context.setResponseDataStream(body.getInputStream());
+		if (!body.isComplete()) {
+			// too large, send it without caching
+			return;
+		}
+		this.cache.put(key, new CachedResponse(routeId, 200, withoutAge(context
+				.getZuulResponseHeaders()), context.getResponseGZipped(), this.cache
+				.allocate(body.getBytes(), body.getLength()), etag, vary, now, lifetime));
+	}
+
+	/**
+	 * @return the request values of the headers the response varies on, or null if it
+	 * varies on everything
+	 */
+	private Map<String, String> getVary(HttpHeaders headers, HttpServletRequest request) {
+		Map<String, String> vary = new LinkedHashMap<>();
+		List<String> values = headers.get(HttpHeaders.VARY);
+		if (values == null) {
+			return vary;
+		}
+		for (String value : values) {
+			for (String name : StringUtils.commaDelimitedListToStringArray(value)) {
+				name = name.trim();
+				if (name.equals("*")) {
+					return null;
+				}
+				// the origin is always asked for gzip, and the response is decoded
+				// for the clients that do not accept it
+				if (StringUtils.hasText(name)
+						&& !name.equalsIgnoreCase(HttpHeaders.ACCEPT_ENCODING)) {
+					vary.put(name, CachedResponse.getHeader(request, name));
+				}
+			}
+		}
+		return vary;
+	}
+
+	private List<Pair<String, String>> withoutAge(List<Pair<String, String>> headers) {
+		List<Pair<String, String>> result = new ArrayList<>(headers.size());
+		for (Pair<String, String> header : headers) {
+			if (!"Age".equalsIgnoreCase(header.first())) {
+				result.add(header);
+			}
+		}
+		return result;
+	}
+
+	private void closeQuietly(InputStream input) {
+		if (input != null) {
+			try {
+				input.close();
+			}
+			catch (IOException ex) {
+				// ignore
+			}
+		}
+	}
+
+}
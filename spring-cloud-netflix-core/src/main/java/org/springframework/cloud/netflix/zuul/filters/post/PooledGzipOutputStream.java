@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.post;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Gzip output stream that reuses the {@link Deflater} of the current thread instead of
+ * allocating (and ending) a new one for every response, like
+ * {@link java.util.zip.GZIPOutputStream} does. Flushing the stream flushes the
+ * compressed data written so far, so that the adaptive flushing of the response still
+ * works. Closing the stream closes the target stream too.
+ *
+ * @author Dave Syer
+ */
+class PooledGzipOutputStream extends DeflaterOutputStream {
+
+	private static final ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<>();
+
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0,
+			0, 0, 0, 0, 0 };
+
+	private static final int TRAILER_SIZE = 8;
+
+	private final CRC32 crc = new CRC32();
+
+	private long nanos;
+
+	private long bytesIn;
+
+	private long bytesOut;
+
+	PooledGzipOutputStream(OutputStream out, int size) throws IOException {
+		super(out, getDeflater(), size, true);
+		out.write(HEADER);
+	}
+
+	private static Deflater getDeflater() {
+		Deflater deflater = DEFLATERS.get();
+		if (deflater == null) {
+			// raw deflate, the gzip header and trailer are written here
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			DEFLATERS.set(deflater);
+		}
+		else {
+			deflater.reset();
+		}
+		return deflater;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		long start = System.nanoTime();
+		super.write(b, off, len);
+		this.crc.update(b, off, len);
+		this.nanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (!this.def.finished()) {
+			long start = System.nanoTime();
+			super.finish();
+			byte[] trailer = new byte[TRAILER_SIZE];
+			writeInt((int) this.crc.getValue(), trailer, 0);
+			writeInt((int) this.def.getBytesRead(), trailer, 4);
+			this.out.write(trailer);
+			this.bytesIn = this.def.getBytesRead();
+			this.bytesOut = HEADER.length + this.def.getBytesWritten() + TRAILER_SIZE;
+			this.nanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * @return the time spent compressing (including handing over the compressed data
+	 * to the target stream)
+	 */
+	long getNanos() {
+		return this.nanos;
+	}
+
+	/**
+	 * @return the number of uncompressed bytes (available once finished)
+	 */
+	long getBytesIn() {
+		return this.bytesIn;
+	}
+
+	/**
+	 * @return the number of compressed bytes (available once finished)
+	 */
+	long getBytesOut() {
+		return this.bytesOut;
+	}
+
+	private static void writeInt(int value, byte[] buffer, int offset) {
+		// little endian, as gzip wants it
+		buffer[offset] = (byte) value;
+		buffer[offset + 1] = (byte) (value >> 8);
+		buffer[offset + 2] = (byte) (value >> 16);
+		buffer[offset + 3] = (byte) (value >> 24);
+	}
+
+}
@@ -20,16 +20,32 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.Compression;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
 
 import com.netflix.config.DynamicBooleanProperty;
 import com.netflix.config.DynamicIntProperty;
 import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicTimer;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
 import com.netflix.util.Pair;
 import com.netflix.zuul.ZuulFilter;
 import com.netflix.zuul.constants.ZuulConstants;
@@ -37,10 +53,41 @@ import com.netflix.zuul.constants.ZuulHeaders;
 import com.netflix.zuul.context.RequestContext;
 
 /**
+ * Writes the response of the proxied request to the client. The body is copied through a
+ * buffer that is reused by each thread (and grows up to
+ * {@value #MAX_STREAM_BUFFER_SIZE} bytes). Streaming content, like server-sent events,
+ * is flushed after every read, other bodies only when the origin has no more data
+ * ready. If the client goes away the copy stops and the connection to the origin is
+ * aborted, rather than read to the end.
+ * <p>
+ * Gzipped responses from the origin are passed through to the clients that accept gzip
+ * (and inflated for the others). Uncompressed responses can be gzipped here, if
+ * <code>zuul.compression</code> (or the route) enables it.
+ * <p>
+ * The bytes sent, the client aborts, the bytes saved by compression and the time spent
+ * compressing are registered with Servo as <code>ZuulResponse</code>.
+ *
  * @author Spencer Gibb
  */
+@CommonsLog
 public class SendResponseFilter extends ZuulFilter {
 
+	static final int MAX_STREAM_BUFFER_SIZE = 64 * 1024;
+
+	private static final int GZIP_BUFFER_SIZE = 8192;
+
+	private static final String NAME = "ZuulResponse";
+
+	private static final String[] STREAMING_CONTENT_TYPES = { "text/event-stream",
+			"application/stream+json", "application/x-ndjson",
+			"multipart/x-mixed-replace" };
+
+	private static final boolean HTTP_CLIENT_PRESENT = ClassUtils.isPresent(
+			"org.apache.http.conn.ConnectionReleaseTrigger",
+			SendResponseFilter.class.getClassLoader());
+
+	private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
 	private static DynamicBooleanProperty INCLUDE_DEBUG_HEADER = DynamicPropertyFactory
 			.getInstance().getBooleanProperty(ZuulConstants.ZUUL_INCLUDE_DEBUG_HEADER,
 					false);
@@ -53,6 +100,46 @@ public class SendResponseFilter extends ZuulFilter {
 			.getInstance().getBooleanProperty(ZuulConstants.ZUUL_SET_CONTENT_LENGTH,
 					false);
 
+	private final BasicCounter bytesSent = new BasicCounter(MonitorConfig.builder(
+			"bytesSent").build());
+
+	private final BasicCounter clientAborts = new BasicCounter(MonitorConfig.builder(
+			"clientAborts").build());
+
+	private final BasicCounter bytesSaved = new BasicCounter(MonitorConfig.builder(
+			"bytesSaved").build());
+
+	private final BasicTimer compressionTime = new BasicTimer(MonitorConfig.builder(
+			"compressionTime").build(), TimeUnit.MICROSECONDS);
+
+	private final ZuulProperties properties;
+
+	public SendResponseFilter() {
+		this(new ZuulProperties());
+	}
+
+	public SendResponseFilter(ZuulProperties properties) {
+		this.properties = properties;
+		Monitors.registerObject(NAME, this);
+	}
+
+	@PreDestroy
+	public void stop() {
+		Monitors.unregisterObject(NAME, this);
+	}
+
+	Number bytesSent() {
+		return this.bytesSent.getValue();
+	}
+
+	Number clientAborts() {
+		return this.clientAborts.getValue();
+	}
+
+	Number bytesSaved() {
+		return this.bytesSaved.getValue();
+	}
+
 	@Override
 	public String filterType() {
 		return "post";
@@ -73,8 +160,11 @@ public class SendResponseFilter extends ZuulFilter {
 	@Override
 	public Object run() {
 		try {
-			addResponseHeaders();
-			writeResponse();
+			RequestContext context = RequestContext.getCurrentContext();
+			boolean gzipAccepted = isGzipAccepted(context.getRequest());
+			boolean compress = shouldCompress(context, gzipAccepted);
+			addResponseHeaders(compress);
+			writeResponse(gzipAccepted, compress);
 		}
 		catch (Exception ex) {
 			ReflectionUtils.rethrowRuntimeException(ex);
@@ -82,7 +172,8 @@ public class SendResponseFilter extends ZuulFilter {
 		return null;
 	}
 
-	private void writeResponse() throws Exception {
+	private void writeResponse(boolean isGzipRequested, boolean compress)
+			throws Exception {
 		RequestContext context = RequestContext.getCurrentContext();
 		// there is no body to send
 		if (context.getResponseBody() == null && context.getResponseDataStream() == null) {
@@ -92,18 +183,13 @@ public class SendResponseFilter extends ZuulFilter {
 		servletResponse.setCharacterEncoding("UTF-8");
 		OutputStream outStream = servletResponse.getOutputStream();
 		InputStream is = null;
+		boolean completed = true;
 		try {
 			if (RequestContext.getCurrentContext().getResponseBody() != null) {
 				String body = RequestContext.getCurrentContext().getResponseBody();
-				writeResponse(new ByteArrayInputStream(body.getBytes()), outStream);
+				writeResponse(new ByteArrayInputStream(body.getBytes()), outStream, false);
 				return;
 			}
-			boolean isGzipRequested = false;
-			final String requestEncoding = context.getRequest().getHeader(
-					ZuulHeaders.ACCEPT_ENCODING);
-			if (requestEncoding != null && requestEncoding.equals("gzip")) {
-				isGzipRequested = true;
-			}
 			is = context.getResponseDataStream();
 			InputStream inputStream = is;
 			if (is != null) {
@@ -127,42 +213,216 @@ public class SendResponseFilter extends ZuulFilter {
 					else if (context.getResponseGZipped() && isGzipRequested) {
 						servletResponse.setHeader(ZuulHeaders.CONTENT_ENCODING, "gzip");
 					}
-					writeResponse(inputStream, outStream);
+					else if (compress) {
+						servletResponse.setHeader(ZuulHeaders.CONTENT_ENCODING, "gzip");
+						servletResponse.addHeader("Vary", "Accept-Encoding");
+						completed = writeCompressed(inputStream, outStream);
+						return;
+					}
+					completed = writeResponse(inputStream, outStream,
+							isStreaming(getContentType(context)));
 				}
 			}
 		}
 		finally {
 			try {
 				if (is != null) {
+					if (!completed) {
+						abort(is);
+					}
 					is.close();
 				}
-				outStream.flush();
-				outStream.close();
+				if (completed) {
+					outStream.flush();
+					outStream.close();
+				}
 			}
 			catch (IOException ex) {
 			}
 		}
 	}
 
-	private void writeResponse(InputStream zin, OutputStream out) throws Exception {
-		byte[] bytes = new byte[INITIAL_STREAM_BUFFER_SIZE.get()];
-		int bytesRead = -1;
+	private boolean writeCompressed(InputStream in, OutputStream out)
+			throws IOException {
+		PooledGzipOutputStream gzip = new PooledGzipOutputStream(out, GZIP_BUFFER_SIZE);
+		if (!writeResponse(in, gzip, false)) {
+			return false;
+		}
+		try {
+			gzip.finish();
+		}
+		catch (IOException ex) {
+			this.clientAborts.increment();
+			log.debug("Client disconnected, aborting response", ex);
+			return false;
+		}
+		this.compressionTime.record(gzip.getNanos(), TimeUnit.NANOSECONDS);
+		long saved = gzip.getBytesIn() - gzip.getBytesOut();
+		if (saved > 0) {
+			this.bytesSaved.increment(saved);
+		}
+		return true;
+	}
+
+	/**
+	 * Copy the body to the client.
+	 * @return false if the client went away before the body was complete
+	 */
+	private boolean writeResponse(InputStream zin, OutputStream out, boolean streaming)
+			throws IOException {
+		byte[] bytes = getBuffer();
+		int bytesRead;
 		while ((bytesRead = zin.read(bytes)) != -1) {
 			try {
 				out.write(bytes, 0, bytesRead);
-				out.flush();
+				// streams are flushed as they arrive, other bodies when the origin
+				// would block (and at the end)
+				if (streaming || zin.available() == 0) {
+					out.flush();
+				}
 			}
 			catch (IOException ex) {
-				// ignore
+				this.clientAborts.increment();
+				log.debug("Client disconnected, aborting response", ex);
+				return false;
 			}
-			// doubles buffer size if previous read filled it
-			if (bytesRead == bytes.length) {
-				bytes = new byte[bytes.length * 2];
+			this.bytesSent.increment(bytesRead);
+			if (bytesRead == bytes.length && bytes.length < MAX_STREAM_BUFFER_SIZE) {
+				bytes = new byte[Math.min(bytes.length * 2, MAX_STREAM_BUFFER_SIZE)];
+				BUFFERS.set(bytes);
 			}
 		}
+		return true;
+	}
+
+	private byte[] getBuffer() {
+		byte[] bytes = BUFFERS.get();
+		int size = Math.min(INITIAL_STREAM_BUFFER_SIZE.get(), MAX_STREAM_BUFFER_SIZE);
+		if (bytes == null || bytes.length < size) {
+			bytes = new byte[size];
+			BUFFERS.set(bytes);
+		}
+		return bytes;
+	}
+
+	private String getContentType(RequestContext context) {
+		String contentType = null;
+		for (Pair<String, String> header : context.getZuulResponseHeaders()) {
+			if ("content-type".equalsIgnoreCase(header.first())) {
+				contentType = header.second();
+			}
+		}
+		if (contentType == null) {
+			contentType = context.getResponse().getContentType();
+		}
+		return contentType;
+	}
+
+	private boolean isStreaming(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		for (String type : STREAMING_CONTENT_TYPES) {
+			if (isType(contentType, type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isType(String contentType, String type) {
+		// ignores parameters, like the charset
+		return contentType.regionMatches(true, 0, type, 0, type.length())
+				&& (contentType.length() == type.length()
+						|| contentType.charAt(type.length()) == ';' || contentType
+						.charAt(type.length()) == ' ');
+	}
+
+	/**
+	 * Check if the client accepts gzip content coding, according to the quality values
+	 * of its <code>Accept-Encoding</code> headers.
+	 */
+	static boolean isGzipAccepted(HttpServletRequest request) {
+		Enumeration<String> headers = request.getHeaders(ZuulHeaders.ACCEPT_ENCODING);
+		float gzip = -1;
+		float any = -1;
+		while (headers != null && headers.hasMoreElements()) {
+			for (String token : StringUtils.commaDelimitedListToStringArray(headers
+					.nextElement())) {
+				String[] parts = token.split(";");
+				String coding = parts[0].trim();
+				float quality = 1;
+				for (int i = 1; i < parts.length; i++) {
+					String param = parts[i].trim();
+					if (param.startsWith("q=") || param.startsWith("Q=")) {
+						try {
+							quality = Float.parseFloat(param.substring(2).trim());
+						}
+						catch (NumberFormatException ex) {
+							quality = 0;
+						}
+					}
+				}
+				if ("gzip".equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding)) {
+					gzip = Math.max(gzip, quality);
+				}
+				else if ("*".equals(coding)) {
+					any = quality;
+				}
+			}
+		}
+		// an explicit gzip wins over the wildcard
+		return gzip >= 0 ? gzip > 0 : any > 0;
+	}
+
+	private boolean shouldCompress(RequestContext context, boolean gzipAccepted) {
+		if (!gzipAccepted || context.getResponseGZipped()
+				|| context.getResponseDataStream() == null || !context.sendZuulResponse()
+				|| "HEAD".equalsIgnoreCase(context.getRequest().getMethod())) {
+			return false;
+		}
+		Compression compression = this.properties.getCompression();
+		Object routeId = context.get("proxy");
+		ZuulRoute route = routeId == null ? null : this.properties.findRoute(routeId
+				.toString());
+		boolean enabled = route != null && route.getCompress() != null ? route
+				.getCompress() : compression.isEnabled();
+		if (!enabled) {
+			return false;
+		}
+		Integer length = context.getOriginContentLength();
+		if (length != null && length < compression.getMinResponseSize()) {
+			return false;
+		}
+		for (Pair<String, String> header : context.getOriginResponseHeaders()) {
+			if (ZuulHeaders.CONTENT_ENCODING.equalsIgnoreCase(header.first())) {
+				// already encoded some other way
+				return false;
+			}
+		}
+		String contentType = getContentType(context);
+		if (contentType == null || isStreaming(contentType)) {
+			return false;
+		}
+		for (String type : compression.getMimeTypes()) {
+			if (isType(contentType, type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Drop the connection to the origin instead of reading the rest of the body (which
+	 * is what closing the stream of a pooled connection would do).
+	 */
+	private void abort(InputStream is) throws IOException {
+		if (HTTP_CLIENT_PRESENT && is instanceof ConnectionReleaseTrigger) {
+			((ConnectionReleaseTrigger) is).abortConnection();
+		}
 	}
 
-	private void addResponseHeaders() {
+	private void addResponseHeaders(boolean compress) {
 		RequestContext context = RequestContext.getCurrentContext();
 		HttpServletResponse servletResponse = context.getResponse();
 		List<Pair<String, String>> zuulResponseHeaders = context.getZuulResponseHeaders();
@@ -187,7 +447,7 @@ public class SendResponseFilter extends ZuulFilter {
 		Integer contentLength = ctx.getOriginContentLength();
 		// Only inserts Content-Length if origin provides it and origin response is not
 		// gzipped
-		if (SET_CONTENT_LENGTH.get()) {
+		if (SET_CONTENT_LENGTH.get() && !compress) {
 			if (contentLength != null && !ctx.getResponseGZipped()) {
 				servletResponse.setContentLength(contentLength);
 			}
@@ -65,7 +65,7 @@ public class PreDecorationFilter extends ZuulFilter {
 		RequestContext ctx = RequestContext.getCurrentContext();
 		final String requestURI = this.urlPathHelper.getPathWithinApplication(ctx
 				.getRequest());
-		ProxyRouteSpec route = this.routeLocator.getMatchingRoute(requestURI);
+		ProxyRouteSpec route = getMatchingRoute(ctx, requestURI);
 		if (route != null) {
 			String location = route.getLocation();
 			if (location != null) {
@@ -75,6 +75,9 @@ public class PreDecorationFilter extends ZuulFilter {
 				if (route.getRetryable() != null) {
 					ctx.put("retryable", route.getRetryable());
 				}
+				if (route.isAsync()) {
+					ctx.put("async", true);
+				}
 
 				if (location.startsWith("http:") || location.startsWith("https:")) {
 					ctx.setRouteHost(getUrl(location));
@@ -104,6 +107,16 @@ public class PreDecorationFilter extends ZuulFilter {
 		return null;
 	}
 
+	private ProxyRouteSpec getMatchingRoute(RequestContext ctx, String requestURI) {
+		Object route = ctx.getRequest().getAttribute(
+				ProxyRouteLocator.MATCHING_ROUTE_ATTRIBUTE);
+		if (route instanceof ProxyRouteSpec) {
+			// already resolved by the ZuulHandlerMapping
+			return (ProxyRouteSpec) route;
+		}
+		return this.routeLocator.getMatchingRoute(requestURI);
+	}
+
 	private URL getUrl(String target) {
 		try {
 			return new URL(target);
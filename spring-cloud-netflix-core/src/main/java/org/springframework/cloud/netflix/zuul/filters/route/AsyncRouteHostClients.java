@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.route;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.RedirectStrategy;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.route.RouteHostClients.PoolSettings;
+
+import com.netflix.servo.annotations.DataSourceType;
+import com.netflix.servo.annotations.Monitor;
+import com.netflix.servo.monitor.Monitors;
+
+/**
+ * Non-blocking HTTP client for the routes with a url that are flagged as
+ * <code>async</code>. All the async routes share one I/O reactor and connection
+ * manager, and each backend host gets the pool size of the first route that uses it.
+ * The number of requests in flight and the pool statistics are registered with Servo as
+ * <code>ZuulAsyncHost</code>.
+ *
+ * @author Dave Syer
+ */
+@CommonsLog
+public class AsyncRouteHostClients {
+
+	private static final String NAME = "ZuulAsyncHost";
+
+	private final ConcurrentMap<String, HttpRoute> routes = new ConcurrentHashMap<>();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final ZuulProperties properties;
+
+	private final PoolingNHttpClientConnectionManager connectionManager;
+
+	private final CloseableHttpAsyncClient client;
+
+	public AsyncRouteHostClients(ZuulProperties properties) {
+		this.properties = properties;
+		Registry<SchemeIOSessionStrategy> registry = RegistryBuilder
+				.<SchemeIOSessionStrategy> create()
+				.register("http", NoopIOSessionStrategy.INSTANCE)
+				.register(
+						"https",
+						new SSLIOSessionStrategy(RouteHostClients.newSslContext(),
+								NoopHostnameVerifier.INSTANCE)).build();
+		try {
+			this.connectionManager = new PoolingNHttpClientConnectionManager(
+					new DefaultConnectingIOReactor(), registry);
+		}
+		catch (IOReactorException ex) {
+			throw new IllegalStateException("Cannot create I/O reactor", ex);
+		}
+		// the limits that matter are per backend
+		this.connectionManager.setMaxTotal(Integer.MAX_VALUE);
+		this.connectionManager.setDefaultMaxPerRoute(properties.getHost()
+				.getMaxConnections());
+		this.client = HttpAsyncClients
+				.custom()
+				.setConnectionManager(this.connectionManager)
+				.setDefaultRequestConfig(
+						RequestConfig.custom().setCookieSpec(CookieSpecs.IGNORE_COOKIES)
+								.build()).setRedirectStrategy(new RedirectStrategy() {
+					@Override
+					public boolean isRedirected(HttpRequest request,
+							HttpResponse response, HttpContext context) {
+						return false;
+					}
+
+					@Override
+					public HttpUriRequest getRedirect(HttpRequest request,
+							HttpResponse response, HttpContext context) {
+						return null;
+					}
+				}).build();
+		this.client.start();
+		Monitors.registerObject(NAME, this);
+	}
+
+	/**
+	 * Send a request without waiting for the response. The response (complete, in
+	 * memory) is passed to the callback on an I/O thread, so the callback should hand
+	 * it over to another thread rather than do any blocking work itself.
+	 * @param routeId the route id (used to size the pool for the host)
+	 * @param host the target host
+	 * @param request the request to send
+	 * @param context the context of the request (e.g. with its timeouts)
+	 * @param callback the callback for the response
+	 * @return the future of the response (e.g. to cancel the request)
+	 */
+	public Future<HttpResponse> execute(String routeId, HttpHost host,
+			HttpRequest request, HttpClientContext context,
+			final FutureCallback<HttpResponse> callback) {
+		configure(routeId, host);
+		this.inFlight.incrementAndGet();
+		return this.client.execute(host, request, context, new FutureCallback<HttpResponse>() {
+
+			@Override
+			public void completed(HttpResponse result) {
+				AsyncRouteHostClients.this.inFlight.decrementAndGet();
+				callback.completed(result);
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				AsyncRouteHostClients.this.inFlight.decrementAndGet();
+				callback.failed(ex);
+			}
+
+			@Override
+			public void cancelled() {
+				AsyncRouteHostClients.this.inFlight.decrementAndGet();
+				callback.cancelled();
+			}
+
+		});
+	}
+
+	/**
+	 * Close expired connections, and connections that have been idle for longer than
+	 * <code>zuul.host.idleTimeout</code>. Should be called periodically.
+	 */
+	public void evictConnections() {
+		this.connectionManager.closeExpiredConnections();
+		long idleTimeout = this.properties.getHost().getIdleTimeout();
+		if (idleTimeout >= 0) {
+			this.connectionManager.closeIdleConnections(idleTimeout,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void close() {
+		Monitors.unregisterObject(NAME, this);
+		try {
+			this.client.close();
+		}
+		catch (IOException ex) {
+			log.error("error closing async client", ex);
+		}
+	}
+
+	@Monitor(name = "inFlight", type = DataSourceType.GAUGE)
+	public int getInFlight() {
+		return this.inFlight.get();
+	}
+
+	@Monitor(name = "leased", type = DataSourceType.GAUGE)
+	public int getLeased() {
+		return this.connectionManager.getTotalStats().getLeased();
+	}
+
+	@Monitor(name = "pending", type = DataSourceType.GAUGE)
+	public int getPending() {
+		return this.connectionManager.getTotalStats().getPending();
+	}
+
+	@Monitor(name = "available", type = DataSourceType.GAUGE)
+	public int getAvailable() {
+		return this.connectionManager.getTotalStats().getAvailable();
+	}
+
+	private void configure(String routeId, HttpHost host) {
+		if (this.routes.containsKey(routeId)) {
+			return;
+		}
+		boolean secure = "https".equalsIgnoreCase(host.getSchemeName());
+		int port = host.getPort() > 0 ? host.getPort() : (secure ? 443 : 80);
+		HttpRoute route = new HttpRoute(new HttpHost(host.getHostName(), port,
+				host.getSchemeName()), null, secure);
+		if (this.routes.putIfAbsent(routeId, route) == null) {
+			this.connectionManager.setMaxPerRoute(route, new PoolSettings(
+					this.properties, routeId).maxConnections);
+		}
+	}
+
+}
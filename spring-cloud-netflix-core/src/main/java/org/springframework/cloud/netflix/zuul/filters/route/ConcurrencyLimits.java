@@ -0,0 +1,255 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.route;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.Concurrency;
+
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
+
+/**
+ * Adaptive limits on the concurrent requests to each service, used when
+ * <code>zuul.concurrency.adaptive</code> is set. The limit of a service follows the
+ * gradient between its lowest and its current response times: it grows while the
+ * response times stay close to the lowest one (plus a margin of the square root of the
+ * limit, for the requests that queue), shrinks when they go up, and is cut by 10% when a
+ * request fails or times out. Requests over the limit are rejected straight away. The
+ * estimate of each service is an immutable state swapped with a compare-and-set, so
+ * releasing a permit never takes a lock. The limit, the requests in flight and the
+ * rejections of each service are registered with Servo as
+ * <code>ZuulConcurrency_{service}</code>.
+ *
+ * @author Dave Syer
+ */
+class ConcurrencyLimits {
+
+	private final ConcurrentMap<String, ConcurrencyLimit> limits = new ConcurrentHashMap<>();
+
+	private final ZuulProperties properties;
+
+	ConcurrencyLimits(ZuulProperties properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * @param serviceId the service id
+	 * @return a permit to call the service (to release when the call is over), or null
+	 * if the service already has as many requests in flight as its limit
+	 */
+	Permit acquire(String serviceId) {
+		if (!this.properties.getConcurrency().isAdaptive()) {
+			return Permit.NONE;
+		}
+		ConcurrencyLimit limit = getLimit(serviceId);
+		return limit.tryAcquire() ? new Permit(limit) : null;
+	}
+
+	ConcurrencyLimit getLimit(String serviceId) {
+		ConcurrencyLimit limit = this.limits.get(serviceId);
+		if (limit == null) {
+			limit = new ConcurrencyLimit(this.properties.getConcurrency());
+			ConcurrencyLimit existing = this.limits.putIfAbsent(serviceId, limit);
+			if (existing != null) {
+				limit = existing;
+			}
+			else {
+				Monitors.registerObject("ZuulConcurrency_" + serviceId, limit);
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Unregister the metrics.
+	 */
+	void stop() {
+		for (String serviceId : this.limits.keySet()) {
+			ConcurrencyLimit limit = this.limits.remove(serviceId);
+			if (limit != null) {
+				Monitors.unregisterObject("ZuulConcurrency_" + serviceId, limit);
+			}
+		}
+	}
+
+	/**
+	 * Permission to send one request to a service.
+	 */
+	static class Permit {
+
+		static final Permit NONE = new Permit(null);
+
+		private final ConcurrencyLimit limit;
+
+		private final long start = System.nanoTime();
+
+		private final int inFlight;
+
+		Permit(ConcurrencyLimit limit) {
+			this.limit = limit;
+			this.inFlight = limit == null ? 0 : limit.getInFlight();
+		}
+
+		/**
+		 * Release the permit.
+		 * @param dropped true if the request failed or timed out
+		 */
+		void release(boolean dropped) {
+			if (this.limit != null) {
+				this.limit.release(System.nanoTime() - this.start, this.inFlight, dropped);
+			}
+		}
+
+	}
+
+	static class ConcurrencyLimit {
+
+		private static final double BACKOFF = 0.9;
+
+		private static final int MIN_RTT_SAMPLES = 1000;
+
+		private final Concurrency settings;
+
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		private final AtomicReference<State> state;
+
+		final BasicCounter rejections = new BasicCounter(MonitorConfig.builder(
+				"rejections").build());
+
+		final BasicGauge<Integer> limitGauge = new BasicGauge<>(MonitorConfig.builder(
+				"limit").build(), new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return getLimit();
+			}
+		});
+
+		final BasicGauge<Integer> inFlightGauge = new BasicGauge<>(MonitorConfig
+				.builder("inFlight").build(), new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return getInFlight();
+			}
+		});
+
+		ConcurrencyLimit(Concurrency settings) {
+			this.settings = settings;
+			double estimate = clamp(settings.getInitialLimit());
+			this.state = new AtomicReference<>(new State(Long.MAX_VALUE, 0, estimate,
+					clamp((int) estimate)));
+		}
+
+		int getLimit() {
+			return this.state.get().limit;
+		}
+
+		int getInFlight() {
+			return this.inFlight.get();
+		}
+
+		boolean tryAcquire() {
+			while (true) {
+				int current = this.inFlight.get();
+				if (current >= getLimit()) {
+					this.rejections.increment();
+					return false;
+				}
+				if (this.inFlight.compareAndSet(current, current + 1)) {
+					return true;
+				}
+			}
+		}
+
+		void release(long rtt, int inFlight, boolean dropped) {
+			this.inFlight.decrementAndGet();
+			while (true) {
+				State current = this.state.get();
+				State next = dropped ? backOff(current) : sample(current, rtt, inFlight);
+				if (this.state.compareAndSet(current, next)) {
+					return;
+				}
+			}
+		}
+
+		private State backOff(State current) {
+			double estimate = Math.max(this.settings.getMinLimit(), current.estimate
+					* BACKOFF);
+			return new State(current.minRtt, current.samples, estimate,
+					clamp((int) estimate));
+		}
+
+		private State sample(State current, long rtt, int inFlight) {
+			long minRtt = current.minRtt;
+			int samples = current.samples + 1;
+			if (samples > MIN_RTT_SAMPLES) {
+				// probe again, in case the service got slower for good
+				samples = 0;
+				minRtt = rtt;
+			}
+			minRtt = Math.min(minRtt, Math.max(rtt, 1));
+			double gradient = Math.max(0.5, Math.min(1.0, (double) minRtt / rtt));
+			double next = current.estimate * gradient + Math.sqrt(current.estimate);
+			if (inFlight < current.estimate / 2) {
+				// the limit was not used, so the samples say nothing about a higher one
+				next = Math.min(next, current.estimate);
+			}
+			double smoothing = this.settings.getSmoothing();
+			double estimate = Math.max(this.settings.getMinLimit(), Math.min(
+					this.settings.getMaxLimit(), current.estimate * (1 - smoothing)
+							+ next * smoothing));
+			return new State(minRtt, samples, estimate, clamp((int) estimate));
+		}
+
+		private int clamp(int limit) {
+			return Math.max(this.settings.getMinLimit(),
+					Math.min(this.settings.getMaxLimit(), limit));
+		}
+
+	}
+
+	/**
+	 * The estimate of a limit, replaced as a whole when a request is released.
+	 */
+	private static final class State {
+
+		private final long minRtt;
+
+		private final int samples;
+
+		private final double estimate;
+
+		private final int limit;
+
+		private State(long minRtt, int samples, double estimate, int limit) {
+			this.minRtt = minRtt;
+			this.samples = samples;
+			this.estimate = estimate;
+			this.limit = limit;
+		}
+
+	}
+
+}
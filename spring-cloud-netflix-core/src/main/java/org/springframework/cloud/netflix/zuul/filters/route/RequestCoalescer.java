@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.route;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.springframework.cloud.netflix.zuul.filters.BufferedBody;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.util.MultiValueMap;
+
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
+
+/**
+ * Single-flight calls for the routes flagged with <code>coalesce</code>: while a call
+ * to the service is in flight, identical GET and HEAD requests wait for it and share
+ * its buffered response instead of calling the service themselves. Responses larger
+ * than <code>zuul.coalescing.maxResponseSize</code> are not shared, and the waiting
+ * requests make their own calls. The calls made and saved are registered with Servo as
+ * <code>ZuulCoalescing</code>.
+ *
+ * @author Dave Syer
+ */
+class RequestCoalescer {
+
+	private final ConcurrentMap<String, FutureTask<SharedResponse>> calls = new ConcurrentHashMap<>();
+
+	private final ZuulProperties properties;
+
+	final BasicCounter upstreamCalls = new BasicCounter(MonitorConfig.builder(
+			"upstreamCalls").build());
+
+	final BasicCounter coalesced = new BasicCounter(MonitorConfig.builder("coalesced")
+			.build());
+
+	final BasicCounter bypassed = new BasicCounter(MonitorConfig.builder("bypassed")
+			.build());
+
+	RequestCoalescer(ZuulProperties properties) {
+		this.properties = properties;
+		Monitors.registerObject("ZuulCoalescing", this);
+	}
+
+	/**
+	 * @param routeId the route id (may be null)
+	 * @param method the request method
+	 * @return true if the request may share a call with identical ones
+	 */
+	boolean isCoalescing(Object routeId, String method) {
+		if (routeId == null || !("GET".equals(method) || "HEAD".equals(method))) {
+			return false;
+		}
+		ZuulRoute route = this.properties.findRoute(routeId.toString());
+		return route != null && route.isCoalesce();
+	}
+
+	/**
+	 * @return a key that is the same for the requests that can share a call
+	 */
+	String getKey(String serviceId, String method, String uri, String query,
+			MultiValueMap<String, String> headers) {
+		StringBuilder key = new StringBuilder(serviceId).append(' ').append(method)
+				.append(' ').append(uri).append(query);
+		for (String name : this.properties.getCoalescing().getHeaders()) {
+			List<String> values = getHeader(headers, name);
+			key.append('\n').append(name).append(':');
+			if (values != null) {
+				key.append(values);
+			}
+		}
+		return key.toString();
+	}
+
+	int getMaxResponseSize() {
+		return this.properties.getCoalescing().getMaxResponseSize();
+	}
+
+	/**
+	 * Make the call, or wait for an identical one that is already in flight.
+	 * @param key the key of the request
+	 * @param call the call to the service
+	 * @return the response, or null if the response of the call in flight cannot be
+	 * shared and the caller has to call the service itself
+	 * @throws Exception if the call fails
+	 */
+	SharedResponse execute(String key, Callable<SharedResponse> call) throws Exception {
+		FutureTask<SharedResponse> task = new FutureTask<>(call);
+		FutureTask<SharedResponse> existing = this.calls.putIfAbsent(key, task);
+		if (existing == null) {
+			this.upstreamCalls.increment();
+			try {
+				task.run();
+			}
+			finally {
+				this.calls.remove(key, task);
+			}
+			return get(task);
+		}
+		SharedResponse response = get(existing);
+		if (!response.isShared()) {
+			this.bypassed.increment();
+			return null;
+		}
+		this.coalesced.increment();
+		return response;
+	}
+
+	/**
+	 * Unregister the metrics.
+	 */
+	void stop() {
+		Monitors.unregisterObject("ZuulCoalescing", this);
+	}
+
+	private SharedResponse get(FutureTask<SharedResponse> task) throws Exception {
+		try {
+			return task.get();
+		}
+		catch (ExecutionException ex) {
+			if (ex.getCause() instanceof Exception) {
+				throw (Exception) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	private List<String> getHeader(MultiValueMap<String, String> headers, String name) {
+		for (String key : headers.keySet()) {
+			if (key.equalsIgnoreCase(name)) {
+				return headers.get(key);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Read the body of a response, up to the given limit.
+	 * @param input the body (may be null)
+	 * @param limit the maximum number of bytes to buffer
+	 * @return the response, not shared if the body is larger than the limit
+	 */
+	static SharedResponse buffer(int status, MultiValueMap<String, String> headers,
+			InputStream input, int limit) throws IOException {
+		return new SharedResponse(status, headers, input == null ? null
+				: BufferedBody.read(input, limit));
+	}
+
+	/**
+	 * A response from the service, buffered so that it can be sent to several clients.
+	 */
+	static class SharedResponse {
+
+		private final int status;
+
+		private final MultiValueMap<String, String> headers;
+
+		private final BufferedBody body;
+
+		SharedResponse(int status, MultiValueMap<String, String> headers,
+				BufferedBody body) {
+			this.status = status;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		int getStatus() {
+			return this.status;
+		}
+
+		MultiValueMap<String, String> getHeaders() {
+			return this.headers;
+		}
+
+		/**
+		 * @return false if the body was too large to buffer (so only the caller that
+		 * made the call can read it)
+		 */
+		boolean isShared() {
+			return this.body == null || this.body.isComplete();
+		}
+
+		/**
+		 * @return a new stream over the body, or null if there is none
+		 */
+		InputStream getBody() {
+			return this.body == null ? null : this.body.getInputStream();
+		}
+
+	}
+
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.route;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.Hedging;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import rx.Observable;
+
+import com.netflix.client.ClientException;
+import com.netflix.client.RequestSpecificRetryHandler;
+import com.netflix.client.http.HttpRequest;
+import com.netflix.client.http.HttpResponse;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.reactive.LoadBalancerCommand;
+import com.netflix.loadbalancer.reactive.ServerOperation;
+import com.netflix.niws.client.http.RestClient;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
+
+/**
+ * Hedged requests for the routes flagged with <code>hedge</code>: if the instance chosen
+ * by the load balancer has not answered a GET or HEAD request after a delay, the same
+ * request is sent to another instance, and the first response wins. The other one is
+ * closed as soon as it arrives, to release its connection. The delay is
+ * <code>zuul.hedging.delay</code>, or a percentile of the recent response times of the
+ * service, and the hedged requests are limited to <code>zuul.hedging.budgetPercent</code>
+ * of the requests. Each attempt is retried on its own instance like any other Ribbon
+ * request, and a failed attempt is retried on another instance, within the retry budget
+ * of the client. The attempts run on at most <code>zuul.hedging.maxThreads</code>
+ * threads, and a request is not hedged when they are all busy. The hedge and win rates
+ * of each service are registered with Servo as <code>ZuulHedge_{service}</code>.
+ *
+ * @author Dave Syer
+ */
+class RequestHedger {
+
+	private static final int MAX_ATTEMPTS_TO_CHOOSE = 3;
+
+	private final ConcurrentMap<String, HedgeStats> stats = new ConcurrentHashMap<>();
+
+	private final ZuulProperties properties;
+
+	private final ThreadPoolExecutor executor;
+
+	RequestHedger(ZuulProperties properties) {
+		this.properties = properties;
+		CustomizableThreadFactory threads = new CustomizableThreadFactory("zuul-hedge-");
+		threads.setDaemon(true);
+		// no queue, so that a request that cannot get a thread is sent without hedging
+		this.executor = new ThreadPoolExecutor(0, Math.max(1, properties.getHedging()
+				.getMaxThreads()), 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), threads);
+	}
+
+	/**
+	 * @param routeId the route id (may be null)
+	 * @param method the request method
+	 * @return true if the request may be hedged
+	 */
+	boolean isHedging(Object routeId, String method) {
+		if (routeId == null || !("GET".equals(method) || "HEAD".equals(method))) {
+			return false;
+		}
+		ZuulRoute route = this.properties.findRoute(routeId.toString());
+		return route != null && route.isHedge();
+	}
+
+	/**
+	 * Send a request to the service, and again to another instance if the first one is
+	 * slow.
+	 * @param serviceId the service id
+	 * @param client the client for the service
+	 * @param request the request (with a URI relative to the service)
+	 * @return the first response
+	 * @throws Exception if all the attempts fail
+	 */
+	HttpResponse execute(String serviceId, RestClient client, HttpRequest request)
+			throws Exception {
+		HedgeStats stats = getStats(serviceId);
+		stats.requests.increment();
+		stats.deposit(this.properties.getHedging().getBudgetPercent());
+		long delay = getDelay(stats);
+		if (delay < 0) {
+			// not enough samples to know what slow is yet
+			return executeWithLoadBalancer(client, request, stats);
+		}
+		RequestSpecificRetryHandler handler = client.getRequestSpecificRetryHandler(
+				request, null);
+		Attempts attempts = new Attempts(client, request, handler, stats);
+		if (attempts.submit(false) == null) {
+			// all the threads are busy
+			return executeWithLoadBalancer(client, request, stats);
+		}
+		long deadline = System.currentTimeMillis() + delay;
+		Future<HttpResponse> hedge = null;
+		boolean hedged = false;
+		int pending = 1;
+		int retries = 0;
+		Exception failure = null;
+		try {
+			while (pending > 0) {
+				Future<HttpResponse> done;
+				if (!hedged) {
+					done = attempts.completion.poll(
+							Math.max(0, deadline - System.currentTimeMillis()),
+							TimeUnit.MILLISECONDS);
+					if (done == null) {
+						// the request is slow
+						hedged = true;
+						if (stats.withdraw()) {
+							hedge = attempts.submit(true);
+						}
+						if (hedge != null) {
+							stats.hedges.increment();
+							pending++;
+						}
+						continue;
+					}
+				}
+				else {
+					done = attempts.completion.take();
+				}
+				pending--;
+				try {
+					HttpResponse response = done.get();
+					if (done == hedge) {
+						stats.wins.increment();
+					}
+					return response;
+				}
+				catch (ExecutionException ex) {
+					failure = ex.getCause() instanceof Exception ? (Exception) ex
+							.getCause() : ex;
+				}
+				if (retries < handler.getMaxRetriesOnNextServer()
+						&& isRetriable(handler, failure)
+						&& attempts.submit(false) != null) {
+					retries++;
+					pending++;
+				}
+			}
+		}
+		finally {
+			// a response that arrives later is closed by its attempt
+			attempts.cancel();
+		}
+		throw failure;
+	}
+
+	/**
+	 * Shut down the threads of the hedged requests and unregister the metrics.
+	 */
+	void stop() {
+		this.executor.shutdownNow();
+		for (String serviceId : this.stats.keySet()) {
+			HedgeStats stats = this.stats.remove(serviceId);
+			if (stats != null) {
+				Monitors.unregisterObject("ZuulHedge_" + serviceId, stats);
+			}
+		}
+	}
+
+	HedgeStats getStats(String serviceId) {
+		HedgeStats stats = this.stats.get(serviceId);
+		if (stats == null) {
+			stats = new HedgeStats();
+			HedgeStats existing = this.stats.putIfAbsent(serviceId, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+			else {
+				Monitors.registerObject("ZuulHedge_" + serviceId, stats);
+			}
+		}
+		return stats;
+	}
+
+	private long getDelay(HedgeStats stats) {
+		Hedging hedging = this.properties.getHedging();
+		if (hedging.getDelay() > 0) {
+			return hedging.getDelay();
+		}
+		return stats.getPercentile(hedging.getPercentile());
+	}
+
+	private HttpResponse executeWithLoadBalancer(RestClient client, HttpRequest request,
+			HedgeStats stats) throws Exception {
+		long start = System.currentTimeMillis();
+		HttpResponse response = client.executeWithLoadBalancer(request);
+		stats.record(System.currentTimeMillis() - start);
+		return response;
+	}
+
+	private boolean isRetriable(RequestSpecificRetryHandler handler, Exception failure) {
+		// the load balancer command wraps the error of the last try
+		Throwable cause = failure instanceof ClientException
+				&& failure.getCause() != null ? failure.getCause() : failure;
+		return handler.isRetriableException(cause, false);
+	}
+
+	/**
+	 * The attempts of one request, each on a different instance.
+	 */
+	private class Attempts {
+
+		private final RestClient client;
+
+		private final HttpRequest request;
+
+		private final RequestSpecificRetryHandler handler;
+
+		private final HedgeStats stats;
+
+		private final AtomicBoolean decided = new AtomicBoolean();
+
+		private final List<Server> servers = new ArrayList<>();
+
+		private final List<Future<HttpResponse>> futures = new ArrayList<>();
+
+		private final CompletionService<HttpResponse> completion = new ExecutorCompletionService<>(
+				RequestHedger.this.executor);
+
+		Attempts(RestClient client, HttpRequest request,
+				RequestSpecificRetryHandler handler, HedgeStats stats) {
+			this.client = client;
+			this.request = request;
+			this.handler = handler;
+			this.stats = stats;
+		}
+
+		/**
+		 * Send the request to an instance that has not been tried yet.
+		 * @param hedge true if this is a hedged attempt
+		 * @return the future response, or null if there is no other instance or thread
+		 */
+		Future<HttpResponse> submit(boolean hedge) throws ClientException {
+			Server server = null;
+			for (int i = 0; i < MAX_ATTEMPTS_TO_CHOOSE && server == null; i++) {
+				Server candidate = this.client.getServerFromLoadBalancer(
+						this.request.getUri(), this.request.getLoadBalancerKey());
+				if (candidate != null && !this.servers.contains(candidate)) {
+					server = candidate;
+				}
+			}
+			if (server == null) {
+				return null;
+			}
+			try {
+				Future<HttpResponse> future = this.completion.submit(new Attempt(this,
+						server, hedge));
+				this.servers.add(server);
+				this.futures.add(future);
+				return future;
+			}
+			catch (RejectedExecutionException ex) {
+				return null;
+			}
+		}
+
+		void cancel() {
+			this.decided.set(true);
+			for (Future<HttpResponse> future : this.futures) {
+				future.cancel(true);
+			}
+		}
+
+	}
+
+	/**
+	 * A request to one instance of the service, retried on the same instance by the
+	 * Ribbon load balancer command (like a request that is not hedged).
+	 */
+	private static class Attempt implements Callable<HttpResponse>,
+			ServerOperation<HttpResponse> {
+
+		private final Attempts attempts;
+
+		private final Server server;
+
+		private final boolean hedge;
+
+		Attempt(Attempts attempts, Server server, boolean hedge) {
+			this.attempts = attempts;
+			this.server = server;
+			this.hedge = hedge;
+		}
+
+		@Override
+		public HttpResponse call() throws Exception {
+			final RestClient client = this.attempts.client;
+			LoadBalancerCommand<HttpResponse> command = LoadBalancerCommand
+					.<HttpResponse> builder().withLoadBalancerContext(client)
+					.withRetryHandler(this.attempts.handler)
+					.withLoadBalancerURI(this.attempts.request.getUri())
+					.withServer(this.server).build();
+			long start = System.currentTimeMillis();
+			HttpResponse response;
+			try {
+				response = command.submit(this).toBlocking().single();
+			}
+			catch (Exception ex) {
+				// the same as AbstractLoadBalancerAwareClient.executeWithLoadBalancer()
+				if (ex.getCause() instanceof ClientException) {
+					throw (ClientException) ex.getCause();
+				}
+				throw new ClientException(ex);
+			}
+			if (!this.hedge) {
+				this.attempts.stats.record(System.currentTimeMillis() - start);
+			}
+			if (!this.attempts.decided.compareAndSet(false, true)) {
+				// the other attempt won
+				response.close();
+				throw new IllegalStateException("Request was hedged");
+			}
+			return response;
+		}
+
+		@Override
+		public Observable<HttpResponse> call(Server server) {
+			RestClient client = this.attempts.client;
+			HttpRequest request = this.attempts.request;
+			URI uri = client.reconstructURIWithServer(server, request.getUri());
+			try {
+				return Observable.just(client.execute(request.replaceUri(uri), null));
+			}
+			catch (Exception ex) {
+				return Observable.error(ex);
+			}
+		}
+
+	}
+
+	static class HedgeStats {
+
+		private static final int SAMPLES = 100;
+
+		private static final int MIN_SAMPLES = 20;
+
+		private static final double MAX_BUDGET = 10;
+
+		final BasicCounter requests = new BasicCounter(MonitorConfig.builder(
+				"requests").build());
+
+		final BasicCounter hedges = new BasicCounter(MonitorConfig.builder("hedges")
+				.build());
+
+		final BasicCounter wins = new BasicCounter(MonitorConfig.builder("wins")
+				.build());
+
+		final BasicGauge<Double> hedgeRate = new BasicGauge<>(MonitorConfig.builder(
+				"hedgeRate").build(), new Callable<Double>() {
+			@Override
+			public Double call() {
+				return ratio(HedgeStats.this.hedges, HedgeStats.this.requests);
+			}
+		});
+
+		final BasicGauge<Double> winRate = new BasicGauge<>(MonitorConfig.builder(
+				"winRate").build(), new Callable<Double>() {
+			@Override
+			public Double call() {
+				return ratio(HedgeStats.this.wins, HedgeStats.this.hedges);
+			}
+		});
+
+		private final long[] samples = new long[SAMPLES];
+
+		private int count;
+
+		private double budget;
+
+		synchronized void record(long millis) {
+			this.samples[this.count % SAMPLES] = millis;
+			this.count++;
+		}
+
+		/**
+		 * @return the percentile of the recent response times, or -1 if there are not
+		 * enough of them
+		 */
+		synchronized long getPercentile(int percentile) {
+			if (this.count < MIN_SAMPLES) {
+				return -1;
+			}
+			long[] sorted = Arrays.copyOf(this.samples, Math.min(this.count, SAMPLES));
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+		}
+
+		synchronized void deposit(int percent) {
+			this.budget = Math.min(MAX_BUDGET, this.budget + percent / 100.0);
+		}
+
+		synchronized boolean withdraw() {
+			if (this.budget < 1) {
+				return false;
+			}
+			this.budget--;
+			return true;
+		}
+
+		private static double ratio(BasicCounter count, BasicCounter total) {
+			long value = total.getValue().longValue();
+			return value == 0 ? 0 : count.getValue().doubleValue() / value;
+		}
+
+	}
+
+}
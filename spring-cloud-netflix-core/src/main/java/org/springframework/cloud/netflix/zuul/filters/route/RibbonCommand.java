@@ -20,7 +20,9 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Map;
 
+import org.springframework.cloud.netflix.ribbon.LoadBalancerKeyHolder;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -50,6 +52,8 @@ import com.netflix.zuul.context.RequestContext;
 @SuppressWarnings("deprecation")
 public class RibbonCommand extends HystrixCommand<HttpResponse> {
 
+	private String commandKey;
+
 	private RestClient restClient;
 
 	private Verb verb;
@@ -60,10 +64,12 @@ public class RibbonCommand extends HystrixCommand<HttpResponse> {
 
 	private MultiValueMap<String, String> headers;
 
-	private MultiValueMap<String, String> params;
+	private Map<String, List<String>> params;
 
 	private InputStream requestEntity;
 
+	private RequestHedger hedger;
+
 	public RibbonCommand(RestClient restClient, Verb verb, String uri,
 			Boolean retryable,
 			MultiValueMap<String, String> headers,
@@ -72,12 +78,38 @@ public class RibbonCommand extends HystrixCommand<HttpResponse> {
 		this("default", restClient, verb, uri, retryable , headers, params, requestEntity);
 	}
 
+	public RibbonCommand(RestClient restClient, Verb verb, String uri,
+			Boolean retryable,
+			MultiValueMap<String, String> headers,
+            Map<String, List<String>> params, InputStream requestEntity)
+			throws URISyntaxException {
+		this("default", restClient, verb, uri, retryable , headers, params, requestEntity);
+	}
+
 	public RibbonCommand(String commandKey, RestClient restClient, Verb verb, String uri,
 			Boolean retryable,
             MultiValueMap<String, String> headers,
             MultiValueMap<String, String> params, InputStream requestEntity)
 			throws URISyntaxException {
+		this(commandKey, restClient, verb, uri, retryable, headers,
+				(Map<String, List<String>>) params, requestEntity);
+	}
+
+	public RibbonCommand(String commandKey, RestClient restClient, Verb verb, String uri,
+			Boolean retryable,
+            MultiValueMap<String, String> headers,
+            Map<String, List<String>> params, InputStream requestEntity)
+			throws URISyntaxException {
+		this(commandKey, restClient, verb, uri, retryable, headers, params,
+				requestEntity, null);
+	}
+
+	RibbonCommand(String commandKey, RestClient restClient, Verb verb, String uri,
+			Boolean retryable, MultiValueMap<String, String> headers,
+			Map<String, List<String>> params, InputStream requestEntity,
+			RequestHedger hedger) throws URISyntaxException {
 		super(getSetter(commandKey));
+		this.commandKey = commandKey;
 		this.restClient = restClient;
 		this.verb = verb;
 		this.uri = new URI(uri);
@@ -85,6 +117,7 @@ public class RibbonCommand extends HystrixCommand<HttpResponse> {
 		this.headers = headers;
 		this.params = params;
 		this.requestEntity = requestEntity;
+		this.hedger = hedger;
 	}
 
 	private static HystrixCommand.Setter getSetter(String commandKey) {
@@ -114,6 +147,10 @@ public class RibbonCommand extends HystrixCommand<HttpResponse> {
 		if(retryable != null) {
 			builder.setRetriable(retryable);
 		}
+		Object loadBalancerKey = context.get(RibbonRoutingFilter.LOAD_BALANCER_KEY);
+		if (loadBalancerKey != null) {
+			builder.loadBalancerKey(loadBalancerKey);
+		}
 		
 		for (String name : this.headers.keySet()) {
 			List<String> values = this.headers.get(name);
@@ -128,8 +165,18 @@ public class RibbonCommand extends HystrixCommand<HttpResponse> {
 			}
 		}
 		HttpRequest httpClientRequest = builder.build();
-		HttpResponse response = this.restClient
-				.executeWithLoadBalancer(httpClientRequest);
+		// the client does not pass the key of the request on to the load balancer, so
+		// a key-aware rule gets it from the current thread instead
+		LoadBalancerKeyHolder.setKey(loadBalancerKey);
+		HttpResponse response;
+		try {
+			response = this.hedger != null ? this.hedger.execute(this.commandKey,
+					this.restClient, httpClientRequest) : this.restClient
+					.executeWithLoadBalancer(httpClientRequest);
+		}
+		finally {
+			LoadBalancerKeyHolder.resetKey();
+		}
 		context.set("ribbonResponse", response);
 		
 		// Explicitly close the HttpResponse if the Hystrix command timed out to
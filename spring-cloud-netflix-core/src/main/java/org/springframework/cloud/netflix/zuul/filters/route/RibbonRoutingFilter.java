@@ -20,9 +20,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -30,8 +33,14 @@ import lombok.extern.apachecommons.CommonsLog;
 
 import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
 import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.cloud.netflix.zuul.filters.cache.ResponseCacheFilter;
+import org.springframework.cloud.netflix.zuul.filters.route.ConcurrencyLimits.Permit;
+import org.springframework.cloud.netflix.zuul.filters.route.RequestCoalescer.SharedResponse;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
 
 import com.netflix.client.ClientException;
 import com.netflix.client.http.HttpRequest.Verb;
@@ -47,20 +56,57 @@ public class RibbonRoutingFilter extends ZuulFilter {
 
 	public static final String CONTENT_ENCODING = "Content-Encoding";
 
+	/**
+	 * Key of the load balancer key of the request (if any) in the request context.
+	 */
+	public static final String LOAD_BALANCER_KEY = "loadBalancerKey";
+
 	private SpringClientFactory clientFactory;
 
 	private ProxyRequestHelper helper;
 
+	private RequestCoalescer coalescer;
+
+	private RequestHedger hedger;
+
+	private ConcurrencyLimits limits;
+
+	private ZuulProperties properties;
+
 	public RibbonRoutingFilter(ProxyRequestHelper helper,
-			SpringClientFactory clientFactory) {
+			SpringClientFactory clientFactory, ZuulProperties properties) {
 		this.helper = helper;
 		this.clientFactory = clientFactory;
+		this.properties = properties;
+		if (properties != null) {
+			this.coalescer = new RequestCoalescer(properties);
+			this.hedger = new RequestHedger(properties);
+			this.limits = new ConcurrencyLimits(properties);
+		}
+	}
+
+	public RibbonRoutingFilter(ProxyRequestHelper helper,
+			SpringClientFactory clientFactory) {
+		this(helper, clientFactory, null);
 	}
 
 	public RibbonRoutingFilter(SpringClientFactory clientFactory) {
 		this(new ProxyRequestHelper(), clientFactory);
 	}
 
+	@PreDestroy
+	public void stop() {
+		if (this.coalescer != null) {
+			this.coalescer.stop();
+		}
+		if (this.hedger != null) {
+			this.hedger.stop();
+		}
+		if (this.limits != null) {
+			this.limits.stop();
+		}
+	}
+
 	@Override
 	public String filterType() {
 		return "route";
@@ -74,8 +120,9 @@ public class RibbonRoutingFilter extends ZuulFilter {
 	@Override
 	public boolean shouldFilter() {
 		RequestContext ctx = RequestContext.getCurrentContext();
-		return (ctx.getRouteHost() == null && ctx.get("serviceId") != null && ctx
-				.sendZuulResponse());
+		return (ctx.getRouteHost() == null && ctx.get("serviceId") != null
+				&& ctx.sendZuulResponse() && !ctx
+				.getBoolean(ResponseCacheFilter.CACHE_HIT_KEY));
 	}
 
 	@Override
@@ -83,48 +130,89 @@ public class RibbonRoutingFilter extends ZuulFilter {
 		RequestContext context = RequestContext.getCurrentContext();
 		HttpServletRequest request = context.getRequest();
 
-		MultiValueMap<String, String> headers = this.helper
+		final MultiValueMap<String, String> headers = this.helper
 				.buildZuulRequestHeaders(request);
-		MultiValueMap<String, String> params = this.helper
-				.buildZuulRequestQueryParams(request);
-		Verb verb = getVerb(request);
-		InputStream requestEntity = getRequestBody(request);
+		final Map<String, List<String>> params = this.helper.getZuulRequestQueryParams();
+		final Verb verb = getVerb(request);
+		final RequestHedger hedger = this.hedger != null
+				&& this.hedger.isHedging(context.get("proxy"), verb.verb()) ? this.hedger
+				: null;
+		// the attempts of a hedged request run in parallel (and have no body)
+		final InputStream requestEntity = hedger != null ? null
+				: getRequestBody(request);
 
 		String serviceId = (String) context.get("serviceId");
-		Boolean retryable = (Boolean) context.get("retryable");
+		final Boolean retryable = (Boolean) context.get("retryable");
 
-		RestClient restClient = this.clientFactory.getClient(serviceId, RestClient.class);
+		final RestClient restClient = this.clientFactory.getClient(serviceId, RestClient.class);
 
 		String uri = this.helper.buildZuulRequestURI(request);
 
 		// remove double slashes
 		uri = uri.replace("//", "/");
-		String service = (String) context.get("serviceId");
+		Object loadBalancerKey = getLoadBalancerKey(context.get("proxy"), request, uri);
+		if (loadBalancerKey != null) {
+			context.set(LOAD_BALANCER_KEY, loadBalancerKey);
+		}
+		final String service = (String) context.get("serviceId");
+		final String path = uri;
 
 		try {
-			HttpResponse response = forward(restClient, service, verb, uri, retryable, headers, params,
-					requestEntity);
-			setResponse(response);
+			final Map<String, Object> info = this.helper.debug(verb.verb(), uri,
+					headers, params, requestEntity);
+			if (this.coalescer != null
+					&& this.coalescer.isCoalescing(context.get("proxy"), verb.verb())) {
+				String key = this.coalescer.getKey(service, verb.verb(), uri,
+						this.helper.getQueryString(params), headers);
+				SharedResponse shared = this.coalescer.execute(key,
+						new Callable<SharedResponse>() {
+							@Override
+							public SharedResponse call() throws Exception {
+								return buffer(forward(restClient, service, verb, path,
+										retryable, headers, params, requestEntity,
+										hedger, info));
+							}
+						});
+				if (shared != null) {
+					this.helper.appendDebug(info, shared.getStatus(),
+							shared.getHeaders());
+					this.helper.setResponse(shared.getStatus(), shared.getBody(),
+							shared.getHeaders());
+					return null;
+				}
+				// the response in flight was too large to share
+			}
+			HttpResponse response = forward(restClient, service, verb, uri, retryable,
+					headers, params, requestEntity, hedger, info);
+			setResponse(info, response);
 			return response;
 		}
 		catch (Exception ex) {
-			context.set("error.status_code", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			context.set("error.status_code",
+					ex instanceof ZuulException ? ((ZuulException) ex).nStatusCode
+							: HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 			context.set("error.exception", ex);
 		}
 		return null;
 	}
 
 	private HttpResponse forward(RestClient restClient, String service, Verb verb, String uri, Boolean retryable,
-			MultiValueMap<String, String> headers, MultiValueMap<String, String> params,
-			InputStream requestEntity) throws Exception {
-		Map<String, Object> info = this.helper.debug(verb.verb(), uri, headers, params,
-				requestEntity);
+			MultiValueMap<String, String> headers, Map<String, List<String>> params,
+			InputStream requestEntity, RequestHedger hedger, Map<String, Object> info)
+			throws Exception {
+		Permit permit = this.limits != null ? this.limits.acquire(service)
+				: Permit.NONE;
+		if (permit == null) {
+			info.put("status", "503");
+			throw new ZuulException("Too many concurrent requests to " + service,
+					HttpServletResponse.SC_SERVICE_UNAVAILABLE, "CONCURRENCY_LIMIT");
+		}
 		RibbonCommand command = new RibbonCommand(service, restClient, verb, uri, retryable,
-				headers, params, requestEntity);
+				headers, params, requestEntity, hedger);
+		boolean dropped = true;
 		try {
 			HttpResponse response = command.execute();
-			this.helper.appendDebug(info, response.getStatus(),
-					revertHeaders(response.getHeaders()));
+			dropped = false;
 			return response;
 		}
 		catch (HystrixRuntimeException ex) {
@@ -140,7 +228,34 @@ public class RibbonRoutingFilter extends ZuulFilter {
 			throw new ZuulException(ex, "Forwarding error", 500, ex.getFailureType()
 					.toString());
 		}
+		finally {
+			permit.release(dropped);
+		}
+	}
 
+	private String getLoadBalancerKey(Object routeId, HttpServletRequest request,
+			String uri) {
+		if (this.properties == null || routeId == null) {
+			return null;
+		}
+		ZuulRoute route = this.properties.findRoute(routeId.toString());
+		if (route == null) {
+			return null;
+		}
+		if (route.getAffinityHeader() != null) {
+			String value = request.getHeader(route.getAffinityHeader());
+			if (StringUtils.hasText(value)) {
+				return value;
+			}
+		}
+		if (route.getAffinityPathSegment() != null) {
+			String[] segments = StringUtils.tokenizeToStringArray(uri, "/");
+			int index = route.getAffinityPathSegment();
+			if (index >= 0 && index < segments.length) {
+				return segments[index];
+			}
+		}
+		return null;
 	}
 
 	private MultiValueMap<String, String> revertHeaders(
@@ -187,10 +302,26 @@ public class RibbonRoutingFilter extends ZuulFilter {
 		}
 	}
 
-	private void setResponse(HttpResponse resp) throws ClientException, IOException {
+	private SharedResponse buffer(HttpResponse resp) throws ClientException,
+			IOException {
+		try {
+			return RequestCoalescer.buffer(resp.getStatus(),
+					revertHeaders(resp.getHeaders()),
+					!resp.hasEntity() ? null : resp.getInputStream(),
+					this.coalescer.getMaxResponseSize());
+		}
+		catch (IOException ex) {
+			resp.close();
+			throw ex;
+		}
+	}
+
+	private void setResponse(Map<String, Object> info, HttpResponse resp)
+			throws ClientException, IOException {
+		Map<String, Collection<String>> headers = resp.getHeaders();
+		this.helper.appendDebug(info, resp.getStatus(), headers);
 		this.helper.setResponse(resp.getStatus(),
-				!resp.hasEntity() ? null : resp.getInputStream(),
-				revertHeaders(resp.getHeaders()));
+				!resp.hasEntity() ? null : resp.getInputStream(), headers);
 	}
 
 }
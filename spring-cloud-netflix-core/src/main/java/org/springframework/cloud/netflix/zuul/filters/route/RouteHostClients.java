@@ -0,0 +1,394 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.route;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.RedirectStrategy;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.Host;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+
+import com.netflix.servo.annotations.DataSourceType;
+import com.netflix.servo.annotations.Monitor;
+import com.netflix.servo.monitor.BasicTimer;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
+import com.netflix.servo.monitor.Stopwatch;
+import com.netflix.servo.monitor.Timer;
+
+/**
+ * The HTTP clients used to forward requests to routes with a url. Each route gets its
+ * own connection pool, sized from the route (or from the <code>zuul.host</code>
+ * defaults), so that a slow backend cannot starve the others of connections. The pool
+ * statistics of every route are registered with Servo as <code>ZuulHost_{route}</code>.
+ * Timeouts are not part of the clients: they are passed with each request, so that
+ * changing them never throws away a warm pool. The pools of hosts that are not the url
+ * of a configured route (e.g. set by a custom filter) are closed once they have not
+ * been used for a while, and there are at most
+ * <code>zuul.host.maxUnroutedPools</code> of them.
+ *
+ * @author Dave Syer
+ */
+@CommonsLog
+public class RouteHostClients {
+
+	private static final long MIN_UNROUTED_EXPIRY = 60000;
+
+	private final ConcurrentMap<String, RouteHostClient> clients = new ConcurrentHashMap<>();
+
+	private final ZuulProperties properties;
+
+	private final Registry<ConnectionSocketFactory> registry;
+
+	public RouteHostClients(ZuulProperties properties) {
+		this.properties = properties;
+		this.registry = RegistryBuilder.<ConnectionSocketFactory> create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", newSslSocketFactory()).build();
+	}
+
+	/**
+	 * Get the client for a route, creating it and its connection pool on first use.
+	 * @param routeId the route id (or any other key, e.g. the scheme, host and port of
+	 * the target, if there is no route)
+	 * @return a client backed by the pool of this route
+	 */
+	public CloseableHttpClient getClient(String routeId) {
+		while (true) {
+			RouteHostClient client = this.clients.get(routeId);
+			if (client == null) {
+				client = new RouteHostClient(routeId, new PoolSettings(this.properties,
+						routeId), this.properties.findRoute(routeId) != null);
+				RouteHostClient existing = this.clients.putIfAbsent(routeId, client);
+				if (existing != null) {
+					client.close();
+					client = existing;
+				}
+				else {
+					client.register();
+					if (!client.routed) {
+						trim(client);
+					}
+				}
+			}
+			if (client.routed) {
+				return client.client;
+			}
+			client.lastUsed = System.currentTimeMillis();
+			// unless it was closed for being unused in the meantime
+			if (this.clients.get(routeId) == client) {
+				return client.client;
+			}
+		}
+	}
+
+	/**
+	 * Close expired connections, and connections that have been idle for longer than the
+	 * idle timeout of their route. Should be called periodically.
+	 */
+	public void evictConnections() {
+		long expiry = Math.max(this.properties.getHost().getIdleTimeout(),
+				MIN_UNROUTED_EXPIRY);
+		long now = System.currentTimeMillis();
+		for (RouteHostClient client : this.clients.values()) {
+			if (!client.routed && now - client.lastUsed > expiry && client.isIdle()) {
+				remove(client);
+			}
+			else {
+				client.evict();
+			}
+		}
+	}
+
+	/**
+	 * Close all the clients and their pools.
+	 */
+	public void close() {
+		for (String routeId : this.clients.keySet()) {
+			RouteHostClient client = this.clients.remove(routeId);
+			if (client != null) {
+				client.unregister();
+				client.close();
+			}
+		}
+	}
+
+	/**
+	 * Close the least recently used pools of the hosts without a route while there are
+	 * too many of them (skipping the ones with requests in flight).
+	 */
+	private void trim(RouteHostClient added) {
+		int max = this.properties.getHost().getMaxUnroutedPools();
+		while (true) {
+			int count = 0;
+			RouteHostClient oldest = null;
+			for (RouteHostClient client : this.clients.values()) {
+				if (!client.routed) {
+					count++;
+					if (client != added && client.isIdle()
+							&& (oldest == null || client.lastUsed < oldest.lastUsed)) {
+						oldest = client;
+					}
+				}
+			}
+			if (count <= max || oldest == null) {
+				return;
+			}
+			remove(oldest);
+		}
+	}
+
+	private void remove(RouteHostClient client) {
+		if (this.clients.remove(client.key, client)) {
+			client.unregister();
+			client.close();
+		}
+	}
+
+	int getPoolCount() {
+		return this.clients.size();
+	}
+
+	PoolStats getStats(String routeId) {
+		RouteHostClient client = this.clients.get(routeId);
+		return client == null ? null : client.connectionManager.getTotalStats();
+	}
+
+	private static SSLConnectionSocketFactory newSslSocketFactory() {
+		return new SSLConnectionSocketFactory(newSslContext(),
+				NoopHostnameVerifier.INSTANCE);
+	}
+
+	static SSLContext newSslContext() {
+		try {
+			// the backends are trusted explicitly by configuring their url
+			return SSLContexts.custom().loadTrustMaterial(null, new TrustStrategy() {
+				@Override
+				public boolean isTrusted(X509Certificate[] chain, String authType) {
+					return true;
+				}
+			}).build();
+		}
+		catch (GeneralSecurityException ex) {
+			throw new IllegalStateException("Cannot create SSL context", ex);
+		}
+	}
+
+	private class RouteHostClient {
+
+		private final String key;
+
+		private final String name;
+
+		private final boolean routed;
+
+		private final long idleTimeout;
+
+		private final TimedConnectionManager connectionManager;
+
+		private final CloseableHttpClient client;
+
+		private volatile long lastUsed = System.currentTimeMillis();
+
+		private RouteHostClient(String routeId, PoolSettings settings, boolean routed) {
+			this.key = routeId;
+			this.name = "ZuulHost_" + routeId;
+			this.routed = routed;
+			this.idleTimeout = settings.idleTimeout;
+			this.connectionManager = new TimedConnectionManager(
+					RouteHostClients.this.registry);
+			// all the connections of a pool go to the same route
+			this.connectionManager.setMaxTotal(settings.maxConnections);
+			this.connectionManager.setDefaultMaxPerRoute(settings.maxConnections);
+			this.connectionManager
+					.setValidateAfterInactivity(settings.validateAfterInactivity);
+			this.client = HttpClients.custom()
+					.setConnectionManager(this.connectionManager)
+					.setDefaultRequestConfig(
+							RequestConfig.custom()
+									.setCookieSpec(CookieSpecs.IGNORE_COOKIES).build())
+					.setRetryHandler(new DefaultHttpRequestRetryHandler(0, false))
+					.setRedirectStrategy(new RedirectStrategy() {
+						@Override
+						public boolean isRedirected(HttpRequest request,
+								HttpResponse response, HttpContext context) {
+							return false;
+						}
+
+						@Override
+						public HttpUriRequest getRedirect(HttpRequest request,
+								HttpResponse response, HttpContext context) {
+							return null;
+						}
+					}).build();
+		}
+
+		private void evict() {
+			this.connectionManager.closeExpiredConnections();
+			if (this.idleTimeout >= 0) {
+				this.connectionManager.closeIdleConnections(this.idleTimeout,
+						TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private boolean isIdle() {
+			PoolStats stats = this.connectionManager.getTotalStats();
+			return stats.getLeased() == 0 && stats.getPending() == 0;
+		}
+
+		private void register() {
+			Monitors.registerObject(this.name, this.connectionManager);
+		}
+
+		private void unregister() {
+			Monitors.unregisterObject(this.name, this.connectionManager);
+		}
+
+		private void close() {
+			try {
+				this.client.close();
+			}
+			catch (IOException ex) {
+				log.error("error closing client " + this.name, ex);
+			}
+		}
+
+	}
+
+	/**
+	 * The connection pool settings of a route: its own values if it has any, otherwise
+	 * the <code>zuul.host</code> defaults.
+	 */
+	static class PoolSettings {
+
+		final int maxConnections;
+
+		final long idleTimeout;
+
+		final int validateAfterInactivity;
+
+		PoolSettings(ZuulProperties properties, String routeId) {
+			Host host = properties.getHost();
+			ZuulRoute route = properties.findRoute(routeId);
+			this.maxConnections = route != null && route.getMaxConnections() != null ? route
+					.getMaxConnections() : host.getMaxConnections();
+			this.idleTimeout = route != null && route.getIdleTimeout() != null ? route
+					.getIdleTimeout() : host.getIdleTimeout();
+			this.validateAfterInactivity = route != null
+					&& route.getValidateAfterInactivity() != null ? route
+					.getValidateAfterInactivity() : host.getValidateAfterInactivity();
+		}
+
+	}
+
+	/**
+	 * Connection manager that exposes its pool statistics to Servo, including how long
+	 * callers wait to lease a connection.
+	 */
+	static class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+
+		private final Timer leaseWaitTime = new BasicTimer(MonitorConfig.builder(
+				"leaseWaitTime").build(), TimeUnit.MILLISECONDS);
+
+		TimedConnectionManager(Registry<ConnectionSocketFactory> registry) {
+			super(registry);
+		}
+
+		@Override
+		public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+			final ConnectionRequest request = super.requestConnection(route, state);
+			return new ConnectionRequest() {
+
+				@Override
+				public boolean cancel() {
+					return request.cancel();
+				}
+
+				@Override
+				public HttpClientConnection get(long timeout, TimeUnit unit)
+						throws InterruptedException, ExecutionException,
+						ConnectionPoolTimeoutException {
+					Stopwatch stopwatch = TimedConnectionManager.this.leaseWaitTime
+							.start();
+					try {
+						return request.get(timeout, unit);
+					}
+					finally {
+						stopwatch.stop();
+					}
+				}
+
+			};
+		}
+
+		@Monitor(name = "leased", type = DataSourceType.GAUGE)
+		public int getLeased() {
+			return getTotalStats().getLeased();
+		}
+
+		@Monitor(name = "pending", type = DataSourceType.GAUGE)
+		public int getPending() {
+			return getTotalStats().getPending();
+		}
+
+		@Monitor(name = "available", type = DataSourceType.GAUGE)
+		public int getAvailable() {
+			return getTotalStats().getAvailable();
+		}
+
+		@Monitor(name = "max", type = DataSourceType.GAUGE)
+		public int getMax() {
+			return getTotalStats().getMax();
+		}
+
+	}
+
+}
@@ -18,107 +18,139 @@ package org.springframework.cloud.netflix.zuul.filters.route;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.net.Socket;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PreDestroy;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import lombok.extern.apachecommons.CommonsLog;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.InputStreamEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicHttpRequest;
-import org.apache.http.params.CoreConnectionPNames;
-import org.apache.http.params.HttpParams;
-import org.apache.http.protocol.HttpContext;
 import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper.HeaderSink;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.cache.ResponseCacheFilter;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
 
 import com.netflix.config.DynamicIntProperty;
 import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.zuul.FilterProcessor;
 import com.netflix.zuul.ZuulFilter;
 import com.netflix.zuul.constants.ZuulConstants;
 import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.exception.ZuulException;
 
 @CommonsLog
 public class SimpleHostRoutingFilter extends ZuulFilter {
 
 	public static final String CONTENT_ENCODING = "Content-Encoding";
 
-	private static final Runnable CLIENTLOADER = new Runnable() {
-		@Override
-		public void run() {
-			loadClient();
-		}
-	};
+	/**
+	 * Key of the request context flag that the servlet sets if the request supports
+	 * async mode and the servlet leaves the post filters to the route filter once the
+	 * request has been switched to async mode.
+	 */
+	public static final String ASYNC_SUPPORTED_KEY = "asyncSupported";
+
+	private static final String ASYNC_HANDOFF_KEY = "asyncHandoff";
+
+	private static final boolean ASYNC_CLIENT_PRESENT = ClassUtils.isPresent(
+			"org.apache.http.impl.nio.client.HttpAsyncClients",
+			SimpleHostRoutingFilter.class.getClassLoader());
 
-	private static final DynamicIntProperty SOCKET_TIMEOUT = DynamicPropertyFactory
+	private final DynamicIntProperty socketTimeout = DynamicPropertyFactory
 			.getInstance().getIntProperty(ZuulConstants.ZUUL_HOST_SOCKET_TIMEOUT_MILLIS,
 					10000);
 
-	private static final DynamicIntProperty CONNECTION_TIMEOUT = DynamicPropertyFactory
+	private final DynamicIntProperty connectionTimeout = DynamicPropertyFactory
 			.getInstance().getIntProperty(ZuulConstants.ZUUL_HOST_CONNECT_TIMEOUT_MILLIS,
 					2000);
 
-	private static final AtomicReference<HttpClient> CLIENT = new AtomicReference<HttpClient>(
-			newClient());
+	private final Timer connectionManagerTimer = new Timer(
+			"SimpleHostRoutingFilter.connectionManagerTimer", true);
+
+	private ProxyRequestHelper helper;
+
+	private ZuulProperties properties;
+
+	private RouteHostClients clients;
 
-	private static final Timer CONNECTION_MANAGER_TIMER = new Timer(
-			"SimpleHostRoutingFilter.CONNECTION_MANAGER_TIMER", true);
+	private volatile AsyncRouteHostClients asyncClients;
 
-	// cleans expired connections at an interval
-	static {
-		SOCKET_TIMEOUT.addCallback(CLIENTLOADER);
-		CONNECTION_TIMEOUT.addCallback(CLIENTLOADER);
-		CONNECTION_MANAGER_TIMER.schedule(new TimerTask() {
+	private volatile RequestConfig requestConfig;
+
+	public SimpleHostRoutingFilter() {
+		this(new ProxyRequestHelper());
+	}
+
+	public SimpleHostRoutingFilter(ProxyRequestHelper helper) {
+		this(helper, new ZuulProperties());
+	}
+
+	public SimpleHostRoutingFilter(ProxyRequestHelper helper, ZuulProperties properties) {
+		this.helper = helper;
+		this.properties = properties;
+		this.clients = new RouteHostClients(properties);
+		this.requestConfig = newRequestConfig();
+		Runnable configLoader = new Runnable() {
+			@Override
+			public void run() {
+				// applies to the next requests, the connection pools are not affected
+				SimpleHostRoutingFilter.this.requestConfig = newRequestConfig();
+			}
+		};
+		this.socketTimeout.addCallback(configLoader);
+		this.connectionTimeout.addCallback(configLoader);
+		// cleans expired and idle connections at an interval
+		this.connectionManagerTimer.schedule(new TimerTask() {
 			@Override
 			public void run() {
 				try {
-					final HttpClient hc = CLIENT.get();
-					if (hc == null) {
-						return;
+					SimpleHostRoutingFilter.this.clients.evictConnections();
+					if (SimpleHostRoutingFilter.this.asyncClients != null) {
+						SimpleHostRoutingFilter.this.asyncClients.evictConnections();
 					}
-					hc.getConnectionManager().closeExpiredConnections();
 				}
 				catch (Throwable ex) {
 					log.error("error closing expired connections", ex);
@@ -127,19 +159,15 @@ public class SimpleHostRoutingFilter extends ZuulFilter {
 		}, 30000, 5000);
 	}
 
-	private ProxyRequestHelper helper;
-
-	public SimpleHostRoutingFilter() {
-		this(new ProxyRequestHelper());
-	}
-
-	public SimpleHostRoutingFilter(ProxyRequestHelper helper) {
-		this.helper = helper;
-	}
-
 	@PreDestroy
 	public void stop() {
-		CONNECTION_MANAGER_TIMER.cancel();
+		this.socketTimeout.removeAllCallbacks();
+		this.connectionTimeout.removeAllCallbacks();
+		this.connectionManagerTimer.cancel();
+		this.clients.close();
+		if (this.asyncClients != null) {
+			this.asyncClients.close();
+		}
 	}
 
 	@Override
@@ -154,28 +182,32 @@ public class SimpleHostRoutingFilter extends ZuulFilter {
 
 	@Override
 	public boolean shouldFilter() {
-		return RequestContext.getCurrentContext().getRouteHost() != null
-				&& RequestContext.getCurrentContext().sendZuulResponse();
+		RequestContext context = RequestContext.getCurrentContext();
+		return context.getRouteHost() != null && context.sendZuulResponse()
+				&& !context.getBoolean(ResponseCacheFilter.CACHE_HIT_KEY);
 	}
 
 	@Override
 	public Object run() {
 		RequestContext context = RequestContext.getCurrentContext();
 		HttpServletRequest request = context.getRequest();
-		MultiValueMap<String, String> headers = this.helper
-				.buildZuulRequestHeaders(request);
-		MultiValueMap<String, String> params = this.helper
-				.buildZuulRequestQueryParams(request);
+		Map<String, List<String>> params = this.helper.getZuulRequestQueryParams();
 		String verb = getVerb(request);
 		InputStream requestEntity = getRequestBody(request);
-		HttpClient httpclient = CLIENT.get();
 
 		String uri = this.helper.buildZuulRequestURI(request);
 
+		if (isAsync(context, request)) {
+			forwardAsync(context, verb, uri, request, params, requestEntity);
+			return null;
+		}
+
+		HttpClient httpclient = getClient(context);
 		try {
-			HttpResponse response = forward(httpclient, verb, uri, request, headers,
-					params, requestEntity);
-			setResponse(response);
+			Map<String, Object> info = debug(verb, uri, request, params, requestEntity);
+			HttpResponse response = forward(httpclient, verb, uri, request, params,
+					requestEntity);
+			setResponse(info, response);
 		}
 		catch (Exception ex) {
 			context.set("error.status_code", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -185,96 +217,226 @@ public class SimpleHostRoutingFilter extends ZuulFilter {
 	}
 
 	private HttpResponse forward(HttpClient httpclient, String verb, String uri,
-			HttpServletRequest request, MultiValueMap<String, String> headers,
-			MultiValueMap<String, String> params, InputStream requestEntity)
-			throws Exception {
-		Map<String, Object> info = this.helper.debug(verb, uri, headers, params,
-				requestEntity);
+			HttpServletRequest request, Map<String, List<String>> params,
+			InputStream requestEntity) throws Exception {
 		URL host = RequestContext.getCurrentContext().getRouteHost();
 		HttpHost httpHost = getHttpHost(host);
 		uri = StringUtils.cleanPath(host.getPath() + uri);
+		HttpRequest httpRequest = buildRequest(verb,
+				uri + this.helper.getQueryString(params), new InputStreamEntity(
+						requestEntity, request.getContentLength()));
+		copyHeaders(request, httpRequest);
+		if (log.isDebugEnabled()) {
+			log.debug(httpHost.getHostName() + " " + httpHost.getPort() + " "
+					+ httpHost.getSchemeName());
+		}
+		return forwardRequest(httpclient, httpHost, httpRequest);
+	}
+
+	private HttpRequest buildRequest(String verb, String uri, HttpEntity entity) {
 		HttpRequest httpRequest;
 		switch (verb.toUpperCase()) {
 		case "POST":
-			HttpPost httpPost = new HttpPost(uri + getQueryString());
+			HttpPost httpPost = new HttpPost(uri);
 			httpRequest = httpPost;
-			httpPost.setEntity(new InputStreamEntity(requestEntity, request
-					.getContentLength()));
+			httpPost.setEntity(entity);
 			break;
 		case "PUT":
-			HttpPut httpPut = new HttpPut(uri + getQueryString());
+			HttpPut httpPut = new HttpPut(uri);
 			httpRequest = httpPut;
-			httpPut.setEntity(new InputStreamEntity(requestEntity, request
-					.getContentLength()));
+			httpPut.setEntity(entity);
 			break;
 		case "PATCH":
-			HttpPatch httpPatch = new HttpPatch(uri + getQueryString());
+			HttpPatch httpPatch = new HttpPatch(uri);
 			httpRequest = httpPatch;
-			httpPatch.setEntity(new InputStreamEntity(requestEntity, request
-					.getContentLength()));
+			httpPatch.setEntity(entity);
 			break;
 		default:
-			httpRequest = new BasicHttpRequest(verb, uri + getQueryString());
-			log.debug(uri + getQueryString());
+			httpRequest = new BasicHttpRequest(verb, uri);
+			log.debug(uri);
+		}
+		return httpRequest;
+	}
+
+	private boolean isAsync(RequestContext context, HttpServletRequest request) {
+		if (!Boolean.TRUE.equals(context.get("async"))) {
+			return false;
+		}
+		if (ASYNC_CLIENT_PRESENT && Boolean.TRUE.equals(context.get(ASYNC_SUPPORTED_KEY))
+				&& hasSmallBody(request)) {
+			return true;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Async routing not available, forwarding synchronously to "
+					+ context.getRouteHost());
 		}
+		return false;
+	}
+
+	/**
+	 * @return true if the request body (if any) is small enough to be read into memory
+	 * for the async client, which cannot stream it without blocking its I/O threads
+	 */
+	private boolean hasSmallBody(HttpServletRequest request) {
+		int length = request.getContentLength();
+		if (length < 0) {
+			// no body, unless it is chunked
+			return request.getHeader("Transfer-Encoding") == null;
+		}
+		return length <= this.properties.getHost().getMaxAsyncRequestSize();
+	}
+
+	/**
+	 * Called by the servlet once the route filters have run for a request that was
+	 * switched to async mode by this filter. The post filters run when this has been
+	 * called and the response has arrived (whichever comes last), so that they never
+	 * share the request context with a route filter that is still running.
+	 * @param context the request context
+	 * @param ex the exception thrown by a later route filter, or null
+	 */
+	public static void routed(RequestContext context, ZuulException ex) {
+		Object handoff = context.get(ASYNC_HANDOFF_KEY);
+		if (handoff instanceof AsyncHandoff) {
+			((AsyncHandoff) handoff).routed(ex);
+		}
+	}
+
+	/**
+	 * Start an async request and hand the routing over to the async HTTP client. The
+	 * post filters are run when the response arrives, in a container thread obtained
+	 * from the {@link AsyncContext}, and the calling thread is released straight away.
+	 * The async request times out (with an error) after the lease, connect and socket
+	 * timeouts of the client added up.
+	 */
+	private void forwardAsync(final RequestContext context, String verb, String uri,
+			HttpServletRequest request, Map<String, List<String>> params,
+			InputStream requestEntity) {
+		URL host = context.getRouteHost();
+		HttpHost httpHost = getHttpHost(host);
+		final Map<String, Object> info;
+		HttpRequest httpRequest;
 		try {
-			httpRequest.setHeaders(convertHeaders(headers));
-			log.debug(httpHost.getHostName() + " " + httpHost.getPort() + " "
-					+ httpHost.getSchemeName());
-			HttpResponse zuulResponse = forwardRequest(httpclient, httpHost, httpRequest);
-			this.helper.appendDebug(info, zuulResponse.getStatusLine().getStatusCode(),
-					revertHeaders(zuulResponse.getAllHeaders()));
-			return zuulResponse;
+			info = debug(verb, uri, request, params, requestEntity);
+			uri = StringUtils.cleanPath(host.getPath() + uri);
+			// the body is read here, so that the I/O threads never block on the client
+			// (it is small, or the request would not be async)
+			byte[] body = requestEntity == null ? new byte[0] : StreamUtils
+					.copyToByteArray(requestEntity);
+			httpRequest = buildRequest(verb, uri + this.helper.getQueryString(params),
+					new ByteArrayEntity(body));
 		}
-		finally {
-			// When HttpClient instance is no longer needed,
-			// shut down the connection manager to ensure
-			// immediate deallocation of all system resources
-			// httpclient.getConnectionManager().shutdown();
+		catch (IOException ex) {
+			context.set("error.status_code", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			context.set("error.exception", ex);
+			return;
 		}
+		copyHeaders(request, httpRequest);
+		HttpClientContext clientContext = HttpClientContext.create();
+		RequestConfig config = RequestConfig.copy(this.requestConfig)
+				.setConnectionRequestTimeout(this.connectionTimeout.get()).build();
+		clientContext.setRequestConfig(config);
+		final AsyncHandoff handoff = new AsyncHandoff(context, info, context
+				.getRequest().startAsync());
+		context.set(ASYNC_HANDOFF_KEY, handoff);
+		handoff.asyncContext.setTimeout((long) config.getConnectionRequestTimeout()
+				+ config.getConnectTimeout() + config.getSocketTimeout());
+		handoff.asyncContext.addListener(handoff);
+		handoff.future = getAsyncClients().execute(getPoolKey(context), httpHost,
+				httpRequest, clientContext, new FutureCallback<HttpResponse>() {
+
+					@Override
+					public void completed(HttpResponse response) {
+						handoff.respond(response, null, false);
+					}
+
+					@Override
+					public void failed(Exception ex) {
+						handoff.respond(null, ex, false);
+					}
+
+					@Override
+					public void cancelled() {
+						handoff.respond(null, new IllegalStateException(
+								"Request cancelled"), false);
+					}
+
+				});
 	}
 
-	private MultiValueMap<String, String> revertHeaders(Header[] headers) {
-		MultiValueMap<String, String> map = new LinkedMultiValueMap<String, String>();
-		for (Header header : headers) {
-			String name = header.getName();
-			if (!map.containsKey(name)) {
-				map.put(name, new ArrayList<String>());
-			}
-			map.get(name).add(header.getValue());
+	private void postRoute(RequestContext context) {
+		// same as the ZuulServlet does after the route filters
+		try {
+			FilterProcessor.getInstance().postRoute();
+		}
+		catch (ZuulException ex) {
+			context.setThrowable(ex);
+			FilterProcessor.getInstance().error();
 		}
-		return map;
 	}
 
-	private Header[] convertHeaders(MultiValueMap<String, String> headers) {
-		List<Header> list = new ArrayList<>();
-		for (String name : headers.keySet()) {
-			for (String value : headers.get(name)) {
-				list.add(new BasicHeader(name, value));
+	private AsyncRouteHostClients getAsyncClients() {
+		if (this.asyncClients == null) {
+			synchronized (this) {
+				if (this.asyncClients == null) {
+					this.asyncClients = new AsyncRouteHostClients(this.properties);
+				}
 			}
 		}
-		return list.toArray(new BasicHeader[0]);
+		return this.asyncClients;
 	}
 
-	private HttpResponse forwardRequest(HttpClient httpclient, HttpHost httpHost,
-			HttpRequest httpRequest) throws IOException {
-		return httpclient.execute(httpHost, httpRequest);
+	private HttpClient getClient(RequestContext context) {
+		return this.clients.getClient(getPoolKey(context));
+	}
+
+	/**
+	 * @return the route id, or the scheme, host and port of the target if there is no
+	 * route (so that the urls of a host share a pool)
+	 */
+	static String getPoolKey(RequestContext context) {
+		Object routeId = context.get("proxy");
+		if (routeId != null) {
+			return routeId.toString();
+		}
+		URL host = context.getRouteHost();
+		int port = host.getPort() > 0 ? host.getPort() : host.getDefaultPort();
+		return host.getProtocol() + "://" + host.getHost() + ":" + port;
+	}
+
+	private Map<String, Object> debug(String verb, String uri,
+			HttpServletRequest request, Map<String, List<String>> params,
+			InputStream requestEntity) throws IOException {
+		if (!this.helper.isTraceEnabled()) {
+			return new LinkedHashMap<String, Object>();
+		}
+		// the trace is the only thing that needs the headers collected in a map
+		return this.helper.debug(verb, uri, this.helper.buildZuulRequestHeaders(request),
+				params, requestEntity);
 	}
 
-	private String getQueryString() throws UnsupportedEncodingException {
-		HttpServletRequest request = RequestContext.getCurrentContext().getRequest();
-		MultiValueMap<String, String> params=helper.buildZuulRequestQueryParams(request);
-		StringBuilder query=new StringBuilder();
-		for (Map.Entry<String, List<String>> entry : params.entrySet()) {
-			String key=URLEncoder.encode(entry.getKey(), "UTF-8");
-			for (String value : entry.getValue()) {
-				query.append("&");
-				query.append(key);
-				query.append("=");
-				query.append(URLEncoder.encode(value, "UTF-8"));
+	private void copyHeaders(HttpServletRequest request, final HttpRequest httpRequest) {
+		this.helper.copyZuulRequestHeaders(request, new HeaderSink() {
+			@Override
+			public void addHeader(String name, String value) {
+				httpRequest.addHeader(name, value);
 			}
+		});
+	}
+
+	private MultiValueMap<String, String> revertHeaders(Header[] headers) {
+		MultiValueMap<String, String> map = new LinkedMultiValueMap<String, String>(
+				headers.length);
+		for (Header header : headers) {
+			map.add(header.getName(), header.getValue());
 		}
-		return (query.length()>0) ? "?" + query.substring(1) : "";
+		return map;
+	}
+
+	private HttpResponse forwardRequest(HttpClient httpclient, HttpHost httpHost,
+			HttpRequest httpRequest) throws IOException {
+		HttpClientContext context = HttpClientContext.create();
+		context.setRequestConfig(this.requestConfig);
+		return httpclient.execute(httpHost, httpRequest, context);
 	}
 
 	private HttpHost getHttpHost(URL host) {
@@ -299,110 +461,144 @@ public class SimpleHostRoutingFilter extends ZuulFilter {
 		return sMethod.toUpperCase();
 	}
 
-	private void setResponse(HttpResponse response) throws IOException {
-		this.helper.setResponse(response.getStatusLine().getStatusCode(),
-				response.getEntity() == null ? null : response.getEntity().getContent(),
-				revertHeaders(response.getAllHeaders()));
+	private void setResponse(Map<String, Object> info, HttpResponse response)
+			throws IOException {
+		int status = response.getStatusLine().getStatusCode();
+		MultiValueMap<String, String> headers = revertHeaders(response.getAllHeaders());
+		this.helper.appendDebug(info, status, headers);
+		this.helper.setResponse(status, response.getEntity() == null ? null : response
+				.getEntity().getContent(), headers);
 	}
 
-	private static ClientConnectionManager newConnectionManager() throws Exception {
-		KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-		trustStore.load(null, null);
-		SSLSocketFactory sf = new MySSLSocketFactory(trustStore);
-		sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-		SchemeRegistry registry = new SchemeRegistry();
-		registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-		registry.register(new Scheme("https", sf, 443));
-		registry.register(new Scheme("https", sf, 8443));
-		ThreadSafeClientConnManager cm = new ThreadSafeClientConnManager(registry);
-		cm.setMaxTotal(Integer.parseInt(System.getProperty("zuul.max.host.connections",
-				"200")));
-		cm.setDefaultMaxPerRoute(Integer.parseInt(System.getProperty(
-				"zuul.max.host.connections", "20")));
-		return cm;
+	private RequestConfig newRequestConfig() {
+		return RequestConfig.custom().setSocketTimeout(this.socketTimeout.get())
+				.setConnectTimeout(this.connectionTimeout.get())
+				.setCookieSpec(CookieSpecs.IGNORE_COOKIES).build();
 	}
 
-	private static void loadClient() {
-		final HttpClient oldClient = CLIENT.get();
-		CLIENT.set(newClient());
-		if (oldClient != null) {
-			CONNECTION_MANAGER_TIMER.schedule(new TimerTask() {
-				@Override
-				public void run() {
-					try {
-						oldClient.getConnectionManager().shutdown();
-					}
-					catch (Throwable ex) {
-						log.error("error shutting down old connection manager", ex);
-					}
-				}
-			}, 30000);
+	/**
+	 * The state of an async request shared by the servlet thread, the I/O thread that
+	 * gets the response and the container thread that times it out. The first response
+	 * (or timeout) wins, and the post filters run once it is there and the servlet
+	 * thread has finished routing.
+	 */
+	private class AsyncHandoff implements AsyncListener, Runnable {
+
+		private final RequestContext routingContext;
+
+		private final Map<String, Object> info;
+
+		private final AsyncContext asyncContext;
+
+		private final AtomicBoolean responded = new AtomicBoolean();
+
+		private final AtomicInteger pending = new AtomicInteger(2);
+
+		private volatile Future<HttpResponse> future;
+
+		private volatile ZuulException routeException;
+
+		private volatile HttpResponse response;
+
+		private volatile Exception failure;
+
+		AsyncHandoff(RequestContext routingContext, Map<String, Object> info,
+				AsyncContext asyncContext) {
+			this.routingContext = routingContext;
+			this.info = info;
+			this.asyncContext = asyncContext;
 		}
-	}
 
-	private static HttpClient newClient() {
-		// I could statically cache the connection manager but we will probably want to
-		// make some of its properties
-		// dynamic in the near future also
-		try {
-			DefaultHttpClient httpclient = new DefaultHttpClient(newConnectionManager());
-			HttpParams httpParams = httpclient.getParams();
-			httpParams.setIntParameter(CoreConnectionPNames.SO_TIMEOUT,
-					SOCKET_TIMEOUT.get());
-			httpParams.setIntParameter(CoreConnectionPNames.CONNECTION_TIMEOUT,
-					CONNECTION_TIMEOUT.get());
-			httpclient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0,
-					false));
-			httpParams.setParameter(ClientPNames.COOKIE_POLICY,
-					org.apache.http.client.params.CookiePolicy.IGNORE_COOKIES);
-			httpclient.setRedirectStrategy(new org.apache.http.client.RedirectStrategy() {
-				@Override
-				public boolean isRedirected(HttpRequest httpRequest,
-						HttpResponse httpResponse, HttpContext httpContext) {
-					return false;
+		void routed(ZuulException ex) {
+			this.routeException = ex;
+			if (this.pending.decrementAndGet() == 0) {
+				this.asyncContext.start(this);
+			}
+		}
+
+		void respond(HttpResponse response, Exception failure, boolean inContainer) {
+			if (!this.responded.compareAndSet(false, true)) {
+				return;
+			}
+			this.response = response;
+			this.failure = failure;
+			if (this.pending.decrementAndGet() == 0) {
+				if (inContainer) {
+					run();
+				}
+				else {
+					this.asyncContext.start(this);
 				}
+			}
+		}
 
-				@Override
-				public org.apache.http.client.methods.HttpUriRequest getRedirect(
-						HttpRequest httpRequest, HttpResponse httpResponse,
-						HttpContext httpContext) {
-					return null;
+		@Override
+		public void run() {
+			RequestContext context = RequestContext.getCurrentContext();
+			context.putAll(this.routingContext);
+			try {
+				if (this.failure == null) {
+					setResponse(this.info, this.response);
 				}
-			});
-			return httpclient;
+				else {
+					context.set("error.status_code",
+							HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					context.set("error.exception", this.failure);
+				}
+				if (this.routeException != null) {
+					// same as the ZuulServlet does when a route filter fails
+					context.setThrowable(this.routeException);
+					FilterProcessor.getInstance().error();
+				}
+				postRoute(context);
+			}
+			catch (Throwable ex) {
+				log.error("error completing async request", ex);
+			}
+			finally {
+				this.asyncContext.complete();
+				context.unset();
+			}
 		}
-		catch (Exception ex) {
-			throw new RuntimeException(ex);
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			Future<HttpResponse> future = this.future;
+			if (future != null) {
+				future.cancel(true);
+			}
+			respond(null, new TimeoutException("No response from "
+					+ this.routingContext.getRouteHost() + " in "
+					+ this.asyncContext.getTimeout() + "ms"), true);
 		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
+
 	}
 
+	/**
+	 * An SSL socket factory that trusts all the backends, like the connection managers
+	 * of the routes.
+	 * @deprecated the routes do not use it any more, their connections are made by
+	 * {@link RouteHostClients} (with the same trust settings)
+	 */
+	@Deprecated
 	public static class MySSLSocketFactory extends SSLSocketFactory {
-		private SSLContext sslContext = SSLContext.getInstance("TLS");
+		private SSLContext sslContext = RouteHostClients.newSslContext();
 
 		public MySSLSocketFactory(KeyStore truststore) throws NoSuchAlgorithmException,
 				KeyManagementException, KeyStoreException, UnrecoverableKeyException {
 			super(truststore);
-			TrustManager tm = new X509TrustManager() {
-
-				@Override
-				public void checkClientTrusted(X509Certificate[] chain, String authType)
-						throws CertificateException {
-				}
-
-				@Override
-				public void checkServerTrusted(X509Certificate[] chain, String authType)
-						throws CertificateException {
-				}
-
-				@Override
-				public X509Certificate[] getAcceptedIssuers() {
-					return null;
-				}
-
-			};
-			TrustManager[] tms = new TrustManager[1];
-			tms[0] = tm;
-			this.sslContext.init(null, tms, null);
 		}
 
 		@Override
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.web;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.cloud.netflix.zuul.filters.route.SimpleHostRoutingFilter;
+
+import com.netflix.zuul.ZuulRunner;
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.exception.ZuulException;
+import com.netflix.zuul.http.ZuulServlet;
+
+/**
+ * A {@link ZuulServlet} that does not run the post filters if a route filter has
+ * switched the request to async mode: they run when the response arrives, but not
+ * before all the route filters have finished here. Requests that cannot go async are
+ * handled by the {@link ZuulServlet} itself. The steps of the {@link ZuulServlet} are
+ * package private, so the async flow repeats them with a {@link ZuulRunner} of its own.
+ *
+ * @author Dave Syer
+ */
+public class AsyncZuulServlet extends ZuulServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private ZuulRunner zuulRunner = new ZuulRunner();
+
+	@Override
+	public void service(ServletRequest req, ServletResponse res)
+			throws ServletException, IOException {
+		HttpServletRequest request = (HttpServletRequest) req;
+		if (!request.isAsyncSupported()) {
+			super.service(req, res);
+			return;
+		}
+		try {
+			this.zuulRunner.init(request, (HttpServletResponse) res);
+			RequestContext context = RequestContext.getCurrentContext();
+			context.setZuulEngineRan();
+			context.set(SimpleHostRoutingFilter.ASYNC_SUPPORTED_KEY, true);
+			try {
+				this.zuulRunner.preRoute();
+			}
+			catch (ZuulException ex) {
+				error(ex);
+				postRoute();
+				return;
+			}
+			try {
+				this.zuulRunner.route();
+			}
+			catch (ZuulException ex) {
+				if (request.isAsyncStarted()) {
+					SimpleHostRoutingFilter.routed(context, ex);
+					return;
+				}
+				error(ex);
+				postRoute();
+				return;
+			}
+			if (request.isAsyncStarted()) {
+				SimpleHostRoutingFilter.routed(context, null);
+				return;
+			}
+			postRoute();
+		}
+		catch (Throwable ex) {
+			error(new ZuulException(ex, 500, "UNHANDLED_EXCEPTION_"
+					+ ex.getClass().getName()));
+		}
+		finally {
+			RequestContext.getCurrentContext().unset();
+		}
+	}
+
+	private void postRoute() {
+		try {
+			this.zuulRunner.postRoute();
+		}
+		catch (ZuulException ex) {
+			error(ex);
+		}
+	}
+
+	private void error(ZuulException ex) {
+		RequestContext.getCurrentContext().setThrowable(ex);
+		this.zuulRunner.error();
+	}
+
+}
@@ -23,7 +23,6 @@ import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.ServletWrappingController;
 
 import com.netflix.zuul.context.RequestContext;
-import com.netflix.zuul.http.ZuulServlet;
 
 /**
  * @author Spencer Gibb
@@ -31,7 +30,7 @@ import com.netflix.zuul.http.ZuulServlet;
 public class ZuulController extends ServletWrappingController {
 
 	public ZuulController() {
-		setServletClass(ZuulServlet.class);
+		setServletClass(AsyncZuulServlet.class);
 		setServletName("zuul");
 		setSupportedMethods((String[]) null); // Allow all
 	}
@@ -17,15 +17,23 @@
 package org.springframework.cloud.netflix.zuul.web;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.boot.autoconfigure.web.ErrorController;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator.ProxyRouteSpec;
+import org.springframework.cloud.netflix.zuul.filters.RouteIndex;
 import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
 import org.springframework.web.servlet.handler.AbstractUrlHandlerMapping;
 
 /**
- * MVC HandlerMapping that maps incoming request paths to remote services.
+ * MVC HandlerMapping that maps incoming request paths to remote services. Instead of
+ * registering a handler per route it looks up the route directly. With a
+ * {@link ProxyRouteLocator} the resolved {@link ProxyRouteSpec} is stored in a request
+ * attribute ({@link ProxyRouteLocator#MATCHING_ROUTE_ATTRIBUTE}) for the pre filters.
  *
  * @author Spencer Gibb
  * @author Dave Syer
@@ -38,6 +46,8 @@ public class ZuulHandlerMapping extends AbstractUrlHandlerMapping {
 
 	private ErrorController errorController;
 
+	private volatile RouteIndex<String> routes;
+
 	public ZuulHandlerMapping(RouteLocator routeLocator, ZuulController zuul) {
 		this.routeLocator = routeLocator;
 		this.zuul = zuul;
@@ -55,19 +65,55 @@ public class ZuulHandlerMapping extends AbstractUrlHandlerMapping {
 				&& urlPath.equals(this.errorController.getErrorPath())) {
 			return null;
 		}
-		return super.lookupHandler(urlPath, request);
+		if (this.routeLocator instanceof ProxyRouteLocator) {
+			ProxyRouteSpec route = ((ProxyRouteLocator) this.routeLocator)
+					.getMatchingRoute(urlPath);
+			if (route == null) {
+				request.removeAttribute(ProxyRouteLocator.MATCHING_ROUTE_ATTRIBUTE);
+				return null;
+			}
+			request.setAttribute(ProxyRouteLocator.MATCHING_ROUTE_ATTRIBUTE, route);
+			return buildHandler(((ProxyRouteLocator) this.routeLocator)
+					.getMatchingPattern(urlPath), urlPath);
+		}
+		RouteIndex<String> routes = this.routes;
+		String pattern = routes == null ? null : routes.matchPattern(urlPath);
+		if (pattern == null) {
+			return null;
+		}
+		return buildHandler(pattern, urlPath);
+	}
+
+	/**
+	 * Wrap the controller as {@link AbstractUrlHandlerMapping#lookupHandler} does, so
+	 * that the matching pattern and the path within it are exposed as request
+	 * attributes.
+	 */
+	private Object buildHandler(String pattern, String urlPath) {
+		if (pattern == null) {
+			// the routes changed in the meantime
+			pattern = urlPath;
+		}
+		String pathWithinMapping = getPathMatcher().extractPathWithinPattern(pattern,
+				urlPath);
+		return buildPathExposingHandler(this.zuul, pattern, pathWithinMapping, null);
 	}
 
 	public void registerHandlers() {
-		Collection<String> routes = this.routeLocator.getRoutePaths();
-		if (routes.isEmpty()) {
+		Collection<String> paths = this.routeLocator.getRoutePaths();
+		if (paths.isEmpty()) {
 			this.logger.warn("No routes found from ProxyRouteLocator");
 		}
-		else {
-			for (String url : routes) {
-				registerHandler(url, this.zuul);
-			}
+		if (this.routeLocator instanceof ProxyRouteLocator) {
+			// routes are looked up directly in the locator's current snapshot
+			this.routes = null;
+			return;
+		}
+		Map<String, String> routes = new LinkedHashMap<>();
+		for (String path : paths) {
+			routes.put(path, path);
 		}
+		this.routes = new RouteIndex<>(routes, getPathMatcher());
 	}
 
 }
@@ -22,12 +22,14 @@ import static org.mockito.Mockito.*;
 import com.netflix.client.config.CommonClientConfigKey;
 import com.netflix.client.config.DefaultClientConfigImpl;
 import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.ILoadBalancer;
 import feign.ribbon.LBClient;
 import feign.ribbon.LBClientFactory;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
 
 /**
  * @author Spencer Gibb
@@ -75,4 +77,27 @@ public class CachingLBClientFactoryTests {
 		verify(delegate, times(1)).create("client2");
 	}
 
+	@Test
+	public void cacheRefreshedWhenLoadBalancerReplaced() {
+		SpringClientFactory clientFactory = mock(SpringClientFactory.class);
+		ILoadBalancer first = mock(ILoadBalancer.class);
+		ILoadBalancer second = mock(ILoadBalancer.class);
+		IClientConfig config = new DefaultClientConfigImpl();
+		config.set(CommonClientConfigKey.ConnectTimeout, 1000);
+		config.set(CommonClientConfigKey.ReadTimeout, 500);
+		LBClient client1 = LBClient.create(first, config);
+		LBClient client2 = LBClient.create(second, config);
+		when(delegate.create("client3")).thenReturn(client1, client2);
+		when(clientFactory.getLoadBalancer("client3")).thenReturn(first, second);
+		factory = new CachingLBClientFactory(delegate, clientFactory);
+
+		factory.create("client3");
+		factory.create("client3");
+		verify(delegate, times(1)).create("client3");
+
+		// the client was closed and created again
+		assertSame(second, factory.create("client3").getLoadBalancer());
+		verify(delegate, times(2)).create("client3");
+	}
+
 }
@@ -16,14 +16,22 @@
 
 package org.springframework.cloud.netflix.feign.ribbon;
 
+import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import com.netflix.loadbalancer.*;
 import feign.ribbon.RibbonClient;
 import org.hamcrest.CustomMatcher;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.cloud.netflix.ribbon.LoadBalancerKeyHolder;
 import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
 
 import com.netflix.client.config.CommonClientConfigKey;
@@ -96,6 +104,24 @@ public class FeignRibbonClientTests {
 				any(Options.class));
 	}
 
+	@Test
+	public void loadBalancerKeyFromHeader() throws Exception {
+		final List<Object> keys = new ArrayList<>();
+		when(this.loadBalancer.chooseServer(any())).thenAnswer(new Answer<Server>() {
+			@Override
+			public Server answer(InvocationOnMock invocation) throws Throwable {
+				keys.add(LoadBalancerKeyHolder.getKey());
+				return new Server("foo.com", 8000);
+			}
+		});
+		Request request = new RequestTemplate().method("GET").append("http://foo/")
+				.header("X-Tenant", "tenant1").request();
+		new LoadBalancerKeyClient(this.client, "x-tenant").execute(request,
+				new Options());
+		assertEquals(Arrays.<Object> asList("tenant1"), keys);
+		assertNull(LoadBalancerKeyHolder.getKey());
+	}
+
 	private final static class RequestMatcher extends CustomMatcher<Request> {
 		private String url;
 
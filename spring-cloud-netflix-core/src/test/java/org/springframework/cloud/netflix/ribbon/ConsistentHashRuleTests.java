@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.Server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Dave Syer
+ */
+public class ConsistentHashRuleTests {
+
+	private static final int KEYS = 10000;
+
+	private ConsistentHashRule rule = new ConsistentHashRule();
+
+	private BaseLoadBalancer balancer = new BaseLoadBalancer();
+
+	private List<Server> servers = new ArrayList<>();
+
+	@Before
+	public void init() {
+		for (int i = 0; i < 5; i++) {
+			this.servers.add(new Server("host" + i, 8080));
+		}
+		this.balancer.setServersList(this.servers);
+		this.rule.setLoadBalancer(this.balancer);
+	}
+
+	@After
+	public void close() {
+		this.balancer.shutdown();
+		LoadBalancerKeyHolder.resetKey();
+	}
+
+	@Test
+	public void sameKeySameServer() {
+		Server server = this.rule.choose("tenant1");
+		for (int i = 0; i < 10; i++) {
+			assertSame(server, this.rule.choose("tenant1"));
+		}
+	}
+
+	@Test
+	public void keysSpreadOverServers() {
+		Map<Server, Integer> counts = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			Server server = this.rule.choose("user" + i);
+			Integer count = counts.get(server);
+			counts.put(server, count == null ? 1 : count + 1);
+		}
+		assertEquals(this.servers.size(), counts.size());
+		for (Integer count : counts.values()) {
+			// 2000 each on average
+			assertTrue("Uneven spread: " + counts, count > 1400 && count < 2600);
+		}
+	}
+
+	@Test
+	public void onlyKeysOfRemovedServerMove() {
+		Map<String, Server> before = choose();
+		Server removed = this.servers.remove(2);
+		this.balancer.setServersList(this.servers);
+		Map<String, Server> after = choose();
+		int moved = 0;
+		for (String key : before.keySet()) {
+			if (before.get(key) != after.get(key)) {
+				assertSame(removed, before.get(key));
+				moved++;
+			}
+		}
+		assertTrue("Too many keys moved: " + moved, moved < KEYS / 3);
+	}
+
+	@Test
+	public void keyFromHolderWhenNoneGiven() {
+		Server server = this.rule.choose("tenant2");
+		LoadBalancerKeyHolder.setKey("tenant2");
+		assertSame(server, this.rule.choose(null));
+		assertSame(server, this.rule.choose("default"));
+	}
+
+	@Test
+	public void randomWithoutKey() {
+		Set<Server> chosen = new HashSet<>();
+		for (int i = 0; i < 200; i++) {
+			chosen.add(this.rule.choose(null));
+		}
+		assertTrue("Not random: " + chosen, chosen.size() > 1);
+	}
+
+	private Map<String, Server> choose() {
+		Map<String, Server> chosen = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			chosen.put("user" + i, this.rule.choose("user" + i));
+		}
+		return chosen;
+	}
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.loadbalancer.IPing;
+import com.netflix.loadbalancer.Server;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Dave Syer
+ */
+public class HealthCheckPingTests {
+
+	private final AtomicInteger status = new AtomicInteger(200);
+
+	private final HealthChecker checker = new HealthChecker();
+
+	private HttpServer server;
+
+	private HealthCheckPing ping;
+
+	private Server target;
+
+	@Before
+	public void init() throws Exception {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/health", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(HealthCheckPingTests.this.status.get(), -1);
+				exchange.close();
+			}
+		});
+		this.server.start();
+		this.target = new Server("localhost", this.server.getAddress().getPort());
+	}
+
+	@After
+	public void close() {
+		if (this.ping != null) {
+			this.ping.close();
+		}
+		this.server.stop(0);
+		this.checker.close();
+	}
+
+	@Test
+	public void healthyServerAlive() throws Exception {
+		this.ping = createPing(null);
+		assertTrue(this.ping.isAlive(this.target));
+		waitFor(2);
+		assertTrue(this.ping.isAlive(this.target));
+		assertEquals(0, this.ping.failures.getValue().intValue());
+	}
+
+	@Test
+	public void markedDownAndUpAgain() throws Exception {
+		this.ping = createPing(null);
+		this.status.set(503);
+		this.ping.isAlive(this.target);
+		waitFor(3);
+		assertFalse(this.ping.isAlive(this.target));
+		assertEquals(1, this.ping.markedDown.getValue().intValue());
+		this.status.set(200);
+		long probes = this.ping.probes.getValue().longValue();
+		waitFor(probes + 3);
+		assertTrue(this.ping.isAlive(this.target));
+		assertEquals(1, this.ping.markedUp.getValue().intValue());
+	}
+
+	@Test
+	public void connectionRefused() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		this.ping = createPing(null);
+		Server closed = new Server("localhost", port);
+		this.ping.isAlive(closed);
+		waitFor(3);
+		assertFalse(this.ping.isAlive(closed));
+	}
+
+	@Test
+	public void noResponseTimesOut() throws Exception {
+		// accepts connections (in the backlog) but never responds
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			this.ping = createPing(null);
+			Server silent = new Server("localhost", socket.getLocalPort());
+			this.ping.isAlive(silent);
+			waitFor(3);
+			assertFalse(this.ping.isAlive(silent));
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void secureServerOnlyConnected() throws Exception {
+		// accepts connections but never speaks HTTP (like a TLS port)
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			DefaultClientConfigImpl config = createConfig();
+			config.setProperty(CommonClientConfigKey.IsSecure, true);
+			this.ping = new HealthCheckPing(this.checker, config, null);
+			Server secure = new Server("localhost", socket.getLocalPort());
+			this.ping.isAlive(secure);
+			waitFor(3);
+			assertTrue(this.ping.isAlive(secure));
+			assertEquals(0, this.ping.failures.getValue().intValue());
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void delegateHasToPassToo() throws Exception {
+		IPing delegate = mock(IPing.class);
+		given(delegate.isAlive(this.target)).willReturn(false);
+		this.ping = createPing(delegate);
+		assertFalse(this.ping.isAlive(this.target));
+	}
+
+	@Test
+	public void checkerSurvivesErrors() throws Exception {
+		final CountDownLatch failed = new CountDownLatch(1);
+		this.checker.probe(this.server.getAddress(), "/health", 200,
+				new HealthChecker.Callback() {
+					@Override
+					public void done(boolean healthy, long millis) {
+						failed.countDown();
+						throw new AssertionError("Planned");
+					}
+				});
+		assertTrue(failed.await(10, TimeUnit.SECONDS));
+		this.ping = createPing(null);
+		this.ping.isAlive(this.target);
+		waitFor(2);
+		assertEquals(0, this.ping.failures.getValue().intValue());
+	}
+
+	private HealthCheckPing createPing(IPing delegate) {
+		return new HealthCheckPing(this.checker, createConfig(), delegate);
+	}
+
+	private DefaultClientConfigImpl createConfig() {
+		DefaultClientConfigImpl config = new DefaultClientConfigImpl();
+		config.setClientName("healthy");
+		config.setProperty(HealthCheckPing.INTERVAL, 20);
+		config.setProperty(HealthCheckPing.TIMEOUT, 200);
+		return config;
+	}
+
+	private void waitFor(long probes) throws InterruptedException {
+		long end = System.currentTimeMillis() + 10000;
+		while (this.ping.probes.getValue().longValue() < probes
+				&& System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertTrue("Not enough probes", this.ping.probes.getValue().longValue() >= probes);
+	}
+
+}
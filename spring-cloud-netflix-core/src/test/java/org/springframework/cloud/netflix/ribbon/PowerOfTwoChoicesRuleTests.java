@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.netflix.ribbon.PowerOfTwoChoicesRule.Ewma;
+
+import com.netflix.config.ConfigurationManager;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.LoadBalancerStats;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerStats;
+import com.netflix.loadbalancer.ZoneAvoidanceRule;
+import com.netflix.loadbalancer.ZoneAwareLoadBalancer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Dave Syer
+ */
+public class PowerOfTwoChoicesRuleTests {
+
+	private static final long[] SERVICE_TIMES = { 10, 10, 10, 10, 30 };
+
+	private long now = 1000;
+
+	private PowerOfTwoChoicesRule rule = new PowerOfTwoChoicesRule(1000) {
+		@Override
+		long now() {
+			return PowerOfTwoChoicesRuleTests.this.now;
+		}
+	};
+
+	private BaseLoadBalancer balancer;
+
+	private Server fast = new Server("fast", 80);
+
+	private Server slow = new Server("slow", 80);
+
+	@Before
+	public void init() {
+		this.balancer = createLoadBalancer(Arrays.asList(this.fast, this.slow));
+		this.rule.setLoadBalancer(this.balancer);
+	}
+
+	@After
+	public void close() {
+		this.balancer.shutdown();
+		ConfigurationManager.getConfigInstance().clearProperty(
+				"p2c.ribbon.NFLoadBalancerRuleClassName");
+	}
+
+	@Test
+	public void prefersFewerRequestsInFlight() {
+		getStats(this.slow).incrementActiveRequestsCount();
+		for (int i = 0; i < 10; i++) {
+			assertSame(this.fast, this.rule.choose(null));
+		}
+	}
+
+	@Test
+	public void prefersLowerResponseTimes() {
+		for (int i = 0; i < 10; i++) {
+			complete(getStats(this.fast), 10);
+			complete(getStats(this.slow), 100);
+		}
+		for (int i = 0; i < 10; i++) {
+			assertSame(this.fast, this.rule.choose(null));
+		}
+	}
+
+	@Test
+	public void recentResponseTimesWeighMore() {
+		Ewma ewma = Ewma.EMPTY.update(10, 1000, 0, 1000);
+		assertEquals(100, ewma.getValue(), 0.01);
+		// 10 more responses averaging 20ms, one decay time later
+		assertEquals(100 / Math.E + 20 * (1 - 1 / Math.E),
+				ewma.update(20, 1200, 1000, 1000).getValue(), 0.01);
+	}
+
+	@Test
+	public void selectedWithClientProperty() {
+		ConfigurationManager.getConfigInstance().setProperty(
+				"p2c.ribbon.NFLoadBalancerRuleClassName",
+				PowerOfTwoChoicesRule.class.getName());
+		SpringClientFactory factory = new SpringClientFactory();
+		ZoneAwareLoadBalancer<?> p2c = (ZoneAwareLoadBalancer<?>) factory
+				.getLoadBalancer("p2c");
+		ZoneAwareLoadBalancer<?> other = (ZoneAwareLoadBalancer<?>) factory
+				.getLoadBalancer("other");
+		assertTrue(p2c.getRule() instanceof PowerOfTwoChoicesRule);
+		assertTrue(other.getRule() instanceof ZoneAvoidanceRule);
+		factory.destroy();
+	}
+
+	@Test
+	public void lowerTailLatencyWithHeterogeneousServers() {
+		long p2c = simulate(this.rule);
+		long zoneAvoidance = simulate(new ZoneAvoidanceRule());
+		assertTrue("Wrong 99th percentiles: " + p2c + " and " + zoneAvoidance,
+				p2c * 2 < zoneAvoidance);
+	}
+
+	/**
+	 * Send one request per millisecond to 5 servers (one of them much slower than the
+	 * others, and all of them slower with more requests in flight), and return the 99th
+	 * percentile of the response times.
+	 */
+	private long simulate(AbstractLoadBalancerRule rule) {
+		List<Server> servers = new ArrayList<>();
+		for (int i = 0; i < SERVICE_TIMES.length; i++) {
+			servers.add(new Server("server" + i, 80));
+		}
+		BaseLoadBalancer balancer = createLoadBalancer(servers);
+		rule.setLoadBalancer(balancer);
+		LoadBalancerStats stats = balancer.getLoadBalancerStats();
+		int[] inFlight = new int[servers.size()];
+		PriorityQueue<long[]> responses = new PriorityQueue<>(100,
+				new Comparator<long[]>() {
+					@Override
+					public int compare(long[] one, long[] other) {
+						return Long.compare(one[0], other[0]);
+					}
+				});
+		List<Long> times = new ArrayList<>();
+		for (long time = 0; time < 20000; time++) {
+			this.now = time;
+			while (!responses.isEmpty() && responses.peek()[0] <= time) {
+				long[] response = responses.poll();
+				int index = (int) response[1];
+				ServerStats serverStats = stats.getSingleServerStat(servers.get(index));
+				serverStats.decrementActiveRequestsCount();
+				complete(serverStats, response[2]);
+				inFlight[index]--;
+			}
+			Server server = rule.choose(null);
+			int index = servers.indexOf(server);
+			long responseTime = SERVICE_TIMES[index] * (8 + inFlight[index]) / 8;
+			inFlight[index]++;
+			stats.getSingleServerStat(server).incrementActiveRequestsCount();
+			responses.add(new long[] { time + responseTime, index, responseTime });
+			if (time >= 5000) {
+				times.add(responseTime);
+			}
+		}
+		balancer.shutdown();
+		Collections.sort(times);
+		return times.get(times.size() * 99 / 100);
+	}
+
+	private BaseLoadBalancer createLoadBalancer(List<Server> servers) {
+		BaseLoadBalancer balancer = new BaseLoadBalancer();
+		balancer.setServersList(servers);
+		return balancer;
+	}
+
+	private void complete(ServerStats stats, long responseTime) {
+		// like RibbonLoadBalancerContext.noteRequestCompletion()
+		stats.incrementNumRequests();
+		stats.noteResponseTime(responseTime);
+	}
+
+	private ServerStats getStats(Server server) {
+		return this.balancer.getLoadBalancerStats().getSingleServerStat(server);
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.net.ConnectException;
+
+import org.junit.Test;
+
+import com.netflix.client.RequestSpecificRetryHandler;
+import com.netflix.client.config.DefaultClientConfigImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Dave Syer
+ */
+public class RetryBudgetTests {
+
+	private long now = 1000;
+
+	private RetryBudget budget = new RetryBudget(true, 50, 0) {
+		@Override
+		long now() {
+			return RetryBudgetTests.this.now;
+		}
+	};
+
+	@Test
+	public void retriesLimitedToPercentOfSuccesses() {
+		for (int i = 0; i < 4; i++) {
+			this.budget.success();
+		}
+		assertTrue(this.budget.tryRetry());
+		assertTrue(this.budget.tryRetry());
+		assertFalse(this.budget.tryRetry());
+		assertEquals(2, this.budget.retries.getValue().intValue());
+		assertEquals(1, this.budget.exhausted.getValue().intValue());
+	}
+
+	@Test
+	public void oldRequestsLeaveTheWindow() {
+		for (int i = 0; i < 4; i++) {
+			this.budget.success();
+		}
+		assertTrue(this.budget.tryRetry());
+		this.now += 5;
+		this.budget.success();
+		this.budget.success();
+		assertTrue(this.budget.tryRetry());
+		assertTrue(this.budget.tryRetry());
+		assertFalse(this.budget.tryRetry());
+		this.now += 6;
+		// only the last two successes and retries are left
+		assertFalse(this.budget.tryRetry());
+		for (int i = 0; i < 4; i++) {
+			this.budget.success();
+		}
+		assertTrue(this.budget.tryRetry());
+	}
+
+	@Test
+	public void minimumRetriesWithoutTraffic() {
+		RetryBudget budget = new RetryBudget(true, 20, 1);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(budget.tryRetry());
+		}
+		assertFalse(budget.tryRetry());
+	}
+
+	@Test
+	public void disabledBudgetAlwaysAllowsRetries() {
+		DefaultClientConfigImpl config = new DefaultClientConfigImpl();
+		config.setProperty(RetryBudget.ENABLED, "false");
+		RetryBudget budget = new RetryBudget(config);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(budget.tryRetry());
+		}
+	}
+
+	@Test
+	public void wrappedHandlerConsultsBudget() {
+		RequestSpecificRetryHandler handler = this.budget
+				.wrap(new RequestSpecificRetryHandler(true, false));
+		this.budget.success();
+		this.budget.success();
+		assertFalse(handler.isRetriableException(new IllegalStateException(), true));
+		assertEquals(0, this.budget.retries.getValue().intValue());
+		assertTrue(handler.isRetriableException(new ConnectException(), true));
+		assertFalse(handler.isRetriableException(new ConnectException(), true));
+	}
+
+}
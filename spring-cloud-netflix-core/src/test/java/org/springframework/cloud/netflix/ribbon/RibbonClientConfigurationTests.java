@@ -18,10 +18,18 @@ package org.springframework.cloud.netflix.ribbon;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
 
 import com.netflix.client.config.CommonClientConfigKey;
 import com.netflix.client.config.DefaultClientConfigImpl;
 import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.NoOpPing;
+import com.netflix.loadbalancer.RoundRobinRule;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerList;
 import org.junit.Test;
 
 /**
@@ -40,6 +48,35 @@ public class RibbonClientConfigurationTests {
 		assertThat(config.count, is(equalTo(1)));
 	}
 
+	@Test
+	public void unchangedServersNotUpdated() {
+		Server first = new Server("host1", 8080);
+		Server second = new Server("host2", 8080);
+		@SuppressWarnings("unchecked")
+		ServerList<Server> serverList = mock(ServerList.class);
+		// the first update is in the constructor
+		given(serverList.getUpdatedListOfServers()).willReturn(
+				Arrays.asList(first, second), Arrays.asList(second, first),
+				Arrays.asList(first));
+		DefaultClientConfigImpl config = new DefaultClientConfigImpl();
+		config.loadDefaultValues();
+		config.setClientName("unchanged");
+		SkipUnchangedZoneAwareLoadBalancer<Server> balancer = new SkipUnchangedZoneAwareLoadBalancer<>(
+				config, new RoundRobinRule(), new NoOpPing(), serverList, null);
+		try {
+			balancer.markServerDown(first);
+			balancer.updateListOfServers();
+			// the update was skipped, so the server was not marked alive again
+			assertThat(first.isAlive(), is(false));
+			balancer.updateListOfServers();
+			assertThat(first.isAlive(), is(true));
+			assertThat(balancer.getServerList(false), contains(first));
+		}
+		finally {
+			balancer.shutdown();
+		}
+	}
+
 	static class CountingConfig extends DefaultClientConfigImpl {
 		int count = 0;
 	}
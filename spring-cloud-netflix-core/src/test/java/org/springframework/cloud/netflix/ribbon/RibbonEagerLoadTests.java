@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.test.EnvironmentTestUtils;
+import org.springframework.cloud.netflix.archaius.ArchaiusAutoConfiguration;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Dave Syer
+ */
+public class RibbonEagerLoadTests {
+
+	private AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+
+	@After
+	public void close() {
+		this.context.close();
+	}
+
+	@Test
+	public void disabledByDefault() {
+		this.context.register(TestConfiguration.class);
+		this.context.refresh();
+		assertEquals(0, this.context.getBeanNamesForType(RibbonEagerLoad.class).length);
+	}
+
+	@Test
+	public void clientsCreatedOnStartup() {
+		EnvironmentTestUtils.addEnvironment(this.context,
+				"ribbon.eager-load.enabled:true", "ribbon.eager-load.clients:bar");
+		this.context.register(TestConfiguration.class);
+		this.context.refresh();
+		assertEquals("[bar, foo, baz]", this.context.getBean(RibbonEagerLoad.class)
+				.getTimings().keySet().toString());
+	}
+
+	@Configuration
+	@RibbonClient("foo")
+	@Import({ ArchaiusAutoConfiguration.class, RibbonAutoConfiguration.class })
+	protected static class TestConfiguration {
+
+		@Bean
+		public RibbonClientNames names() {
+			return new RibbonClientNames() {
+				@Override
+				public Collection<String> getClientNames() {
+					return Arrays.asList("baz");
+				}
+			};
+		}
+
+	}
+
+}
@@ -16,18 +16,37 @@
 
 package org.springframework.cloud.netflix.ribbon;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.http.client.params.ClientPNames;
 import org.apache.http.client.params.CookiePolicy;
 import org.junit.Test;
 import org.springframework.boot.test.EnvironmentTestUtils;
 import org.springframework.cloud.netflix.archaius.ArchaiusAutoConfiguration;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.netflix.client.DefaultLoadBalancerRetryHandler;
+import com.netflix.http4.NFHttpClient;
+import com.netflix.http4.NFHttpClientFactory;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.IPing;
+import com.netflix.loadbalancer.PingUrl;
+import com.netflix.loadbalancer.ZoneAwareLoadBalancer;
 import com.netflix.niws.client.http.RestClient;
 import com.sun.jersey.client.apache4.ApacheHttpClient4;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Dave Syer
@@ -58,4 +77,140 @@ public class SpringClientFactoryTests {
 				.getHttpClient().getParams().getParameter(ClientPNames.COOKIE_POLICY));
 		this.factory.destroy();
 	}
+
+	@Test
+	public void testInstancesCached() {
+		RestClient client = this.factory.getClient("foo", RestClient.class);
+		assertSame(client, this.factory.getClient("foo", RestClient.class));
+		ILoadBalancer balancer = this.factory.getLoadBalancer("foo");
+		assertSame(balancer, this.factory.getLoadBalancer("foo"));
+		assertNotSame(balancer, this.factory.getLoadBalancer("bar"));
+		this.factory.destroy();
+	}
+
+	@Test
+	public void testCacheInvalidatedWhenContextClosed() {
+		ILoadBalancer balancer = this.factory.getLoadBalancer("foo");
+		@SuppressWarnings("unchecked")
+		Map<String, AnnotationConfigApplicationContext> contexts = (Map<String, AnnotationConfigApplicationContext>) ReflectionTestUtils
+				.getField(this.factory, "contexts");
+		contexts.get("foo").close();
+		assertNotSame(balancer, this.factory.getLoadBalancer("foo"));
+		this.factory.destroy();
+	}
+
+	@Test
+	public void testLoadBalancersOfLiveClients() {
+		assertTrue(this.factory.getLoadBalancers().isEmpty());
+		ILoadBalancer balancer = this.factory.getLoadBalancer("foo");
+		this.factory.setLightweight(true);
+		ILoadBalancer other = this.factory.getLoadBalancer("bar");
+		Map<String, ILoadBalancer> balancers = this.factory.getLoadBalancers();
+		assertEquals("[foo, bar]", balancers.keySet().toString());
+		assertSame(balancer, balancers.get("foo"));
+		assertSame(other, balancers.get("bar"));
+		this.factory.destroy();
+	}
+
+	@Test
+	public void testWarmUp() {
+		Map<String, Long> timings = this.factory.warmUp(
+				Arrays.asList("foo", "bar", "foo"), 2);
+		assertEquals("[foo, bar]", timings.keySet().toString());
+		@SuppressWarnings("unchecked")
+		Map<String, AnnotationConfigApplicationContext> contexts = (Map<String, AnnotationConfigApplicationContext>) ReflectionTestUtils
+				.getField(this.factory, "contexts");
+		assertNotNull(contexts.get("foo"));
+		assertNotNull(contexts.get("bar"));
+		this.factory.destroy();
+	}
+
+	@Test
+	public void testLightweightClient() {
+		this.factory.setLightweight(true);
+		ILoadBalancer balancer = this.factory.getLoadBalancer("foo");
+		assertTrue(balancer instanceof ZoneAwareLoadBalancer);
+		assertEquals("foo", this.factory.getClientConfig("foo").getClientName());
+		RestClient client = this.factory.getClient("foo", RestClient.class);
+		assertSame(balancer, client.getLoadBalancer());
+		assertSame(balancer,
+				this.factory.getLoadBalancerContext("foo").getLoadBalancer());
+		assertNull(getContexts().get("foo"));
+		this.factory.destroy();
+	}
+
+	@Test
+	public void testLightweightWithCustomConfiguration() {
+		this.factory.setLightweight(true);
+		this.factory.setConfigurations(Collections
+				.singletonList(new RibbonClientSpecification("bar",
+						new Class<?>[] { PingConfiguration.class })));
+		this.factory.getLoadBalancer("foo");
+		ZoneAwareLoadBalancer<?> balancer = (ZoneAwareLoadBalancer<?>) this.factory
+				.getLoadBalancer("bar");
+		assertTrue(balancer.getPing() instanceof PingUrl);
+		assertNull(getContexts().get("foo"));
+		assertNotNull(getContexts().get("bar"));
+		this.factory.destroy();
+	}
+
+	@Test
+	public void testIdleClientEvicted() {
+		this.factory.setIdleTimeout(60000);
+		ILoadBalancer balancer = this.factory.getLoadBalancer("foo");
+		RetryBudget budget = this.factory.getRetryBudget("foo");
+		assertNotNull(ReflectionTestUtils.getField(budget, "monitorName"));
+		this.factory.getLoadBalancer("bar");
+		assertEquals(0, this.factory.evictIdleClients());
+		@SuppressWarnings("unchecked")
+		Map<String, AtomicLong> lastUsed = (Map<String, AtomicLong>) ReflectionTestUtils
+				.getField(this.factory, "lastUsed");
+		lastUsed.get("foo").set(0);
+		assertEquals(1, this.factory.evictIdleClients());
+		assertNull(getContexts().get("foo"));
+		// the metrics of the budget are unregistered with the context
+		assertNull(ReflectionTestUtils.getField(budget, "monitorName"));
+		assertEquals(1, this.factory.live.getValue().intValue());
+		assertEquals(1, this.factory.evicted.getValue().intValue());
+		assertNotSame(balancer, this.factory.getLoadBalancer("foo"));
+		assertEquals(2, this.factory.live.getValue().intValue());
+		this.factory.destroy();
+	}
+
+	@Test
+	public void testIdleLightweightClientEvicted() {
+		this.factory.setLightweight(true);
+		this.factory.setIdleTimeout(60000);
+		RestClient client = this.factory.getClient("foo", RestClient.class);
+		RetryBudget budget = this.factory.getRetryBudget("foo");
+		NFHttpClient pool = NFHttpClientFactory.getNamedNFHttpClient("foo");
+		@SuppressWarnings("unchecked")
+		Map<String, AtomicLong> lastUsed = (Map<String, AtomicLong>) ReflectionTestUtils
+				.getField(this.factory, "lastUsed");
+		lastUsed.get("foo").set(0);
+		assertEquals(1, this.factory.evictIdleClients());
+		assertEquals(0, this.factory.live.getValue().intValue());
+		assertNull(ReflectionTestUtils.getField(budget, "monitorName"));
+		// the connection pool was shut down (and a new one is created)
+		assertNotSame(pool, NFHttpClientFactory.getNamedNFHttpClient("foo"));
+		assertNotSame(client, this.factory.getClient("foo", RestClient.class));
+		this.factory.destroy();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, AnnotationConfigApplicationContext> getContexts() {
+		return (Map<String, AnnotationConfigApplicationContext>) ReflectionTestUtils
+				.getField(this.factory, "contexts");
+	}
+
+	@Configuration
+	protected static class PingConfiguration {
+
+		@Bean
+		public IPing ribbonPing() {
+			return new PingUrl();
+		}
+
+	}
+
 }
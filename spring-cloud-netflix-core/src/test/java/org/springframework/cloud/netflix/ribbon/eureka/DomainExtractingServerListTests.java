@@ -33,6 +33,8 @@ import com.netflix.niws.loadbalancer.DiscoveryEnabledServer;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
@@ -91,6 +93,33 @@ public class DomainExtractingServerListTests {
 		assertEquals("hostPort was wrong", HOST_NAME + ":" + PORT, des.getHostPort());
 	}
 
+	@Test
+	public void testUnchangedServersKept() {
+		DiscoveryEnabledServer first = createServer("host1", 1L);
+		DiscoveryEnabledServer second = createServer("host2", 1L);
+		DomainExtractingServerList serverList = getDomainExtractingServerList(
+				Arrays.asList(first, second), Arrays.asList(createServer("host2", 1L),
+						createServer("host1", 1L)));
+		List<DiscoveryEnabledServer> servers = serverList.getInitialListOfServers();
+		assertSame("list was not kept", servers, serverList.getUpdatedListOfServers());
+	}
+
+	@Test
+	public void testChangedServerRebuilt() {
+		DiscoveryEnabledServer first = createServer("host1", 1L);
+		DiscoveryEnabledServer second = createServer("host2", 1L);
+		DomainExtractingServerList serverList = getDomainExtractingServerList(
+				Arrays.asList(first, second), Arrays.asList(first,
+						createServer("host2", 2L), createServer("host3", 1L)));
+		List<DiscoveryEnabledServer> servers = serverList.getInitialListOfServers();
+		List<DiscoveryEnabledServer> updated = serverList.getUpdatedListOfServers();
+		assertEquals("servers was not size 3", 3, updated.size());
+		assertSame("unchanged server was not kept", servers.get(0), updated.get(0));
+		assertNotSame("changed server was kept", servers.get(1), updated.get(1));
+		assertEquals("host2:" + PORT, updated.get(1).getHostPort());
+		assertEquals("host3:" + PORT, updated.get(2).getHostPort());
+	}
+
 	protected DomainExtractingServer assertDomainExtractingServer(
 			List<DiscoveryEnabledServer> servers, String zone) {
 		Server actualServer = servers.get(0);
@@ -115,6 +144,31 @@ public class DomainExtractingServerListTests {
 		assertEquals("hostPort was wrong", IP_ADDR + ":" + PORT, des.getHostPort());
 	}
 
+	private DomainExtractingServerList getDomainExtractingServerList(
+			List<DiscoveryEnabledServer> initial, List<DiscoveryEnabledServer> updated) {
+		@SuppressWarnings("unchecked")
+		ServerList<DiscoveryEnabledServer> originalServerList = mock(ServerList.class);
+		given(originalServerList.getInitialListOfServers()).willReturn(initial);
+		given(originalServerList.getUpdatedListOfServers()).willReturn(updated);
+		return new DomainExtractingServerList(originalServerList,
+				new DefaultClientConfigImpl(), false);
+	}
+
+	private DiscoveryEnabledServer createServer(String host, long lastUpdated) {
+		// a new instance each time, like the ones from Eureka
+		DiscoveryEnabledServer server = mock(DiscoveryEnabledServer.class);
+		InstanceInfo instanceInfo = mock(InstanceInfo.class);
+		given(server.getInstanceInfo()).willReturn(instanceInfo);
+		given(server.getHost()).willReturn(host);
+		given(instanceInfo.getId()).willReturn(host);
+		given(instanceInfo.getLastUpdatedTimestamp()).willReturn(lastUpdated);
+		given(instanceInfo.getMetadata()).willReturn(
+				Collections.<String, String> emptyMap());
+		given(instanceInfo.getHostName()).willReturn(host);
+		given(instanceInfo.getPort()).willReturn(PORT);
+		return server;
+	}
+
 	protected DomainExtractingServerList getDomainExtractingServerList(
 			DefaultClientConfigImpl config, boolean approximateZoneFromHostname) {
 		DiscoveryEnabledServer server = mock(DiscoveryEnabledServer.class);
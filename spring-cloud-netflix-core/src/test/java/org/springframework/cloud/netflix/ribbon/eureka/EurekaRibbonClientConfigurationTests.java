@@ -21,11 +21,16 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.springframework.cloud.netflix.eureka.EurekaClientConfigBean;
 import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.netflix.ribbon.eureka.EurekaRibbonClientConfiguration.DiscoveryHealthCheckPing;
 
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.PortType;
+import com.netflix.client.config.DefaultClientConfigImpl;
 import com.netflix.config.ConfigurationManager;
 import com.netflix.config.DeploymentContext.ContextKey;
 import com.netflix.config.DynamicStringProperty;
 import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
 import com.netflix.loadbalancer.ZoneAwareLoadBalancer;
 import com.netflix.niws.loadbalancer.DiscoveryEnabledServer;
 
@@ -77,4 +82,22 @@ public class EurekaRibbonClientConfigurationTests {
 		assertEquals("property has wrong value", value, property.get());
 	}
 
+	@Test
+	public void healthChecksKnowSecurePorts() {
+		DefaultClientConfigImpl config = new DefaultClientConfigImpl();
+		config.setClientName("secure");
+		DiscoveryHealthCheckPing ping = new DiscoveryHealthCheckPing(config, null);
+		try {
+			InstanceInfo info = InstanceInfo.Builder.newBuilder().setAppName("secure")
+					.setHostName("localhost").setPort(8080).setSecurePort(8443)
+					.enablePort(PortType.SECURE, true).build();
+			assertTrue(ping.isSecure(new DiscoveryEnabledServer(info, true)));
+			assertFalse(ping.isSecure(new DiscoveryEnabledServer(info, false)));
+			assertFalse(ping.isSecure(new Server("localhost", 8443)));
+		}
+		finally {
+			ping.close();
+		}
+	}
+
 }
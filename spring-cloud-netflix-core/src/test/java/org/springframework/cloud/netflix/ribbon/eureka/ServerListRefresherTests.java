@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.ribbon.eureka;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.netflix.loadbalancer.DynamicServerListLoadBalancer;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Dave Syer
+ */
+public class ServerListRefresherTests {
+
+	private SpringClientFactory factory = mock(SpringClientFactory.class);
+
+	@SuppressWarnings("unchecked")
+	private DynamicServerListLoadBalancer<Server> foo = mock(DynamicServerListLoadBalancer.class);
+
+	@SuppressWarnings("unchecked")
+	private DynamicServerListLoadBalancer<Server> bar = mock(DynamicServerListLoadBalancer.class);
+
+	private ServerListRefresher refresher = new ServerListRefresher(this.factory);
+
+	@Before
+	public void init() {
+		Map<String, ILoadBalancer> balancers = new LinkedHashMap<>();
+		balancers.put("foo", this.foo);
+		balancers.put("bar", this.bar);
+		balancers.put("other", mock(ILoadBalancer.class));
+		given(this.factory.getLoadBalancers()).willReturn(balancers);
+	}
+
+	@After
+	public void close() {
+		this.refresher.destroy();
+	}
+
+	@Test
+	public void refreshesAllLoadBalancers() {
+		doThrow(new IllegalStateException("Planned")).when(this.foo)
+				.updateListOfServers();
+		assertEquals(1, this.refresher.refresh());
+		verify(this.foo).updateListOfServers();
+		verify(this.bar).updateListOfServers();
+		verify(this.bar, never()).stopServerListRefreshing();
+	}
+
+	@Test
+	public void stopsPolling() {
+		this.refresher.setPolling(false);
+		this.refresher.refresh();
+		verify(this.foo).stopServerListRefreshing();
+		verify(this.bar).stopServerListRefreshing();
+	}
+
+	@Test
+	public void stopsPollingWhenClientContextIsRefreshed() {
+		this.refresher.setPolling(false);
+		StaticApplicationContext context = new StaticApplicationContext();
+		context.getBeanFactory().registerSingleton("foo", this.foo);
+		this.refresher.onApplicationEvent(new ContextRefreshedEvent(context));
+		verify(this.foo).stopServerListRefreshing();
+		verify(this.foo, never()).updateListOfServers();
+		verify(this.bar, never()).stopServerListRefreshing();
+	}
+
+	@Test
+	public void keepsPollingWhenClientContextIsRefreshed() {
+		StaticApplicationContext context = new StaticApplicationContext();
+		context.getBeanFactory().registerSingleton("foo", this.foo);
+		this.refresher.onApplicationEvent(new ContextRefreshedEvent(context));
+		verify(this.foo, never()).stopServerListRefreshing();
+	}
+
+	@Test
+	public void refreshesAtSafetyInterval() {
+		this.refresher.setSafetyRefreshInterval(20);
+		this.refresher.afterPropertiesSet();
+		verify(this.foo, timeout(1000).atLeast(2)).updateListOfServers();
+	}
+
+	@Test
+	public void refreshesOnceForEachRegistryVersion() throws Exception {
+		this.refresher.setDelay(0);
+		this.refresher.onApplicationEvent(new HeartbeatEvent(this, 1L));
+		verify(this.foo, timeout(1000)).updateListOfServers();
+		this.refresher.onApplicationEvent(new HeartbeatEvent(this, 1L));
+		this.refresher.onApplicationEvent(new HeartbeatEvent(this, 2L));
+		verify(this.foo, timeout(1000).times(2)).updateListOfServers();
+		// the same version again is ignored
+		Thread.sleep(100L);
+		verify(this.foo, times(2)).updateListOfServers();
+	}
+
+	@Test
+	public void waitsForRegistryToCatchUp() throws Exception {
+		final AtomicReference<Long> registry = new AtomicReference<>(1L);
+		this.refresher = new ServerListRefresher(this.factory) {
+			@Override
+			protected Object getRegistryVersion() {
+				return registry.get();
+			}
+		};
+		this.refresher.setDelay(20);
+		this.refresher.onApplicationEvent(new HeartbeatEvent(this, 2L));
+		Thread.sleep(100L);
+		verify(this.foo, never()).updateListOfServers();
+		registry.set(2L);
+		verify(this.foo, timeout(1000)).updateListOfServers();
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.TestRestTemplate;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = AsyncZuulProxyApplication.class)
+@WebAppConfiguration
+@IntegrationTest({ "server.port: 0", "zuul.host.max-async-request-size: 10" })
+@DirtiesContext
+public class AsyncZuulProxyApplicationTests {
+
+	@Value("${local.server.port}")
+	private int port;
+
+	@Autowired
+	private ProxyRouteLocator routes;
+
+	@Autowired
+	private RoutesEndpoint endpoint;
+
+	@Before
+	public void init() {
+		ZuulRoute route = new ZuulRoute("async", "/async/**", null, "http://localhost:"
+				+ this.port + "/local", true, null);
+		route.setAsync(true);
+		this.routes.addRoute(route);
+		this.endpoint.reset();
+	}
+
+	@Test
+	public void getViaAsyncRoute() {
+		ResponseEntity<String> result = new TestRestTemplate().exchange(
+				"http://localhost:" + this.port + "/async/1", HttpMethod.GET,
+				new HttpEntity<>((Void) null), String.class);
+		assertEquals(HttpStatus.OK, result.getStatusCode());
+		assertEquals("Gotten 1!", result.getBody());
+	}
+
+	@Test
+	public void postFiltersWaitForRouteFilters() {
+		ResponseEntity<String> result = new TestRestTemplate().exchange(
+				"http://localhost:" + this.port + "/async/1", HttpMethod.GET,
+				new HttpEntity<>((Void) null), String.class);
+		assertEquals(HttpStatus.OK, result.getStatusCode());
+		assertEquals("true", result.getHeaders().getFirst("X-Routed"));
+	}
+
+	@Test
+	public void postViaAsyncRoute() {
+		ResponseEntity<String> result = new TestRestTemplate().exchange(
+				"http://localhost:" + this.port + "/async/1", HttpMethod.POST,
+				new HttpEntity<>("hello"), String.class);
+		assertEquals(HttpStatus.OK, result.getStatusCode());
+		assertEquals("Posted 1 hello!", result.getBody());
+		assertEquals("true", result.getHeaders().getFirst("X-Async"));
+	}
+
+	@Test
+	public void postLargeBodySynchronously() {
+		ResponseEntity<String> result = new TestRestTemplate().exchange(
+				"http://localhost:" + this.port + "/async/1", HttpMethod.POST,
+				new HttpEntity<>("hello world"), String.class);
+		assertEquals(HttpStatus.OK, result.getStatusCode());
+		assertEquals("Posted 1 hello world!", result.getBody());
+		assertEquals("false", result.getHeaders().getFirst("X-Async"));
+	}
+
+	@Test
+	public void notFoundViaAsyncRoute() {
+		ResponseEntity<String> result = new TestRestTemplate().exchange(
+				"http://localhost:" + this.port + "/async/missing/1", HttpMethod.GET,
+				new HttpEntity<>((Void) null), String.class);
+		assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
+	}
+
+}
+
+// Don't use @SpringBootApplication because we don't want to component scan
+@Configuration
+@EnableAutoConfiguration
+@RestController
+@EnableZuulProxy
+class AsyncZuulProxyApplication {
+
+	@RequestMapping(value = "/local/{id}", method = RequestMethod.GET)
+	public String get(@PathVariable String id) {
+		return "Gotten " + id + "!";
+	}
+
+	@RequestMapping(value = "/local/{id}", method = RequestMethod.POST)
+	public String post(@PathVariable String id, @RequestBody String body) {
+		return "Posted " + id + " " + body + "!";
+	}
+
+	@Bean
+	public ZuulFilter slowRouteFilter() {
+		// runs after the async route filter, and slower than the local response
+		return new ZuulFilter() {
+
+			@Override
+			public String filterType() {
+				return "route";
+			}
+
+			@Override
+			public int filterOrder() {
+				return 200;
+			}
+
+			@Override
+			public boolean shouldFilter() {
+				return true;
+			}
+
+			@Override
+			public Object run() {
+				try {
+					Thread.sleep(200);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				RequestContext context = RequestContext.getCurrentContext();
+				context.addZuulResponseHeader("X-Routed", "true");
+				context.addZuulResponseHeader("X-Async",
+						String.valueOf(context.getRequest().isAsyncStarted()));
+				return null;
+			}
+
+		};
+	}
+
+	public static void main(String[] args) {
+		SpringApplication.run(AsyncZuulProxyApplication.class, args);
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.TestRestTemplate;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CachingZuulProxyApplication.class)
+@WebAppConfiguration
+@IntegrationTest("server.port: 0")
+@DirtiesContext
+public class CachingZuulProxyApplicationTests {
+
+	@Value("${local.server.port}")
+	private int port;
+
+	@Autowired
+	private ProxyRouteLocator routes;
+
+	@Autowired
+	private RoutesEndpoint endpoint;
+
+	@Autowired
+	private ZuulProperties properties;
+
+	@Before
+	public void init() {
+		ZuulRoute route = new ZuulRoute("cached", "/cached/**", null,
+				"http://localhost:" + this.port + "/local", true, null);
+		route.setCacheable(true);
+		this.properties.getRoutes().put("cached", route);
+		this.routes.addRoute(route);
+		this.endpoint.reset();
+	}
+
+	@Test
+	public void freshResponseServedFromCache() {
+		ResponseEntity<String> first = get("/cached/fresh/1");
+		ResponseEntity<String> second = get("/cached/fresh/1");
+		assertEquals(HttpStatus.OK, second.getStatusCode());
+		assertEquals(first.getBody(), second.getBody());
+		assertEquals("Fresh 1 (1)", second.getBody());
+		assertNotNull(second.getHeaders().getFirst("Age"));
+		assertEquals("Fresh 2 (2)", get("/cached/fresh/2").getBody());
+	}
+
+	@Test
+	public void privateResponseNotCached() {
+		assertEquals("Private 1", get("/cached/private").getBody());
+		assertEquals("Private 2", get("/cached/private").getBody());
+	}
+
+	@Test
+	public void staleResponseRevalidated() {
+		assertEquals("Tagged 1", get("/cached/tagged").getBody());
+		// the origin answers 304 and the cached body is sent
+		ResponseEntity<String> second = get("/cached/tagged");
+		assertEquals(HttpStatus.OK, second.getStatusCode());
+		assertEquals("Tagged 1", second.getBody());
+		assertEquals(2, CachingZuulProxyApplication.tagged.get());
+	}
+
+	private ResponseEntity<String> get(String path) {
+		return new TestRestTemplate().getForEntity("http://localhost:" + this.port
+				+ path, String.class);
+	}
+
+}
+
+// Don't use @SpringBootApplication because we don't want to component scan
+@Configuration
+@EnableAutoConfiguration
+@RestController
+@EnableZuulProxy
+class CachingZuulProxyApplication {
+
+	static final AtomicInteger fresh = new AtomicInteger();
+
+	static final AtomicInteger tagged = new AtomicInteger();
+
+	private final AtomicInteger privates = new AtomicInteger();
+
+	@RequestMapping("/local/fresh/{id}")
+	public ResponseEntity<String> fresh(@PathVariable String id) {
+		return ResponseEntity.ok().header("Cache-Control", "max-age=60")
+				.body("Fresh " + id + " (" + fresh.incrementAndGet() + ")");
+	}
+
+	@RequestMapping("/local/private")
+	public ResponseEntity<String> privateResponse() {
+		return ResponseEntity.ok().header("Cache-Control", "private, max-age=60")
+				.body("Private " + this.privates.incrementAndGet());
+	}
+
+	@RequestMapping("/local/tagged")
+	public ResponseEntity<String> tagged(
+			@RequestHeader(value = "If-None-Match", required = false) String etag) {
+		int count = tagged.incrementAndGet();
+		if ("\"v1\"".equals(etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag("\"v1\"")
+					.header("Cache-Control", "no-cache").body((String) null);
+		}
+		return ResponseEntity.ok().eTag("\"v1\"").header("Cache-Control", "no-cache")
+				.body("Tagged " + count);
+	}
+
+	public static void main(String[] args) {
+		SpringApplication.run(CachingZuulProxyApplication.class, args);
+	}
+
+}
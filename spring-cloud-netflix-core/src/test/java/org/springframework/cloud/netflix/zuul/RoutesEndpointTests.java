@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Dave Syer
+ */
+public class RoutesEndpointTests {
+
+	private ProxyRouteLocator locator = new ProxyRouteLocator("/", null,
+			new ZuulProperties());
+
+	private RoutesEndpoint endpoint = new RoutesEndpoint(this.locator);
+
+	@Before
+	public void init() {
+		this.locator.addRoute("/foo/**", "foo");
+	}
+
+	@Test
+	public void routesAreNotCopied() {
+		assertSame(this.endpoint.getRoutes(), this.endpoint.getRoutes());
+		assertEquals("foo", this.endpoint.getRoutes().get("/foo/**"));
+	}
+
+	@Test
+	public void conditionalGet() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assertNotNull(this.endpoint.routes(new ServletWebRequest(
+				new MockHttpServletRequest("GET", "/routes"), response), response));
+		assertNotNull(response.getHeader("Last-Modified"));
+		String etag = response.getHeader("ETag");
+		assertNotNull(etag);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/routes");
+		request.addHeader("If-None-Match", etag);
+		response = new MockHttpServletResponse();
+		assertNull(this.endpoint.routes(new ServletWebRequest(request, response),
+				response));
+		assertEquals(304, response.getStatus());
+	}
+
+	@Test
+	public void versionChangesWhenRoutesChange() {
+		long version = this.endpoint.getVersion();
+		this.locator.addRoute("/bar/**", "bar");
+		assertNotEquals(version, this.endpoint.getVersion());
+		assertEquals("bar", this.endpoint.getRoutes().get("/bar/**"));
+	}
+
+}
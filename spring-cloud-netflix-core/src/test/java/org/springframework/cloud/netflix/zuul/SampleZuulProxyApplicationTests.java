@@ -67,7 +67,12 @@ import com.netflix.zuul.context.RequestContext;
 @WebAppConfiguration
 @IntegrationTest({ "server.port: 0",
 		"zuul.routes.other: /test/**=http://localhost:7777/local",
-		"zuul.routes.another: /another/twolevel/**", "zuul.routes.simple: /simple/**" })
+		"zuul.routes.another: /another/twolevel/**", "zuul.routes.simple: /simple/**",
+		"zuul.routes.coalesced.path: /coalesced/**",
+		"zuul.routes.coalesced.serviceId: simple",
+		"zuul.routes.coalesced.coalesce: true",
+		"zuul.routes.hedged.path: /hedged/**", "zuul.routes.hedged.serviceId: simple",
+		"zuul.routes.hedged.hedge: true" })
 @DirtiesContext
 public class SampleZuulProxyApplicationTests {
 
@@ -100,6 +105,24 @@ public class SampleZuulProxyApplicationTests {
 		assertEquals("Gotten 1!", result.getBody());
 	}
 
+	@Test
+	public void getOnSelfViaCoalescingRibbonRoute() {
+		ResponseEntity<String> result = new TestRestTemplate().exchange(
+				"http://localhost:" + this.port + "/coalesced/local/1", HttpMethod.GET,
+				new HttpEntity<>((Void) null), String.class);
+		assertEquals(HttpStatus.OK, result.getStatusCode());
+		assertEquals("Gotten 1!", result.getBody());
+	}
+
+	@Test
+	public void getOnSelfViaHedgingRibbonRoute() {
+		ResponseEntity<String> result = new TestRestTemplate().exchange(
+				"http://localhost:" + this.port + "/hedged/local/1", HttpMethod.GET,
+				new HttpEntity<>((Void) null), String.class);
+		assertEquals(HttpStatus.OK, result.getStatusCode());
+		assertEquals("Gotten 1!", result.getBody());
+	}
+
 	@Test
 	public void deleteOnSelfViaSimpleHostRoutingFilter() {
 		this.routes.addRoute("/self/**", "http://localhost:" + this.port + "/local");
@@ -21,8 +21,13 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.springframework.boot.actuate.trace.TraceRepository;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
+import com.netflix.util.Pair;
+import com.netflix.zuul.context.RequestContext;
+
 import java.util.List;
 
 import static org.hamcrest.Matchers.*;
@@ -40,6 +45,7 @@ public class ProxyRequestHelperTests {
 	@Before
 	public void init() {
 		initMocks(this);
+		RequestContext.getCurrentContext().clear();
 	}
 
 	@Test
@@ -79,5 +85,81 @@ public class ProxyRequestHelperTests {
 		assertThat(acceptEncodings, contains("gzip"));
 	}
 
+	@Test
+	public void buildZuulRequestHeadersSkipsIgnoredHeaders() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.addHeader("Host", "example.com");
+		request.addHeader("X-Ignored", "value");
+		request.addHeader("X-Kept", "value");
+
+		ProxyRequestHelper helper = new ProxyRequestHelper();
+		helper.addIgnoredHeaders("x-ignored");
+
+		MultiValueMap<String, String> headers = helper.buildZuulRequestHeaders(request);
+		assertThat(headers.get("Host"), is(nullValue()));
+		assertThat(headers.get("X-Ignored"), is(nullValue()));
+		assertThat(headers.get("X-Kept"), contains("value"));
+	}
+
+	@Test
+	public void copyZuulRequestHeadersReplacesIncomingHeaders() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.addHeader("X-Forwarded-Prefix", "/incoming");
+		request.addHeader("Accept-Encoding", "deflate");
+		request.addHeader("X-Kept", "value");
+		RequestContext.getCurrentContext().addZuulRequestHeader("X-Forwarded-Prefix",
+				"/users");
+
+		final MultiValueMap<String, String> sent = new LinkedMultiValueMap<>();
+		new ProxyRequestHelper().copyZuulRequestHeaders(request,
+				new ProxyRequestHelper.HeaderSink() {
+					@Override
+					public void addHeader(String name, String value) {
+						sent.add(name.toLowerCase(), value);
+					}
+				});
+		assertThat(sent.get("x-forwarded-prefix"), contains("/users"));
+		assertThat(sent.get("accept-encoding"), contains("gzip"));
+		assertThat(sent.get("x-kept"), contains("value"));
+		assertThat(sent.size(), is(3));
+	}
+
+	@Test
+	public void setResponseCopiesHeadersInOnePass() throws Exception {
+		MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
+		headers.add("content-encoding", "gzip");
+		headers.add("Content-Length", "42");
+		headers.add("X-Ignored", "value");
+		headers.add("X-Kept", "value1");
+		headers.add("X-Kept", "value2");
+
+		RequestContext.getCurrentContext().setResponse(new MockHttpServletResponse());
+		ProxyRequestHelper helper = new ProxyRequestHelper();
+		helper.addIgnoredHeaders("X-Ignored");
+		helper.setResponse(200, null, headers);
+
+		RequestContext context = RequestContext.getCurrentContext();
+		assertThat(context.getResponseStatusCode(), is(200));
+		assertThat(context.getResponseGZipped(), is(true));
+		assertThat(context.getOriginContentLength(), is(42));
+		assertThat(context.getOriginResponseHeaders(), hasSize(5));
+		List<Pair<String, String>> zuulHeaders = context.getZuulResponseHeaders();
+		assertThat(zuulHeaders, hasSize(2));
+		assertThat(zuulHeaders.get(0).first(), is("X-Kept"));
+		assertThat(zuulHeaders.get(1).second(), is("value2"));
+	}
+
+	@Test
+	public void queryStringIsEncoded() {
+		MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+		params.add("a", "1");
+		params.add("a", "x y");
+		params.add("b&c", "é");
+
+		ProxyRequestHelper helper = new ProxyRequestHelper();
+		assertThat(helper.getQueryString(params), is("?a=1&a=x+y&b%26c=%C3%A9"));
+		assertThat(helper.getQueryString(new LinkedMultiValueMap<String, String>()),
+				is(""));
+	}
 
 }
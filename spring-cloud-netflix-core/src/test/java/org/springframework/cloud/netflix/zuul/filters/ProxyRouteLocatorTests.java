@@ -16,9 +16,13 @@
 
 package org.springframework.cloud.netflix.zuul.filters;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -152,6 +156,119 @@ public class ProxyRouteLocatorTests {
 		assertEquals("/1", route.getPath());
 	}
 
+	@Test
+	public void testGetMatchingPathWithRegexCharactersInRoutePrefix() throws Exception {
+		ProxyRouteLocator routeLocator = new ProxyRouteLocator("/", this.discovery,
+				this.properties);
+		this.properties.getRoutes().put("foo", new ZuulRoute("/foo+(v1)/**", "foo"));
+		routeLocator.getRoutes(); // force refresh
+		ProxyRouteSpec route = routeLocator.getMatchingRoute("/foo+(v1)/1");
+		assertEquals("foo", route.getLocation());
+		assertEquals("/1", route.getPath());
+		assertEquals("/foo+(v1)", route.getPrefix());
+	}
+
+	@Test
+	public void testGetMatchingPathWithManyDiscoveredServices() throws Exception {
+		ProxyRouteLocator routeLocator = new ProxyRouteLocator("/", this.discovery,
+				this.properties);
+		this.properties.getRoutes().put("foo", new ZuulRoute("/foo/**", "http://foo.com"));
+		this.properties.getRoutes().put("default", new ZuulRoute("/**", "http://bar.com"));
+		List<String> services = new ArrayList<>();
+		for (int i = 0; i < 600; i++) {
+			services.add("service" + i);
+		}
+		services.add("foo");
+		given(this.discovery.getServices()).willReturn(services);
+		ProxyRouteSpec route = routeLocator.getMatchingRoute("/service599/1");
+		assertEquals("service599", route.getLocation());
+		assertEquals("/1", route.getPath());
+		route = routeLocator.getMatchingRoute("/foo/1");
+		assertEquals("http://foo.com", route.getLocation());
+		route = routeLocator.getMatchingRoute("/other/1");
+		assertEquals("http://bar.com", route.getLocation());
+		assertEquals("/other/1", route.getPath());
+	}
+
+	@Test
+	public void testRefreshRoutesOnlyWhenServicesChange() throws Exception {
+		ProxyRouteLocator routeLocator = new ProxyRouteLocator("/", this.discovery,
+				this.properties);
+		this.properties.setIgnoredServices(Collections.singletonList(IGNOREDSERVICE));
+		given(this.discovery.getServices()).willReturn(
+				Collections.singletonList(MYSERVICE));
+		assertNotNull(routeLocator.getMatchingRoute("/" + MYSERVICE + "/1"));
+		assertFalse(routeLocator.refreshRoutes());
+		given(this.discovery.getServices()).willReturn(
+				Arrays.asList(MYSERVICE, IGNOREDSERVICE));
+		assertFalse(routeLocator.refreshRoutes());
+		given(this.discovery.getServices()).willReturn(
+				Collections.singletonList(ASERVICE));
+		assertTrue(routeLocator.refreshRoutes());
+		assertNull(routeLocator.getMatchingRoute("/" + MYSERVICE + "/1"));
+		assertNotNull(routeLocator.getMatchingRoute("/" + ASERVICE + "/1"));
+		assertFalse(routeLocator.refreshRoutes());
+	}
+
+	@Test
+	public void testRefreshRoutesAddsAndRemovesDiscoveredRoutes() throws Exception {
+		ProxyRouteLocator routeLocator = new ProxyRouteLocator("/", this.discovery,
+				this.properties);
+		this.properties.setPrefix("/api");
+		this.properties.getRoutes().put("default",
+				new ZuulRoute("/**", "http://bar.com"));
+		this.properties.init();
+		given(this.discovery.getServices()).willReturn(
+				Collections.singletonList(MYSERVICE));
+		long version = routeLocator.getRouteSnapshot().getVersion();
+		given(this.discovery.getServices()).willReturn(
+				Arrays.asList(MYSERVICE, ASERVICE));
+		assertTrue(routeLocator.refreshRoutes());
+		assertEquals(Arrays.asList("/api/" + MYSERVICE + "/**", "/api/" + ASERVICE
+				+ "/**", "/api/**"), new ArrayList<>(routeLocator.getRoutes().keySet()));
+		assertEquals(ASERVICE, routeLocator.getMatchingRoute("/api/" + ASERVICE + "/1")
+				.getLocation());
+		given(this.discovery.getServices()).willReturn(
+				Collections.singletonList(ASERVICE));
+		assertTrue(routeLocator.refreshRoutes());
+		assertEquals(Arrays.asList("/api/" + ASERVICE + "/**", "/api/**"),
+				new ArrayList<>(routeLocator.getRoutes().keySet()));
+		assertEquals("http://bar.com",
+				routeLocator.getMatchingRoute("/api/" + MYSERVICE + "/1").getLocation());
+		assertEquals(version + 2, routeLocator.getRouteSnapshot().getVersion());
+		// the same as locating them all again
+		assertEquals(routeLocator.locateRoutes().keySet(), routeLocator.getRoutes()
+				.keySet());
+	}
+
+	@Test
+	public void testRefreshRoutesLocatesAllRoutesIfNotIncremental() throws Exception {
+		final AtomicInteger located = new AtomicInteger();
+		ProxyRouteLocator routeLocator = new ProxyRouteLocator("/", this.discovery,
+				this.properties) {
+			@Override
+			protected LinkedHashMap<String, ZuulRoute> locateRoutes() {
+				located.incrementAndGet();
+				return super.locateRoutes();
+			}
+
+			@Override
+			protected boolean supportsIncrementalRefresh() {
+				return false;
+			}
+		};
+		given(this.discovery.getServices()).willReturn(
+				Collections.singletonList(MYSERVICE));
+		routeLocator.getRouteSnapshot();
+		assertEquals(1, located.get());
+		given(this.discovery.getServices()).willReturn(
+				Arrays.asList(MYSERVICE, ASERVICE));
+		assertTrue(routeLocator.refreshRoutes());
+		assertEquals(2, located.get());
+		assertEquals(ASERVICE, routeLocator.getMatchingRoute("/" + ASERVICE + "/1")
+				.getLocation());
+	}
+
 	@Test
 	public void testGetRoutes() {
 		ProxyRouteLocator routeLocator = new ProxyRouteLocator("/", this.discovery,
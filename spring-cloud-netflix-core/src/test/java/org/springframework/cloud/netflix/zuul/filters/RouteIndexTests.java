@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.util.AntPathMatcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Dave Syer
+ */
+public class RouteIndexTests {
+
+	private AntPathMatcher matcher = new AntPathMatcher();
+
+	@Test
+	public void literalSegments() {
+		assertEquals(Arrays.asList("foo", "bar"),
+				RouteIndex.literalSegments("/foo/bar/**"));
+		assertEquals(Arrays.asList("foo"), RouteIndex.literalSegments("/foo/b*r/**"));
+		assertEquals(Arrays.asList("foo"), RouteIndex.literalSegments("/foo/{id}"));
+		assertEquals(Collections.emptyList(), RouteIndex.literalSegments("/**"));
+	}
+
+	@Test
+	public void firstMatchWins() {
+		Map<String, String> routes = new LinkedHashMap<>();
+		routes.put("/foo/**", "first");
+		routes.put("/foo/bar/**", "second");
+		routes.put("/**", "default");
+		RouteIndex<String> index = new RouteIndex<>(routes, this.matcher);
+		assertEquals("first", index.match("/foo/bar/1"));
+		assertEquals("/foo/**", index.matchPattern("/foo/bar/1"));
+		assertEquals("default", index.match("/baz/1"));
+	}
+
+	@Test
+	public void wildcardBeforeLiteralWins() {
+		Map<String, String> routes = new LinkedHashMap<>();
+		routes.put("/*/bar/**", "wildcard");
+		routes.put("/foo/bar/**", "literal");
+		RouteIndex<String> index = new RouteIndex<>(routes, this.matcher);
+		assertEquals("wildcard", index.match("/foo/bar/1"));
+	}
+
+	@Test
+	public void noMatch() {
+		Map<String, String> routes = new LinkedHashMap<>();
+		routes.put("/foo/**", "foo");
+		RouteIndex<String> index = new RouteIndex<>(routes, this.matcher);
+		assertNull(index.match("/bar/1"));
+		assertEquals("foo", index.match("/foo"));
+		assertEquals("foo", index.match("//foo//1"));
+	}
+
+	@Test
+	public void candidatesDoNotGrowWithRouteCount() {
+		Map<String, String> routes = new LinkedHashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			routes.put("/service" + i + "/**", "service" + i);
+		}
+		routes.put("/**", "default");
+		RouteIndex<String> index = new RouteIndex<>(routes, this.matcher);
+		assertEquals(1001, index.size());
+		assertEquals("service999", index.match("/service999/foo/bar"));
+		assertEquals("default", index.match("/unknown/foo"));
+		assertTrue("Too many candidates",
+				index.countCandidates("/service999/foo/bar") <= 2);
+		assertTrue("Too many candidates", index.countCandidates("/unknown/foo") <= 1);
+	}
+
+}
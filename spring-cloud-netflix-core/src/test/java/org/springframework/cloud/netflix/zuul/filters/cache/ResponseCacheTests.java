@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.cache;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import com.netflix.util.Pair;
+import com.netflix.zuul.context.RequestContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Dave Syer
+ */
+public class ResponseCacheTests {
+
+	private ZuulProperties properties = new ZuulProperties();
+
+	private ResponseCache cache = new ResponseCache(this.properties);
+
+	@After
+	public void close() {
+		this.cache.close();
+		RequestContext.testSetCurrentContext(null);
+	}
+
+	@Test
+	public void freshnessFromMaxAge() {
+		assertEquals(60000, lifetime("Cache-Control", "public, max-age=60"));
+		assertEquals(10000, lifetime("Cache-Control", "max-age=60, s-maxage=10"));
+		assertEquals(0, lifetime("Cache-Control", "no-cache, max-age=60"));
+		assertEquals(-1, lifetime("Cache-Control", "private, max-age=60"));
+		assertEquals(-1, lifetime("Cache-Control", "no-store"));
+	}
+
+	@Test
+	public void freshnessFromExpires() {
+		assertEquals(30000, ResponseCache.getFreshnessLifetime(Arrays.asList(
+				new Pair<>("Date", "Thu, 01 Jan 2015 00:00:00 GMT"), new Pair<>(
+						"Expires", "Thu, 01 Jan 2015 00:00:30 GMT")), 0));
+		assertEquals(0, lifetime("Expires", "0"));
+		assertEquals(0, lifetime("Content-Type", "text/plain"));
+	}
+
+	@Test
+	public void responseWithCookieNotStored() {
+		assertEquals(-1, ResponseCache.getFreshnessLifetime(Arrays.asList(new Pair<>(
+				"Cache-Control", "public, max-age=60"), new Pair<>("set-cookie",
+				"SESSION=1")), 0));
+		assertEquals(-1, lifetime("Set-Cookie2", "SESSION=1"));
+		assertNull(store(new Pair<>("Set-Cookie", "SESSION=1")));
+		assertNotNull(store());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		this.properties.getCache().setMaxSize(25);
+		this.cache.put("a", response("foo", 10));
+		this.cache.put("b", response("foo", 10));
+		this.cache.get("a");
+		this.cache.put("c", response("bar", 10));
+		assertNotNull(this.cache.get("a"));
+		assertNull(this.cache.get("b"));
+		assertNotNull(this.cache.get("c"));
+		assertEquals(20, this.cache.getSize());
+		assertEquals(1, this.cache.getStats("foo").evictions.getValue().intValue());
+	}
+
+	@Test
+	public void holdsOnlyTheBody() {
+		// the buffer a body was read into is usually larger than the body
+		assertEquals(5, this.cache.allocate(new byte[4096], 5).array().length);
+		this.cache.put("a", response("foo", 5));
+		assertEquals(5, this.cache.getSize());
+	}
+
+	@Test
+	public void rejectsResponseLargerThanCache() {
+		this.properties.getCache().setMaxSize(5);
+		assertFalse(this.cache.put("a", response("foo", 10)));
+		assertEquals(0, this.cache.getSize());
+	}
+
+	@Test
+	public void servesOffHeapBody() throws Exception {
+		this.properties.getCache().setOffHeap(true);
+		byte[] bytes = "hello world".getBytes();
+		CachedResponse response = new CachedResponse("foo", 200,
+				Collections.singletonList(new Pair<>("Content-Type", "text/plain")),
+				false, this.cache.allocate(bytes, 5), null,
+				Collections.<String, String> emptyMap(), 0, 1000);
+		assertTrue(response.isFresh(999));
+		assertFalse(response.isFresh(1000));
+		for (int i = 0; i < 2; i++) {
+			RequestContext context = new RequestContext();
+			context.setResponse(new MockHttpServletResponse());
+			RequestContext.testSetCurrentContext(context);
+			response.serve(context, 3000);
+			assertEquals("hello", StreamUtils.copyToString(
+					context.getResponseDataStream(), Charset.forName("UTF-8")));
+			List<Pair<String, String>> headers = context.getZuulResponseHeaders();
+			assertEquals("Age", headers.get(1).first());
+			assertEquals("3", headers.get(1).second());
+		}
+	}
+
+	@Test
+	public void matchesVaryHeaders() {
+		CachedResponse response = new CachedResponse("foo", 200,
+				Collections.<Pair<String, String>> emptyList(), false,
+				this.cache.allocate(new byte[0], 0), null, Collections.singletonMap(
+						"Accept-Language", "en"), 0, 1000);
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		assertFalse(response.matches(request));
+		request.addHeader("Accept-Language", "en");
+		assertTrue(response.matches(request));
+	}
+
+	private long lifetime(String name, String value) {
+		return ResponseCache.getFreshnessLifetime(
+				Collections.singletonList(new Pair<>(name, value)), 0);
+	}
+
+	@SafeVarargs
+	private final CachedResponse store(Pair<String, String>... headers) {
+		RequestContext context = new RequestContext();
+		RequestContext.testSetCurrentContext(context);
+		context.setRequest(new MockHttpServletRequest("GET", "/foo"));
+		context.setResponse(new MockHttpServletResponse());
+		context.set("proxy", "foo");
+		context.set(ResponseCacheFilter.CACHE_KEY, "GET /foo");
+		context.setResponseStatusCode(200);
+		context.addOriginResponseHeader("Cache-Control", "public, max-age=60");
+		for (Pair<String, String> header : headers) {
+			context.addOriginResponseHeader(header.first(), header.second());
+			context.addZuulResponseHeader(header.first(), header.second());
+		}
+		context.setResponseDataStream(new ByteArrayInputStream("hello".getBytes()));
+		ResponseCacheStoreFilter filter = new ResponseCacheStoreFilter(this.cache);
+		assertTrue(filter.shouldFilter());
+		filter.run();
+		return this.cache.get("GET /foo");
+	}
+
+	private CachedResponse response(String routeId, int size) {
+		return new CachedResponse(routeId, 200,
+				Collections.<Pair<String, String>> emptyList(), false,
+				this.cache.allocate(new byte[size], size), null,
+				Collections.<String, String> emptyMap(), 0, 1000);
+	}
+
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.post;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import com.netflix.zuul.context.RequestContext;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Dave Syer
+ */
+public class SendResponseFilterTests {
+
+	private ZuulProperties properties = new ZuulProperties();
+
+	private SendResponseFilter filter = new SendResponseFilter(this.properties);
+
+	private RequestContext context = new RequestContext();
+
+	private MockHttpServletRequest request = new MockHttpServletRequest();
+
+	@Before
+	public void init() {
+		this.context.setRequest(this.request);
+		this.context.setResponseGZipped(false);
+		RequestContext.testSetCurrentContext(this.context);
+	}
+
+	@After
+	public void reset() {
+		this.filter.stop();
+		RequestContext.testSetCurrentContext(null);
+	}
+
+	@Test
+	public void copiesLargeBody() throws Exception {
+		byte[] body = new byte[3 * SendResponseFilter.MAX_STREAM_BUFFER_SIZE + 17];
+		for (int i = 0; i < body.length; i++) {
+			body[i] = (byte) i;
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.context.setResponse(response);
+		this.context.setResponseDataStream(new ByteArrayInputStream(body));
+		this.filter.run();
+		assertEquals(body.length, response.getContentAsByteArray().length);
+		assertEquals(body[body.length - 1],
+				response.getContentAsByteArray()[body.length - 1]);
+		assertEquals(body.length, this.filter.bytesSent().longValue());
+	}
+
+	@Test
+	public void flushesEveryChunkOfEventStream() throws Exception {
+		CountingResponse response = new CountingResponse(false);
+		this.context.setResponse(response);
+		this.context.addZuulResponseHeader("Content-Type", "text/event-stream");
+		this.context.setResponseDataStream(new ChunkedInputStream(3, false));
+		this.filter.run();
+		// one flush per chunk, plus one at the end
+		assertEquals(4, response.flushes);
+	}
+
+	@Test
+	public void coalescesFlushesOfOrdinaryBody() throws Exception {
+		CountingResponse response = new CountingResponse(false);
+		this.context.setResponse(response);
+		this.context.addZuulResponseHeader("Content-Type", "application/json");
+		this.context.setResponseDataStream(new ChunkedInputStream(3, true));
+		this.filter.run();
+		// only when the origin has no more data ready, and at the end
+		assertEquals(2, response.flushes);
+	}
+
+	@Test
+	public void stopsReadingWhenClientGoesAway() throws Exception {
+		CountingResponse response = new CountingResponse(true);
+		this.context.setResponse(response);
+		ChunkedInputStream input = new ChunkedInputStream(3, true);
+		this.context.setResponseDataStream(input);
+		this.filter.run();
+		assertEquals(1, input.reads);
+		assertTrue(input.closed.get());
+		assertEquals(1, this.filter.clientAborts().longValue());
+	}
+
+	@Test
+	public void noBodyNoFilter() {
+		this.context.setResponse(new MockHttpServletResponse());
+		assertFalse(this.filter.shouldFilter());
+	}
+
+	@Test
+	public void gzipAcceptedWithQualityValues() {
+		assertTrue(acceptsGzip("gzip"));
+		assertTrue(acceptsGzip("gzip, deflate, br"));
+		assertTrue(acceptsGzip("deflate;q=1.0, GZIP;q=0.5"));
+		assertTrue(acceptsGzip("x-gzip"));
+		assertTrue(acceptsGzip("*"));
+		assertFalse(acceptsGzip("gzip;q=0"));
+		assertFalse(acceptsGzip("*, gzip;q=0"));
+		assertFalse(acceptsGzip("deflate, br"));
+		assertFalse(acceptsGzip("gzip;q=oops"));
+		assertFalse(acceptsGzip(null));
+	}
+
+	@Test
+	public void gzippedBodyPassedThroughToBrowser() throws Exception {
+		this.request.addHeader("Accept-Encoding", "gzip, deflate, br");
+		this.context.setResponseGZipped(true);
+		byte[] gzipped = gzip("hello".getBytes());
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.context.setResponse(response);
+		this.context.setResponseDataStream(new ByteArrayInputStream(gzipped));
+		this.filter.run();
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertArrayEquals(gzipped, response.getContentAsByteArray());
+	}
+
+	@Test
+	public void gzippedBodyInflatedForOtherClients() throws Exception {
+		this.request.addHeader("Accept-Encoding", "gzip;q=0, deflate");
+		this.context.setResponseGZipped(true);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.context.setResponse(response);
+		this.context.setResponseDataStream(new ByteArrayInputStream(gzip("hello"
+				.getBytes())));
+		this.filter.run();
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals("hello", response.getContentAsString());
+	}
+
+	@Test
+	public void compressesLargeTextBody() throws Exception {
+		this.properties.getCompression().setEnabled(true);
+		byte[] body = text(10000);
+		MockHttpServletResponse response = compressibleResponse(body);
+		this.filter.run();
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		assertArrayEquals(body, gunzip(response.getContentAsByteArray()));
+		assertEquals(body.length - response.getContentAsByteArray().length, this.filter
+				.bytesSaved().longValue());
+	}
+
+	@Test
+	public void compressesTwiceWithSameThread() throws Exception {
+		this.properties.getCompression().setEnabled(true);
+		byte[] body = text(5000);
+		MockHttpServletResponse response = compressibleResponse(body);
+		this.filter.run();
+		assertArrayEquals(body, gunzip(response.getContentAsByteArray()));
+		response = compressibleResponse(body);
+		this.filter.run();
+		assertArrayEquals(body, gunzip(response.getContentAsByteArray()));
+	}
+
+	@Test
+	public void doesNotCompressSmallBody() throws Exception {
+		this.properties.getCompression().setEnabled(true);
+		MockHttpServletResponse response = compressibleResponse(text(100));
+		this.filter.run();
+		assertNull(response.getHeader("Content-Encoding"));
+	}
+
+	@Test
+	public void doesNotCompressWhenDisabledForRoute() throws Exception {
+		this.properties.getCompression().setEnabled(true);
+		ZuulRoute route = new ZuulRoute("foo", "/foo/**", null, "http://localhost",
+				true, null);
+		route.setCompress(false);
+		this.properties.getRoutes().put("foo", route);
+		this.context.set("proxy", "foo");
+		MockHttpServletResponse response = compressibleResponse(text(10000));
+		this.filter.run();
+		assertNull(response.getHeader("Content-Encoding"));
+	}
+
+	@Test
+	public void compressesWhenEnabledForRoute() throws Exception {
+		ZuulRoute route = new ZuulRoute("foo", "/foo/**", null, "http://localhost",
+				true, null);
+		route.setCompress(true);
+		this.properties.getRoutes().put("foo", route);
+		this.context.set("proxy", "foo");
+		MockHttpServletResponse response = compressibleResponse(text(10000));
+		this.filter.run();
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+	}
+
+	private boolean acceptsGzip(String value) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		if (value != null) {
+			request.addHeader("Accept-Encoding", value);
+		}
+		return SendResponseFilter.isGzipAccepted(request);
+	}
+
+	private MockHttpServletResponse compressibleResponse(byte[] body) {
+		this.request.addHeader("Accept-Encoding", "gzip, deflate");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.context.setResponse(response);
+		this.context.getZuulResponseHeaders().clear();
+		this.context.addZuulResponseHeader("Content-Type",
+				"application/json;charset=UTF-8");
+		this.context.setOriginContentLength(body.length);
+		this.context.setResponseDataStream(new ByteArrayInputStream(body));
+		return response;
+	}
+
+	private byte[] text(int size) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; builder.length() < size; i++) {
+			builder.append("{\"item\":").append(i).append("},");
+		}
+		return builder.substring(0, size).getBytes();
+	}
+
+	private byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(bytes);
+		gzip.close();
+		return out.toByteArray();
+	}
+
+	private byte[] gunzip(byte[] bytes) throws IOException {
+		return StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(
+				bytes)));
+	}
+
+	private static class ChunkedInputStream extends InputStream {
+
+		private final int chunks;
+
+		private final boolean moreAvailable;
+
+		private int reads;
+
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		ChunkedInputStream(int chunks, boolean moreAvailable) {
+			this.chunks = chunks;
+			this.moreAvailable = moreAvailable;
+		}
+
+		@Override
+		public int read() throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (this.reads == this.chunks) {
+				return -1;
+			}
+			this.reads++;
+			b[off] = 'x';
+			return 1;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return this.moreAvailable && this.reads < this.chunks ? 1 : 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.closed.set(true);
+		}
+
+	}
+
+	private static class CountingResponse extends MockHttpServletResponse {
+
+		private final boolean broken;
+
+		private int flushes;
+
+		CountingResponse(boolean broken) {
+			this.broken = broken;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			return new ServletOutputStream() {
+
+				@Override
+				public void write(int b) throws IOException {
+					if (CountingResponse.this.broken) {
+						throw new IOException("Broken pipe");
+					}
+				}
+
+				@Override
+				public void flush() throws IOException {
+					CountingResponse.this.flushes++;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setWriteListener(WriteListener writeListener) {
+				}
+
+			};
+		}
+
+	}
+
+}
@@ -24,6 +24,7 @@ import org.mockito.Mock;
 import org.springframework.boot.autoconfigure.web.ServerProperties;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator.ProxyRouteSpec;
 import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
 import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
 import org.springframework.mock.web.MockHttpServletRequest;
@@ -98,6 +99,17 @@ public class PreDecorationFilterTests {
 		assertEquals("foo", getHeader(ctx.getOriginResponseHeaders(), "x-zuul-serviceid"));
 	}
 
+	@Test
+	public void routeResolvedByHandlerMappingIsUsed() throws Exception {
+		this.request.setRequestURI("/foo/1");
+		this.request.setAttribute(ProxyRouteLocator.MATCHING_ROUTE_ATTRIBUTE,
+				new ProxyRouteSpec("bar", "/2", "bar", "/foo", null));
+		this.filter.run();
+		RequestContext ctx = RequestContext.getCurrentContext();
+		assertEquals("/2", ctx.get("requestURI"));
+		assertEquals("bar", ctx.get("serviceId"));
+	}
+
 	private Object getHeader(List<Pair<String, String>> headers, String key) {
 		String value = null;
 		for (Pair<String, String> pair : headers) {
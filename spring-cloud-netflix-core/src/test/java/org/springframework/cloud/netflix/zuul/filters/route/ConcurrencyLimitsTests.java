@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.route.ConcurrencyLimits.ConcurrencyLimit;
+import org.springframework.cloud.netflix.zuul.filters.route.ConcurrencyLimits.Permit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Dave Syer
+ */
+public class ConcurrencyLimitsTests {
+
+	private ZuulProperties properties = new ZuulProperties();
+
+	private ConcurrencyLimits limits = new ConcurrencyLimits(this.properties);
+
+	@Before
+	public void init() {
+		this.properties.getConcurrency().setAdaptive(true);
+		this.properties.getConcurrency().setInitialLimit(10);
+		this.properties.getConcurrency().setMaxLimit(50);
+	}
+
+	@After
+	public void close() {
+		this.limits.stop();
+	}
+
+	@Test
+	public void staticModeHasNoLimit() {
+		this.properties.getConcurrency().setAdaptive(false);
+		assertSame(Permit.NONE, this.limits.acquire("foo"));
+	}
+
+	@Test
+	public void rejectsOverTheLimit() {
+		this.properties.getConcurrency().setInitialLimit(2);
+		Permit first = this.limits.acquire("foo");
+		assertNotNull(first);
+		assertNotNull(this.limits.acquire("foo"));
+		assertNull(this.limits.acquire("foo"));
+		ConcurrencyLimit limit = this.limits.getLimit("foo");
+		assertEquals(1, limit.rejections.getValue().intValue());
+		assertEquals(2, limit.getInFlight());
+		first.release(false);
+		assertEquals(1, limit.getInFlight());
+		assertNotNull(this.limits.acquire("foo"));
+	}
+
+	@Test
+	public void growsWhileResponseTimesAreSteady() {
+		ConcurrencyLimit limit = this.limits.getLimit("foo");
+		for (int i = 0; i < 100; i++) {
+			limit.tryAcquire();
+			limit.release(1000, limit.getLimit(), false);
+		}
+		assertEquals(50, limit.getLimit());
+	}
+
+	@Test
+	public void doesNotGrowWhenUnused() {
+		ConcurrencyLimit limit = this.limits.getLimit("foo");
+		for (int i = 0; i < 100; i++) {
+			limit.tryAcquire();
+			limit.release(1000, 1, false);
+		}
+		assertEquals(10, limit.getLimit());
+	}
+
+	@Test
+	public void shrinksWhenResponseTimesGoUp() {
+		ConcurrencyLimit limit = this.limits.getLimit("foo");
+		limit.tryAcquire();
+		limit.release(1000, 10, false);
+		for (int i = 0; i < 100; i++) {
+			limit.tryAcquire();
+			limit.release(10000, limit.getLimit(), false);
+		}
+		assertTrue("Wrong limit: " + limit.getLimit(), limit.getLimit() < 10);
+	}
+
+	@Test
+	public void backsOffOnFailures() {
+		ConcurrencyLimit limit = this.limits.getLimit("foo");
+		limit.tryAcquire();
+		limit.release(1000, 1, true);
+		assertEquals(9, limit.getLimit());
+	}
+
+	@Test
+	public void releasesConcurrently() throws Exception {
+		final ConcurrencyLimit limit = this.limits.getLimit("foo");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int released = 0;
+						for (int j = 0; j < 1000; j++) {
+							if (limit.tryAcquire()) {
+								limit.release(1000, limit.getLimit(), j % 100 == 0);
+								released++;
+							}
+						}
+						return released;
+					}
+				}));
+			}
+			for (Future<Integer> future : futures) {
+				assertTrue(future.get() > 0);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		assertEquals(0, limit.getInFlight());
+		assertTrue("Wrong limit: " + limit.getLimit(), limit.getLimit() >= 1
+				&& limit.getLimit() <= 50);
+	}
+
+}
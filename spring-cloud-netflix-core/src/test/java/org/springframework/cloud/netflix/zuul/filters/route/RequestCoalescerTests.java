@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.route;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.cloud.netflix.zuul.filters.route.RequestCoalescer.SharedResponse;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StreamUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Dave Syer
+ */
+public class RequestCoalescerTests {
+
+	private ZuulProperties properties = new ZuulProperties();
+
+	private RequestCoalescer coalescer = new RequestCoalescer(this.properties);
+
+	private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@After
+	public void close() {
+		this.coalescer.stop();
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void coalescesOnlyFlaggedRoutes() {
+		ZuulRoute route = new ZuulRoute("/foo/**", "foo");
+		route.setCoalesce(true);
+		this.properties.getRoutes().put("foo", route);
+		this.properties.getRoutes().put("bar", new ZuulRoute("/bar/**", "bar"));
+		assertTrue(this.coalescer.isCoalescing("foo", "GET"));
+		assertTrue(this.coalescer.isCoalescing("foo", "HEAD"));
+		assertFalse(this.coalescer.isCoalescing("foo", "POST"));
+		assertFalse(this.coalescer.isCoalescing("bar", "GET"));
+		assertFalse(this.coalescer.isCoalescing(null, "GET"));
+	}
+
+	@Test
+	public void keyVariesWithConfiguredHeaders() {
+		MultiValueMap<String, String> english = new LinkedMultiValueMap<>();
+		english.add("accept-language", "en");
+		english.add("x-request-id", "1");
+		MultiValueMap<String, String> other = new LinkedMultiValueMap<>();
+		other.add("Accept-Language", "en");
+		other.add("x-request-id", "2");
+		assertEquals(key(english), key(other));
+		other.set("Accept-Language", "fr");
+		assertNotEquals(key(english), key(other));
+	}
+
+	@Test
+	public void concurrentCallsShareOneResponse() throws Exception {
+		final CountDownLatch started = new CountDownLatch(3);
+		final AtomicInteger calls = new AtomicInteger();
+		final Callable<SharedResponse> call = new Callable<SharedResponse>() {
+			@Override
+			public SharedResponse call() throws Exception {
+				calls.incrementAndGet();
+				started.await();
+				Thread.sleep(100);
+				return RequestCoalescer.buffer(200,
+						new LinkedMultiValueMap<String, String>(),
+						new ByteArrayInputStream("hello".getBytes()), 100);
+			}
+		};
+		List<Future<SharedResponse>> results = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			results.add(this.executor.submit(new Callable<SharedResponse>() {
+				@Override
+				public SharedResponse call() throws Exception {
+					started.countDown();
+					return RequestCoalescerTests.this.coalescer.execute("key", call);
+				}
+			}));
+		}
+		for (Future<SharedResponse> result : results) {
+			assertEquals("hello", StreamUtils.copyToString(result.get().getBody(),
+					Charset.forName("UTF-8")));
+		}
+		assertEquals(calls.get(), this.coalescer.upstreamCalls.getValue().intValue());
+		assertEquals(3 - calls.get(), this.coalescer.coalesced.getValue().intValue());
+		assertTrue(this.coalescer.coalesced.getValue().intValue() > 0);
+	}
+
+	@Test
+	public void largeResponseIsNotShared() throws Exception {
+		final CountDownLatch waiting = new CountDownLatch(1);
+		Future<SharedResponse> leader = this.executor
+				.submit(new Callable<SharedResponse>() {
+					@Override
+					public SharedResponse call() throws Exception {
+						return RequestCoalescerTests.this.coalescer.execute("key",
+								new Callable<SharedResponse>() {
+									@Override
+									public SharedResponse call() throws Exception {
+										waiting.await();
+										Thread.sleep(100);
+										return RequestCoalescer.buffer(200,
+												new LinkedMultiValueMap<String, String>(),
+												new ByteArrayInputStream("hello world"
+														.getBytes()), 5);
+									}
+								});
+					}
+				});
+		while (this.coalescer.upstreamCalls.getValue().intValue() == 0) {
+			Thread.sleep(10);
+		}
+		waiting.countDown();
+		SharedResponse follower = this.coalescer.execute("key",
+				new Callable<SharedResponse>() {
+					@Override
+					public SharedResponse call() throws Exception {
+						throw new IllegalStateException("Should not be called");
+					}
+				});
+		assertNull(follower);
+		assertEquals(1, this.coalescer.bypassed.getValue().intValue());
+		SharedResponse response = leader.get();
+		assertFalse(response.isShared());
+		assertEquals("hello world", StreamUtils.copyToString(response.getBody(),
+				Charset.forName("UTF-8")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void failureIsPropagated() throws Exception {
+		this.coalescer.execute("key", new Callable<SharedResponse>() {
+			@Override
+			public SharedResponse call() throws Exception {
+				throw new IllegalStateException("Planned");
+			}
+		});
+	}
+
+	private String key(MultiValueMap<String, String> headers) {
+		return this.coalescer.getKey("foo", "GET", "/foo", "?bar=1", headers);
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.route;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.cloud.netflix.zuul.filters.route.RequestHedger.HedgeStats;
+
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.client.http.HttpRequest;
+import com.netflix.client.http.HttpRequest.Verb;
+import com.netflix.client.http.HttpResponse;
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.Server;
+import com.netflix.niws.client.http.RestClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Dave Syer
+ */
+public class RequestHedgerTests {
+
+	private ZuulProperties properties = new ZuulProperties();
+
+	private RequestHedger hedger = new RequestHedger(this.properties);
+
+	private HttpServer fast;
+
+	private HttpServer slow;
+
+	private RestClient client;
+
+	@Before
+	public void init() throws Exception {
+		this.fast = start("fast", 0);
+		this.slow = start("slow", 2000);
+		BaseLoadBalancer balancer = new BaseLoadBalancer();
+		balancer.setServersList(Arrays.asList(new Server("localhost", this.fast
+				.getAddress().getPort()), new Server("localhost", this.slow.getAddress()
+				.getPort())));
+		this.client = new RestClient(
+				DefaultClientConfigImpl.getClientConfigWithDefaultValues("hedged"));
+		this.client.setLoadBalancer(balancer);
+	}
+
+	@After
+	public void close() {
+		this.hedger.stop();
+		this.fast.stop(0);
+		this.slow.stop(0);
+	}
+
+	@Test
+	public void hedgesOnlyFlaggedRoutes() {
+		ZuulRoute route = new ZuulRoute("/foo/**", "foo");
+		route.setHedge(true);
+		this.properties.getRoutes().put("foo", route);
+		this.properties.getRoutes().put("bar", new ZuulRoute("/bar/**", "bar"));
+		assertTrue(this.hedger.isHedging("foo", "GET"));
+		assertFalse(this.hedger.isHedging("foo", "POST"));
+		assertFalse(this.hedger.isHedging("bar", "GET"));
+	}
+
+	@Test
+	public void slowInstanceIsHedged() throws Exception {
+		this.properties.getHedging().setDelay(100);
+		this.properties.getHedging().setBudgetPercent(100);
+		for (int i = 0; i < 4; i++) {
+			long start = System.currentTimeMillis();
+			HttpResponse response = this.hedger.execute("hedged", this.client,
+					HttpRequest.newBuilder().uri(new URI("/")).verb(Verb.GET).build());
+			assertEquals("fast", response.getEntity(String.class));
+			assertTrue(System.currentTimeMillis() - start < 1500);
+		}
+		HedgeStats stats = this.hedger.getStats("hedged");
+		assertEquals(4, stats.requests.getValue().intValue());
+		int hedges = stats.hedges.getValue().intValue();
+		assertTrue(hedges > 0);
+		assertEquals(hedges, stats.wins.getValue().intValue());
+	}
+
+	@Test
+	public void budgetLimitsHedges() throws Exception {
+		this.properties.getHedging().setDelay(100);
+		this.properties.getHedging().setBudgetPercent(0);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 2; i++) {
+			this.hedger.execute("hedged", this.client,
+					HttpRequest.newBuilder().uri(new URI("/")).verb(Verb.GET).build())
+					.close();
+		}
+		// one of them waited for the slow instance
+		assertTrue(System.currentTimeMillis() - start >= 2000);
+		assertEquals(0, this.hedger.getStats("hedged").hedges.getValue().intValue());
+	}
+
+	@Test
+	public void failedAttemptRetriedOnNextServer() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int closed = socket.getLocalPort();
+		socket.close();
+		BaseLoadBalancer balancer = new BaseLoadBalancer();
+		balancer.setServersList(Arrays.asList(new Server("localhost", closed),
+				new Server("localhost", this.fast.getAddress().getPort())));
+		this.client.setLoadBalancer(balancer);
+		this.properties.getHedging().setDelay(1000);
+		this.properties.getHedging().setBudgetPercent(0);
+		for (int i = 0; i < 2; i++) {
+			HttpResponse response = this.hedger.execute("hedged", this.client,
+					HttpRequest.newBuilder().uri(new URI("/")).verb(Verb.GET).build());
+			assertEquals("fast", response.getEntity(String.class));
+		}
+		assertEquals(0, this.hedger.getStats("hedged").hedges.getValue().intValue());
+	}
+
+	@Test
+	public void delayFromPercentile() {
+		HedgeStats stats = new HedgeStats();
+		for (int i = 1; i <= 10; i++) {
+			stats.record(i);
+		}
+		assertEquals(-1, stats.getPercentile(95));
+		for (int i = 11; i <= 100; i++) {
+			stats.record(i);
+		}
+		assertEquals(95, stats.getPercentile(95));
+		assertEquals(50, stats.getPercentile(50));
+	}
+
+	private HttpServer start(final String body, final long delay) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(delay);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				byte[] bytes = body.getBytes();
+				exchange.sendResponseHeaders(200, bytes.length);
+				OutputStream output = exchange.getResponseBody();
+				output.write(bytes);
+				output.close();
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		return server;
+	}
+
+}
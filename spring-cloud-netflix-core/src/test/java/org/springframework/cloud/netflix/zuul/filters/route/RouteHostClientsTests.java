@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.netflix.zuul.filters.route;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Dave Syer
+ */
+public class RouteHostClientsTests {
+
+	private ZuulProperties properties = new ZuulProperties();
+
+	private RouteHostClients clients = new RouteHostClients(this.properties);
+
+	@After
+	public void close() {
+		this.clients.close();
+	}
+
+	@Test
+	public void separatePoolPerRoute() {
+		ZuulRoute route = new ZuulRoute("foo", "/foo/**", null, "http://foo", true,
+				null);
+		route.setMaxConnections(5);
+		this.properties.getRoutes().put("foo", route);
+		this.properties.getHost().setMaxConnections(7);
+		assertSame(this.clients.getClient("foo"), this.clients.getClient("foo"));
+		assertNotSame(this.clients.getClient("foo"), this.clients.getClient("bar"));
+		assertEquals(5, this.clients.getStats("foo").getMax());
+		assertEquals(7, this.clients.getStats("bar").getMax());
+	}
+
+	@Test
+	public void unroutedPoolsBounded() {
+		this.properties.getHost().setMaxUnroutedPools(2);
+		this.properties.getRoutes().put("foo",
+				new ZuulRoute("foo", "/foo/**", null, "http://foo", true, null));
+		this.clients.getClient("foo");
+		this.clients.getClient("http://one:80");
+		this.clients.getClient("http://two:80");
+		this.clients.getClient("http://three:80");
+		assertEquals(3, this.clients.getPoolCount());
+		assertNotNull(this.clients.getStats("foo"));
+		assertNotNull(this.clients.getStats("http://three:80"));
+	}
+
+}
@@ -22,9 +22,17 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.springframework.boot.autoconfigure.web.ErrorController;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRouteLocator.ProxyRouteSpec;
 import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
@@ -56,6 +64,18 @@ public class ZuulHandlerMappingTests {
 		assertNotNull(this.mapping.getHandler(this.request));
 	}
 
+	@Test
+	public void pathWithinMappingExposed() throws Exception {
+		Mockito.when(this.locator.getRoutePaths()).thenReturn(Arrays.asList("/foo/**"));
+		this.request.setServletPath("/foo/bar");
+		this.mapping.registerHandlers();
+		preHandle(this.mapping.getHandler(this.request));
+		assertEquals("/foo/**", this.request
+				.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+		assertEquals("bar", this.request
+				.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE));
+	}
+
 	@Test
 	public void defaultPath() throws Exception {
 		Mockito.when(this.locator.getRoutePaths()).thenReturn(Arrays.asList("/**"));
@@ -72,4 +92,40 @@ public class ZuulHandlerMappingTests {
 		assertNull(this.mapping.getHandler(this.request));
 	}
 
+	@Test
+	public void unmappedPath() throws Exception {
+		Mockito.when(this.locator.getRoutePaths()).thenReturn(Arrays.asList("/foo/**"));
+		this.request.setServletPath("/bar/");
+		this.mapping.registerHandlers();
+		assertNull(this.mapping.getHandler(this.request));
+	}
+
+	@Test
+	public void proxyRouteResolvedOnce() throws Exception {
+		ProxyRouteLocator locator = new ProxyRouteLocator("/", null,
+				new ZuulProperties());
+		locator.addRoute("/foo/**", "foo");
+		this.mapping = new ZuulHandlerMapping(locator, new ZuulController());
+		this.mapping.registerHandlers();
+		this.request.setServletPath("/foo/1");
+		preHandle(this.mapping.getHandler(this.request));
+		ProxyRouteSpec route = (ProxyRouteSpec) this.request
+				.getAttribute(ProxyRouteLocator.MATCHING_ROUTE_ATTRIBUTE);
+		assertEquals("foo", route.getLocation());
+		assertEquals("/1", route.getPath());
+		assertEquals("/foo/**", this.request
+				.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+		this.request.setServletPath("/bar/1");
+		assertNull(this.mapping.getHandler(this.request));
+		assertNull(this.request.getAttribute(ProxyRouteLocator.MATCHING_ROUTE_ATTRIBUTE));
+	}
+
+	private void preHandle(HandlerExecutionChain chain) throws Exception {
+		assertNotNull(chain);
+		for (HandlerInterceptor interceptor : chain.getInterceptors()) {
+			interceptor.preHandle(this.request, new MockHttpServletResponse(),
+					chain.getHandler());
+		}
+	}
+
 }